@@ -11,7 +11,7 @@ import java.util.concurrent.ScheduledExecutorService;
  * 负责管理多个事业群，每个事业群就是一个Service
  * <p>
  * Server自身特性：
- * - 端口 port：Server需要依据这个开启 server socket，用于监听特殊事件，比如第一个就是 shutdown 命令 - 简化工作量，暂不实现
+ * - 端口 port：Server需要依据这个开启 server socket，用于监听特殊事件，比如第一个就是 shutdown 命令
  * - 实现Lifecycle，受生命周期管理
  * - 持有公司创始人信息
  * - 持有多个事业部信息
@@ -24,6 +24,34 @@ import java.util.concurrent.ScheduledExecutorService;
  */
 public interface Server extends Lifecycle {
 
+    /**
+     * shutdown 端口；-1 表示不监听，await 只等待 stopAwait；-2 表示 await 直接返回（嵌入式）
+     */
+    int getPort();
+
+    void setPort(int port);
+
+    /**
+     * shutdown 端口绑定的地址
+     */
+    String getAddress();
+
+    void setAddress(String address);
+
+    /**
+     * shutdown 命令
+     */
+    String getShutdown();
+
+    void setShutdown(String shutdown);
+
+    /**
+     * Unix domain socket 路径，设置后在该路径而不是 port 上监听 shutdown 命令
+     */
+    String getUnixDomainSocketPath();
+
+    void setUnixDomainSocketPath(String unixDomainSocketPath);
+
     /**
      * 获取 创始人
      */
@@ -49,7 +77,7 @@ public interface Server extends Lifecycle {
     void removeService(Service service);
 
     /**
-     * 等待直到 showdown
+     * 等待直到收到 shutdown 命令
      */
     void await();
 
@@ -6,12 +6,41 @@ import com.nabob.conch.tomcat.core.catalina.lifecycle.Lifecycle;
  * Service（事业部总经理）
  * <p>
  * 它管理两个职能部门：一个是对外的市场部，也就是连接器组件；另一个是对内的研发部，也就是容器组件。
+ * <p>
+ * 事业部之间可以声明依赖：Server 初始化、启动时，被依赖的事业部先完成，没有依赖关系的事业部并行
  *
  * @author Adam
  * @since 2023/12/5
  */
 public interface Service extends Lifecycle {
 
+    /**
+     * 事业部 名称，在 Server 中唯一
+     */
+    String getName();
+
+    void setName(String name);
+
+    /**
+     * 获取 上级 Server
+     */
+    Server getServer();
+
+    /**
+     * 设置 上级 Server
+     */
+    void setServer(Server server);
+
+    /**
+     * 添加 依赖的事业部（名称）
+     */
+    void addDependency(String serviceName);
+
+    /**
+     * 查找 依赖的事业部（名称）
+     */
+    String[] findDependencies();
 
+    void removeDependency(String serviceName);
 
 }
@@ -0,0 +1,905 @@
+package com.nabob.conch.tomcat.core.catalina.core;
+
+import com.nabob.conch.tomcat.core.catalina.Server;
+import com.nabob.conch.tomcat.core.catalina.Service;
+import com.nabob.conch.tomcat.core.catalina.lifecycle.Lifecycle;
+import com.nabob.conch.tomcat.core.catalina.lifecycle.LifecycleBase;
+import com.nabob.conch.tomcat.core.catalina.lifecycle.LifecycleException;
+import com.nabob.conch.tomcat.core.catalina.lifecycle.LifecycleState;
+import com.nabob.conch.tomcat.core.catalina.startup.Catalina;
+import com.nabob.conch.tomcat.core.juli.logging.Log;
+import com.nabob.conch.tomcat.core.juli.logging.LogFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Server 标准实现
+ * <p>
+ * Service 的初始化、启动在 ForkJoinPool 上并行执行：
+ * - 没有依赖关系的 Service 并行；声明了依赖（{@link Service#addDependency(String)}）的 Service 等依赖全部完成后才执行
+ * - 依赖的 Service 失败时，依赖它的 Service 不再执行；全部结束后抛出第一个失败，其他失败作为 suppressed
+ * - 依赖不存在、循环依赖时初始化失败
+ * - 每个 Service 的状态流转、事件由它自己的 LifecycleBase 保证，事件在执行该 Service 的线程上触发
+ * <p>
+ * 停止按依赖的逆序并行执行：依赖方全部停止后才停止被依赖的 Service，一个 Service 停止失败不影响其他 Service 停止；
+ * 超过 stopTimeout 仍未停止的 Service 不再等待，Server 继续停止，销毁时跳过这些 Service。
+ * 销毁按依赖的逆序串行执行，一个 Service 销毁失败不影响其他 Service 销毁
+ * <p>
+ * await：在 port（或 unixDomainSocketPath）上用非阻塞的 ServerSocketChannel + Selector 监听 shutdown 命令，
+ * 一个线程同时处理多个连接，慢连接不会阻塞其他连接；收到 shutdown 命令后立即返回，由 Catalina 停止 Server
+ * <p>
+ * 配置：
+ * - port 默认值：8005   shutdown 端口；-1 时不监听，只等待 {@link #stopAwait()}；-2 时 await 直接返回
+ * - address 默认值：localhost   shutdown 端口绑定的地址
+ * - shutdown 默认值：SHUTDOWN   shutdown 命令
+ * - unixDomainSocketPath 默认值：空   设置后在该路径的 Unix domain socket 上监听 shutdown 命令，忽略 port、address
+ * - startStopThreads 默认值：0   并行初始化、启动、停止 Service 的线程数；0 或负数时为 CPU 核数加上该值（至少为1），1 时串行
+ * - stopTimeout 默认值：30000   并行停止 Service 的总超时时间（毫秒）；0 或负数时一直等待；串行停止时不限制
+ * - utilityThreads 默认值：2   工具线程数
+ *
+ * @author Adam
+ * @since 2024/1/29
+ */
+public class StandardServer extends LifecycleBase implements Server {
+
+    private static final Log log = LogFactory.getLog(StandardServer.class);
+
+    /**
+     * shutdown 连接读取命令的超时时间
+     */
+    private static final long SHUTDOWN_READ_TIMEOUT_MILLIS = 10_000;
+
+    /**
+     * 创始人
+     */
+    private Catalina catalina = null;
+
+    /**
+     * 事业部
+     */
+    private Service[] services = new Service[0];
+
+    private final Object servicesLock = new Object();
+
+    private int port = 8005;
+
+    private String address = "localhost";
+
+    private String shutdown = "SHUTDOWN";
+
+    private String unixDomainSocketPath = null;
+
+    private int startStopThreads = 0;
+
+    private long stopTimeout = 30_000;
+
+    /**
+     * 并行初始化、启动、停止 Service 的线程池，startStopThreads 为1时为空
+     */
+    private ForkJoinPool startStopExecutor = null;
+
+    private int utilityThreads = 2;
+
+    /**
+     * 工具线程（助理）
+     */
+    private ScheduledThreadPoolExecutor utilityExecutor = null;
+
+    /**
+     * await 是否应该结束
+     */
+    private volatile boolean stopAwait = false;
+
+    /**
+     * 正在 await 的线程
+     */
+    private volatile Thread awaitThread = null;
+
+    /**
+     * 正在 await 的 Selector，用于 stopAwait 唤醒
+     */
+    private volatile Selector awaitSelector = null;
+
+    @Override
+    public int getPort() {
+        return port;
+    }
+
+    @Override
+    public void setPort(int port) {
+        this.port = port;
+    }
+
+    @Override
+    public String getAddress() {
+        return address;
+    }
+
+    @Override
+    public void setAddress(String address) {
+        this.address = address;
+    }
+
+    @Override
+    public String getShutdown() {
+        return shutdown;
+    }
+
+    @Override
+    public void setShutdown(String shutdown) {
+        this.shutdown = shutdown;
+    }
+
+    @Override
+    public String getUnixDomainSocketPath() {
+        return unixDomainSocketPath;
+    }
+
+    @Override
+    public void setUnixDomainSocketPath(String unixDomainSocketPath) {
+        this.unixDomainSocketPath = unixDomainSocketPath;
+    }
+
+    @Override
+    public Catalina getCatalina() {
+        return catalina;
+    }
+
+    @Override
+    public void setCatalina(Catalina catalina) {
+        this.catalina = catalina;
+    }
+
+    public int getStartStopThreads() {
+        return startStopThreads;
+    }
+
+    public void setStartStopThreads(int startStopThreads) {
+        this.startStopThreads = startStopThreads;
+    }
+
+    public long getStopTimeout() {
+        return stopTimeout;
+    }
+
+    public void setStopTimeout(long stopTimeout) {
+        this.stopTimeout = stopTimeout;
+    }
+
+    public int getUtilityThreads() {
+        return utilityThreads;
+    }
+
+    public void setUtilityThreads(int utilityThreads) {
+        this.utilityThreads = utilityThreads;
+    }
+
+    @Override
+    public ScheduledExecutorService getUtilityExecutor() {
+        return utilityExecutor;
+    }
+
+    // ------------------------------------------------------------ Services
+
+    @Override
+    public void addService(Service service) {
+        service.setServer(this);
+
+        synchronized (servicesLock) {
+            Service[] results = Arrays.copyOf(services, services.length + 1);
+            results[services.length] = service;
+            services = results;
+
+            if (getState().isAvailable()) {
+                try {
+                    service.start();
+                } catch (LifecycleException e) {
+                    log.error("Failed to start service [" + service.getName() + "]", e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public Service findService(String name) {
+        if (name == null) {
+            return null;
+        }
+        synchronized (servicesLock) {
+            for (Service service : services) {
+                if (name.equals(service.getName())) {
+                    return service;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Service[] findServices() {
+        synchronized (servicesLock) {
+            return services.clone();
+        }
+    }
+
+    @Override
+    public void removeService(Service service) {
+        synchronized (servicesLock) {
+            int j = -1;
+            for (int i = 0; i < services.length; i++) {
+                if (service == services[i]) {
+                    j = i;
+                    break;
+                }
+            }
+            if (j < 0) {
+                return;
+            }
+            try {
+                services[j].stop();
+            } catch (LifecycleException e) {
+                log.error("Failed to stop service [" + service.getName() + "]", e);
+            }
+            Service[] results = new Service[services.length - 1];
+            System.arraycopy(services, 0, results, 0, j);
+            System.arraycopy(services, j + 1, results, j, services.length - j - 1);
+            services = results;
+        }
+        service.setServer(null);
+    }
+
+    @Override
+    public Lifecycle[] findLifecycleChildren() {
+        return findServices();
+    }
+
+    // ------------------------------------------------------------ await
+
+    /**
+     * 阻塞直到收到 shutdown 命令或者 {@link #stopAwait()}
+     * <p>
+     * shutdown 端口创建失败时直接返回（与端口被占用时 Tomcat 的行为一致，Catalina 随后停止 Server）
+     */
+    @Override
+    public void await() {
+        if (port == -2 && unixDomainSocketPath == null) {
+            // 嵌入式：由调用方控制停止
+            return;
+        }
+        if (port == -1 && unixDomainSocketPath == null) {
+            awaitStop();
+            return;
+        }
+
+        ServerSocketChannel serverChannel;
+        Selector selector;
+        try {
+            serverChannel = openShutdownChannel();
+        } catch (IOException | RuntimeException e) {
+            log.error("Failed to create server shutdown socket on [" + shutdownEndpoint() + "]", e);
+            return;
+        }
+        try {
+            selector = Selector.open();
+            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+        } catch (IOException e) {
+            log.error("Failed to open selector for server shutdown socket on [" + shutdownEndpoint() + "]", e);
+            closeShutdownChannel(serverChannel);
+            return;
+        }
+
+        try {
+            awaitThread = Thread.currentThread();
+            awaitSelector = selector;
+            byte[] command = shutdown.getBytes(StandardCharsets.UTF_8);
+            while (!stopAwait) {
+                // 有未读完命令的连接时定时醒来检查超时
+                selector.select(selector.keys().size() > 1 ? 1000 : 0);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) {
+                        continue;
+                    }
+                    if (key.isAcceptable()) {
+                        accept(serverChannel, selector, command.length);
+                    } else if (key.isReadable() && readCommand(key, command)) {
+                        if (log.isInfoEnabled()) {
+                            log.info("A valid shutdown command was received via the shutdown port. Stopping the Server instance.");
+                        }
+                        stopAwait = true;
+                        break;
+                    }
+                }
+                closeExpired(selector);
+            }
+        } catch (IOException e) {
+            if (!stopAwait) {
+                log.error("Server shutdown socket on [" + shutdownEndpoint() + "] failed", e);
+            }
+        } finally {
+            awaitSelector = null;
+            awaitThread = null;
+            for (SelectionKey key : selector.keys()) {
+                closeQuietly(key.channel());
+            }
+            closeQuietly(selector);
+            closeShutdownChannel(serverChannel);
+            // Selector 不会清除中断标记，由 stopAwait 中断时清除
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * 不监听 shutdown 端口，等待 {@link #stopAwait()}
+     */
+    private void awaitStop() {
+        try {
+            awaitThread = Thread.currentThread();
+            while (!stopAwait) {
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException ex) {
+                    // continue and check the flag
+                }
+            }
+        } finally {
+            awaitThread = null;
+        }
+    }
+
+    /**
+     * 结束 await
+     */
+    public void stopAwait() {
+        stopAwait = true;
+        Selector selector = awaitSelector;
+        if (selector != null) {
+            selector.wakeup();
+            return;
+        }
+        Thread t = awaitThread;
+        if (t != null) {
+            t.interrupt();
+        }
+    }
+
+    private ServerSocketChannel openShutdownChannel() throws IOException {
+        ServerSocketChannel channel;
+        SocketAddress endpoint;
+        if (unixDomainSocketPath != null) {
+            Path path = Paths.get(unixDomainSocketPath);
+            deleteStaleSocket(path);
+            channel = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+            endpoint = UnixDomainSocketAddress.of(path);
+        } else {
+            channel = ServerSocketChannel.open();
+            endpoint = new InetSocketAddress(address, port);
+        }
+        try {
+            channel.configureBlocking(false);
+            channel.bind(endpoint, 1);
+        } catch (IOException | RuntimeException e) {
+            closeQuietly(channel);
+            throw e;
+        }
+        return channel;
+    }
+
+    /**
+     * 删除上次异常退出时残留的 socket 文件
+     * <p>
+     * 只删除没有进程在监听的 socket 文件：路径是普通文件、目录等其他文件时拒绝启动监听，不删除；
+     * 仍有进程在监听时保留，由随后的 bind 失败报告地址已被占用
+     */
+    private static void deleteStaleSocket(Path path) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(path, BasicFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        } catch (NoSuchFileException e) {
+            return;
+        }
+        if (!attributes.isOther()) {
+            throw new IOException("[" + path + "] exists and is not a socket, refusing to delete it");
+        }
+        boolean listening;
+        try (SocketChannel probe = SocketChannel.open(StandardProtocolFamily.UNIX)) {
+            listening = probe.connect(UnixDomainSocketAddress.of(path));
+        } catch (IOException e) {
+            listening = false;
+        }
+        if (!listening) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    private void closeShutdownChannel(ServerSocketChannel channel) {
+        closeQuietly(channel);
+        if (unixDomainSocketPath != null) {
+            try {
+                Files.deleteIfExists(Paths.get(unixDomainSocketPath));
+            } catch (IOException e) {
+                // Ignore
+            }
+        }
+    }
+
+    private String shutdownEndpoint() {
+        return unixDomainSocketPath != null ? unixDomainSocketPath : address + ":" + port;
+    }
+
+    /**
+     * 接受全部等待中的连接，注册读事件
+     * <p>
+     * 每个连接最多读取命令长度 + 1 个字节，读满仍没有结束符时按命令不匹配处理
+     */
+    private static void accept(ServerSocketChannel serverChannel, Selector selector, int commandLength)
+        throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            try {
+                channel.configureBlocking(false);
+                channel.register(selector, SelectionKey.OP_READ, new ShutdownConnection(commandLength + 1,
+                    System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(SHUTDOWN_READ_TIMEOUT_MILLIS)));
+            } catch (IOException e) {
+                log.warn("Failed to register shutdown connection", e);
+                closeQuietly(channel);
+            }
+        }
+    }
+
+    /**
+     * 读取命令：遇到控制字符、连接关闭或者读满时结束
+     *
+     * @return 是否收到有效的 shutdown 命令
+     */
+    private boolean readCommand(SelectionKey key, byte[] command) {
+        SocketChannel channel = (SocketChannel) key.channel();
+        ByteBuffer buffer = ((ShutdownConnection) key.attachment()).buffer;
+        int end = -1;
+        boolean eof = false;
+        try {
+            int start = buffer.position();
+            eof = channel.read(buffer) < 0;
+            for (int i = start; i < buffer.position(); i++) {
+                byte b = buffer.get(i);
+                if ((b >= 0 && b < 32) || b == 127) {
+                    end = i;
+                    break;
+                }
+            }
+        } catch (IOException e) {
+            log.warn("Failed to read from the shutdown connection", e);
+            closeQuietly(channel);
+            return false;
+        }
+        if (end < 0) {
+            if (!eof && buffer.hasRemaining()) {
+                // 命令还没有读完
+                return false;
+            }
+            end = buffer.position();
+        }
+        closeQuietly(channel);
+
+        boolean match = end == command.length;
+        for (int i = 0; match && i < end; i++) {
+            match = buffer.get(i) == command[i];
+        }
+        if (!match) {
+            log.warn("Invalid shutdown command [" +
+                new String(buffer.array(), 0, end, StandardCharsets.UTF_8) + "] received");
+        }
+        return match;
+    }
+
+    /**
+     * 关闭超时还没有发送完命令的连接
+     */
+    private static void closeExpired(Selector selector) {
+        long now = System.nanoTime();
+        for (SelectionKey key : selector.keys()) {
+            Object attachment = key.attachment();
+            if (attachment instanceof ShutdownConnection && now - ((ShutdownConnection) attachment).deadline > 0) {
+                closeQuietly(key.channel());
+            }
+        }
+    }
+
+    private static void closeQuietly(AutoCloseable closeable) {
+        try {
+            closeable.close();
+        } catch (Exception e) {
+            // Ignore
+        }
+    }
+
+    // ------------------------------------------------------------ Lifecycle
+
+    @Override
+    protected void initInternal() throws LifecycleException {
+        utilityExecutor = new ScheduledThreadPoolExecutor(Math.max(1, utilityThreads),
+            new NamedThreadFactory("StandardServer-utility-"));
+
+        int threads = getStartStopThreadsInternal();
+        if (threads > 1) {
+            startStopExecutor = new ForkJoinPool(threads, new StartStopThreadFactory(), null, false);
+        }
+
+        executeInDependencyOrder(sortServices(findServices()), Service::init, false, 0);
+    }
+
+    @Override
+    protected void startInternal() throws LifecycleException {
+        stopAwait = false;
+        setState(LifecycleState.STARTING);
+
+        executeInDependencyOrder(sortServices(findServices()), Service::start, false, 0);
+    }
+
+    @Override
+    protected void stopInternal() throws LifecycleException {
+        setState(LifecycleState.STOPPING);
+
+        // 先结束 await，shutdown 端口不再接受命令
+        stopAwait();
+
+        ServiceAction stop = service -> {
+            LifecycleState state = service.getState();
+            if (state.isAvailable() || state == LifecycleState.FAILED) {
+                service.stop();
+            }
+        };
+        List<Service> ordered;
+        try {
+            ordered = sortServices(findServices());
+        } catch (LifecycleException e) {
+            log.warn("Invalid service dependencies, stopping services serially in the reverse of the order in " +
+                "which they were added", e);
+            executeInReverseOrder(Arrays.asList(findServices()), stop);
+            return;
+        }
+        executeInDependencyOrder(ordered, stop, true, stopTimeout);
+    }
+
+    @Override
+    protected void destroyInternal() throws LifecycleException {
+        ServiceAction destroy = service -> {
+            LifecycleState state = service.getState();
+            if (state == LifecycleState.DESTROYING || state == LifecycleState.DESTROYED) {
+                return;
+            }
+            if (state != LifecycleState.STOPPED && state != LifecycleState.INITIALIZED &&
+                state != LifecycleState.NEW && state != LifecycleState.FAILED) {
+                // 超过 stopTimeout 仍在停止，或者在等待依赖它的 Service 停止：
+                // 销毁会阻塞在它的生命周期锁上，或者是无效的状态流转
+                log.warn("Skipping destroy of service [{}] which has not stopped, state [{}]", service.getName(),
+                    state);
+                return;
+            }
+            service.destroy();
+        };
+        try {
+            // 一个 Service 销毁失败不影响其他 Service 销毁
+            executeInReverseOrder(dependencyOrderOrAddOrder(findServices()), destroy);
+        } finally {
+            if (startStopExecutor != null) {
+                startStopExecutor.shutdownNow();
+                startStopExecutor = null;
+            }
+            if (utilityExecutor != null) {
+                utilityExecutor.shutdownNow();
+                utilityExecutor = null;
+            }
+        }
+    }
+
+    private int getStartStopThreadsInternal() {
+        int result = getStartStopThreads();
+        if (result > 0) {
+            return result;
+        }
+        // 0 或负数：CPU 核数加上该值
+        result = Runtime.getRuntime().availableProcessors() + result;
+        return Math.max(1, result);
+    }
+
+    // ------------------------------------------------------------ Dependency order
+
+    /**
+     * 按依赖顺序执行 Service 的生命周期方法，没有依赖关系的 Service 在 startStopExecutor 上并行执行
+     *
+     * @param ordered       已按依赖排序的 Service，见 {@link #sortServices(Service[])}
+     * @param reverse       是否按依赖的逆序执行（停止）：依赖方全部执行完成后才执行被依赖的 Service，
+     *                      依赖方失败时仍然执行
+     * @param timeoutMillis 并行执行时等待全部完成的总超时时间，0 或负数时一直等待；超时后不再等待，记录日志后返回
+     */
+    private void executeInDependencyOrder(List<Service> ordered, ServiceAction action, boolean reverse,
+                                          long timeoutMillis) throws LifecycleException {
+        ForkJoinPool executor = startStopExecutor;
+        if (executor == null || ordered.size() <= 1) {
+            if (!reverse) {
+                for (Service service : ordered) {
+                    action.execute(service);
+                }
+            } else {
+                executeInReverseOrder(ordered, action);
+            }
+            return;
+        }
+
+        // 在调用线程的上下文类加载器中执行
+        final ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+        // 正序：Service -> 它的执行结果；逆序：Service -> 依赖它的 Service 的执行结果
+        Map<String, List<CompletableFuture<Void>>> prerequisitesByName = new HashMap<>();
+        List<Service> submitted = new ArrayList<>(ordered.size());
+        List<CompletableFuture<Void>> futures = new ArrayList<>(ordered.size());
+        for (int i = 0; i < ordered.size(); i++) {
+            Service service = ordered.get(reverse ? ordered.size() - 1 - i : i);
+            List<CompletableFuture<Void>> prerequisites = new ArrayList<>();
+            if (reverse) {
+                // 已排序，依赖它的 Service 一定在后面，逆序时已经提交
+                prerequisites.addAll(prerequisitesByName.getOrDefault(service.getName(), Collections.emptyList()));
+            } else {
+                for (String dependency : service.findDependencies()) {
+                    // 已排序，依赖的 Service 一定在前面
+                    prerequisites.addAll(prerequisitesByName.get(dependency));
+                }
+            }
+            CompletableFuture<Void> ready = CompletableFuture.allOf(prerequisites.toArray(new CompletableFuture<?>[0]));
+            if (reverse) {
+                ready = ready.exceptionally(t -> null);
+            }
+            CompletableFuture<Void> future = ready.thenRunAsync(() -> execute(service, action, classLoader), executor);
+            submitted.add(service);
+            futures.add(future);
+            if (reverse) {
+                for (String dependency : service.findDependencies()) {
+                    prerequisitesByName.computeIfAbsent(dependency, k -> new ArrayList<>()).add(future);
+                }
+            } else if (service.getName() != null) {
+                prerequisitesByName.put(service.getName(), Collections.singletonList(future));
+            }
+        }
+
+        // 等全部结束，依赖失败的 Service 带着同一个异常结束，只保留一次
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        Set<Throwable> failures = Collections.newSetFromMap(new IdentityHashMap<>());
+        List<String> unfinished = new ArrayList<>();
+        LifecycleException first = null;
+        for (int i = 0; i < futures.size(); i++) {
+            CompletableFuture<Void> future = futures.get(i);
+            Throwable cause;
+            try {
+                if (timeoutMillis > 0) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0 && !future.isDone()) {
+                        throw new TimeoutException();
+                    }
+                    future.get(Math.max(0, remaining), TimeUnit.NANOSECONDS);
+                } else {
+                    future.join();
+                }
+                continue;
+            } catch (TimeoutException e) {
+                unfinished.add(submitted.get(i).getName());
+                continue;
+            } catch (InterruptedException e) {
+                // 不再等待剩余的 Service
+                Thread.currentThread().interrupt();
+                deadline = System.nanoTime();
+                unfinished.add(submitted.get(i).getName());
+                continue;
+            } catch (CompletionException | ExecutionException e) {
+                cause = e.getCause() == null ? e : e.getCause();
+            }
+            if (!failures.add(cause)) {
+                continue;
+            }
+            if (first == null) {
+                first = cause instanceof LifecycleException ? (LifecycleException) cause :
+                    new LifecycleException(cause);
+            } else {
+                first.addSuppressed(cause);
+            }
+        }
+        if (!unfinished.isEmpty()) {
+            log.warn("Services {} did not finish within [{}] milliseconds, no longer waiting for them", unfinished,
+                timeoutMillis);
+        }
+        if (first != null) {
+            throw first;
+        }
+    }
+
+    /**
+     * 串行逆序执行，失败时继续执行其他 Service，全部结束后抛出第一个失败，其他失败作为 suppressed
+     */
+    private static void executeInReverseOrder(List<Service> ordered, ServiceAction action)
+        throws LifecycleException {
+        LifecycleException first = null;
+        for (int i = ordered.size() - 1; i >= 0; i--) {
+            try {
+                action.execute(ordered.get(i));
+            } catch (LifecycleException e) {
+                if (first == null) {
+                    first = e;
+                } else {
+                    first.addSuppressed(e);
+                }
+            }
+        }
+        if (first != null) {
+            throw first;
+        }
+    }
+
+    private static void execute(Service service, ServiceAction action, ClassLoader classLoader) {
+        Thread thread = Thread.currentThread();
+        ClassLoader original = thread.getContextClassLoader();
+        thread.setContextClassLoader(classLoader);
+        try {
+            action.execute(service);
+        } catch (LifecycleException e) {
+            throw new CompletionException(e);
+        } finally {
+            thread.setContextClassLoader(original);
+        }
+    }
+
+    /**
+     * 按依赖排序；依赖关系无效时按添加顺序，逆序执行即为销毁的顺序
+     */
+    private List<Service> dependencyOrderOrAddOrder(Service[] services) {
+        try {
+            return sortServices(services);
+        } catch (LifecycleException e) {
+            log.warn("Invalid service dependencies, using the reverse of the order in which services were added", e);
+            return Arrays.asList(services);
+        }
+    }
+
+    /**
+     * 拓扑排序：依赖的 Service 在前；没有依赖关系的 Service 保持添加顺序
+     *
+     * @throws LifecycleException 名称重复、依赖不存在、循环依赖
+     */
+    private static List<Service> sortServices(Service[] services) throws LifecycleException {
+        Map<String, Service> byName = new HashMap<>();
+        for (Service service : services) {
+            String name = service.getName();
+            if (name != null && byName.putIfAbsent(name, service) != null) {
+                throw new LifecycleException("Duplicate service name [" + name + "]");
+            }
+        }
+
+        List<Service> sorted = new ArrayList<>(services.length);
+        Set<Service> visiting = Collections.newSetFromMap(new IdentityHashMap<>());
+        Set<Service> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        for (Service service : services) {
+            visit(service, byName, visiting, visited, sorted);
+        }
+        return sorted;
+    }
+
+    private static void visit(Service service, Map<String, Service> byName, Set<Service> visiting,
+                              Set<Service> visited, List<Service> sorted) throws LifecycleException {
+        if (visited.contains(service)) {
+            return;
+        }
+        if (!visiting.add(service)) {
+            throw new LifecycleException("Circular dependency detected at service [" + service.getName() + "]");
+        }
+        for (String dependency : service.findDependencies()) {
+            Service required = byName.get(dependency);
+            if (required == null) {
+                throw new LifecycleException("Service [" + service.getName() + "] depends on unknown service [" +
+                    dependency + "]");
+            }
+            visit(required, byName, visiting, visited, sorted);
+        }
+        visiting.remove(service);
+        visited.add(service);
+        sorted.add(service);
+    }
+
+    @Override
+    public String toString() {
+        return "StandardServer";
+    }
+
+    /**
+     * Service 的生命周期方法
+     */
+    @FunctionalInterface
+    private interface ServiceAction {
+
+        void execute(Service service) throws LifecycleException;
+    }
+
+    /**
+     * shutdown 连接：已读取的命令、读取超时时间（System.nanoTime）
+     */
+    private static final class ShutdownConnection {
+
+        final ByteBuffer buffer;
+
+        final long deadline;
+
+        ShutdownConnection(int capacity, long deadline) {
+            this.buffer = ByteBuffer.allocate(capacity);
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * 并行初始化、启动、停止 Service 的线程
+     */
+    private static final class StartStopThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("StandardServer-startStop-" + thread.getPoolIndex());
+            return thread;
+        }
+    }
+
+    /**
+     * 名称 + 守护线程
+     */
+    private static final class NamedThreadFactory implements ThreadFactory {
+
+        private final String namePrefix;
+
+        private final AtomicInteger threadNumber = new AtomicInteger(1);
+
+        NamedThreadFactory(String namePrefix) {
+            this.namePrefix = namePrefix;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, namePrefix + threadNumber.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package com.nabob.conch.tomcat.core.catalina.core;
+
+import com.nabob.conch.tomcat.core.catalina.Server;
+import com.nabob.conch.tomcat.core.catalina.Service;
+import com.nabob.conch.tomcat.core.catalina.lifecycle.LifecycleBase;
+import com.nabob.conch.tomcat.core.catalina.lifecycle.LifecycleException;
+import com.nabob.conch.tomcat.core.catalina.lifecycle.LifecycleState;
+import com.nabob.conch.tomcat.core.juli.logging.Log;
+import com.nabob.conch.tomcat.core.juli.logging.LogFactory;
+
+import java.util.Arrays;
+
+/**
+ * Service 标准实现
+ * <p>
+ * 连接器、容器组件暂未实现，只管理名称、上级 Server 和依赖的事业部
+ *
+ * @author Adam
+ * @since 2024/1/29
+ */
+public class StandardService extends LifecycleBase implements Service {
+
+    private static final Log log = LogFactory.getLog(StandardService.class);
+
+    private String name = null;
+
+    private Server server = null;
+
+    /**
+     * 依赖的事业部（名称）
+     */
+    private String[] dependencies = new String[0];
+
+    private final Object dependenciesLock = new Object();
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    @Override
+    public Server getServer() {
+        return server;
+    }
+
+    @Override
+    public void setServer(Server server) {
+        this.server = server;
+    }
+
+    @Override
+    public void addDependency(String serviceName) {
+        synchronized (dependenciesLock) {
+            if (Arrays.asList(dependencies).contains(serviceName)) {
+                return;
+            }
+            String[] results = Arrays.copyOf(dependencies, dependencies.length + 1);
+            results[dependencies.length] = serviceName;
+            dependencies = results;
+        }
+    }
+
+    @Override
+    public String[] findDependencies() {
+        synchronized (dependenciesLock) {
+            return dependencies.clone();
+        }
+    }
+
+    @Override
+    public void removeDependency(String serviceName) {
+        synchronized (dependenciesLock) {
+            dependencies = Arrays.stream(dependencies)
+                .filter(dependency -> !dependency.equals(serviceName))
+                .toArray(String[]::new);
+        }
+    }
+
+    @Override
+    protected void initInternal() throws LifecycleException {
+        // 连接器、容器组件暂未实现
+    }
+
+    @Override
+    protected void startInternal() throws LifecycleException {
+        if (log.isInfoEnabled()) {
+            log.info("Starting service [{}]", name);
+        }
+        setState(LifecycleState.STARTING);
+    }
+
+    @Override
+    protected void stopInternal() throws LifecycleException {
+        if (log.isInfoEnabled()) {
+            log.info("Stopping service [{}]", name);
+        }
+        setState(LifecycleState.STOPPING);
+    }
+
+    @Override
+    protected void destroyInternal() throws LifecycleException {
+        // 连接器、容器组件暂未实现
+    }
+
+    @Override
+    public String toString() {
+        return "StandardService[" + name + "]";
+    }
+}
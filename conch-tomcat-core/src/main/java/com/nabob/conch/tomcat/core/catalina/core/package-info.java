@@ -0,0 +1,7 @@
+/**
+ * Catalina 核心组件的标准实现
+ *
+ * @author Adam
+ * @since 2024/1/29
+ */
+package com.nabob.conch.tomcat.core.catalina.core;
\ No newline at end of file
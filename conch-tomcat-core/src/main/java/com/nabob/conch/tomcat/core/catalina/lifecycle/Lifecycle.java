@@ -2,30 +2,69 @@ package com.nabob.conch.tomcat.core.catalina.lifecycle;
 
 /**
  * 生命周期
+ * <p>
+ * 状态流转：
+ * <pre>
+ * NEW -> INITIALIZING -> INITIALIZED -> STARTING_PREP -> STARTING -> STARTED
+ *     -> STOPPING_PREP -> STOPPING -> STOPPED -> DESTROYING -> DESTROYED
+ * </pre>
+ * 任一步失败进入 FAILED；STOPPED 之后可以再次 start
  *
  * @author Adam
  * @since 2023/12/5
  */
 public interface Lifecycle {
 
+    /**
+     * 添加 生命周期监听器，订阅全部事件
+     */
+    void addLifecycleListener(LifecycleListener listener);
+
+    /**
+     * 添加 生命周期监听器，只订阅指定类型的事件
+     *
+     * @param eventMask 订阅的事件类型掩码，见 {@link LifecycleEventType#mask(LifecycleEventType...)}
+     */
+    void addLifecycleListener(LifecycleListener listener, int eventMask);
+
+    /**
+     * 查找 全部生命周期监听器
+     */
+    LifecycleListener[] findLifecycleListeners();
+
+    /**
+     * 移除 生命周期监听器
+     */
+    void removeLifecycleListener(LifecycleListener listener);
+
     /**
      * 初始化
      */
-    void init();
+    void init() throws LifecycleException;
 
     /**
      * 开始
      */
-    void start();
+    void start() throws LifecycleException;
 
     /**
      * 停止
      */
-    void stop();
+    void stop() throws LifecycleException;
 
     /**
      * 销毁
      */
-    void destroy();
+    void destroy() throws LifecycleException;
+
+    /**
+     * 当前状态
+     */
+    LifecycleState getState();
+
+    /**
+     * 当前状态名称
+     */
+    String getStateName();
 
 }
@@ -0,0 +1,427 @@
+package com.nabob.conch.tomcat.core.catalina.lifecycle;
+
+import com.nabob.conch.tomcat.core.juli.logging.Log;
+import com.nabob.conch.tomcat.core.juli.logging.LogFactory;
+
+import java.util.Arrays;
+
+/**
+ * 生命周期 基础实现
+ * <p>
+ * 模板方法：init、start、stop、destroy 负责状态检查、状态流转和触发事件，子类只实现 xxxInternal；
+ * startInternal 结束前子类必须 {@link #setState(LifecycleState)} 为 STARTING，stopInternal 结束前必须设置为 STOPPING
+ * <p>
+ * 生命周期方法在组件上 synchronized，同一组件的状态流转是串行的，不同组件可以在不同线程并行流转
+ * <p>
+ * 事件分发：
+ * - 监听器按订阅的事件类型分组，写时复制（添加、移除时重建），触发事件时只遍历订阅了该类型的监听器，不加锁
+ * - 不带数据的事件按事件类型缓存在组件上，触发事件不创建对象
+ * <p>
+ * 记录进入每个状态的时间（System.nanoTime），由 {@link LifecycleProfiler} 汇总为各组件的初始化、启动、停止、销毁耗时；
+ * 每次 init、start、stop、destroy 同时记录为 JFR 事件 {@link LifecycleTransitionEvent}（默认不开启）
+ *
+ * @author Adam
+ * @since 2024/1/29
+ */
+public abstract class LifecycleBase implements Lifecycle {
+
+    private static final Log log = LogFactory.getLog(LifecycleBase.class);
+
+    private static final LifecycleEventType[] EVENT_TYPES = LifecycleEventType.values();
+
+    private static final LifecycleState[] STATES = LifecycleState.values();
+
+    /**
+     * 生命周期监听器，写时复制
+     */
+    private volatile ListenerTable lifecycleListeners = ListenerTable.EMPTY;
+
+    private final Object lifecycleListenersLock = new Object();
+
+    /**
+     * 不带数据的事件，按事件类型缓存
+     */
+    private final LifecycleEvent[] cachedEvents = new LifecycleEvent[EVENT_TYPES.length];
+
+    /**
+     * 当前状态
+     */
+    private volatile LifecycleState state = LifecycleState.NEW;
+
+    /**
+     * 最近一次进入各状态的时间（System.nanoTime），0 表示没有进入过
+     */
+    private final long[] stateTimes = new long[STATES.length];
+
+    /**
+     * 子类的生命周期方法失败时是否抛出 LifecycleException，为 false 时只记录日志
+     */
+    private boolean throwOnFailure = true;
+
+    public boolean getThrowOnFailure() {
+        return throwOnFailure;
+    }
+
+    public void setThrowOnFailure(boolean throwOnFailure) {
+        this.throwOnFailure = throwOnFailure;
+    }
+
+    @Override
+    public void addLifecycleListener(LifecycleListener listener) {
+        addLifecycleListener(listener, LifecycleEventType.ALL);
+    }
+
+    @Override
+    public void addLifecycleListener(LifecycleListener listener, int eventMask) {
+        synchronized (lifecycleListenersLock) {
+            lifecycleListeners = lifecycleListeners.add(listener, eventMask & LifecycleEventType.ALL);
+        }
+    }
+
+    @Override
+    public LifecycleListener[] findLifecycleListeners() {
+        return lifecycleListeners.listeners.clone();
+    }
+
+    @Override
+    public void removeLifecycleListener(LifecycleListener listener) {
+        synchronized (lifecycleListenersLock) {
+            lifecycleListeners = lifecycleListeners.remove(listener);
+        }
+    }
+
+    /**
+     * 触发事件，只通知订阅了该事件类型的监听器
+     */
+    protected void fireLifecycleEvent(LifecycleEventType type, Object data) {
+        LifecycleListener[] interested = lifecycleListeners.byType[type.ordinal()];
+        if (interested.length == 0) {
+            return;
+        }
+        LifecycleEvent event = data == null ? cachedEvent(type) : new LifecycleEvent(this, data, type);
+        for (LifecycleListener listener : interested) {
+            listener.lifecycleEvent(event);
+        }
+    }
+
+    private LifecycleEvent cachedEvent(LifecycleEventType type) {
+        LifecycleEvent event = cachedEvents[type.ordinal()];
+        if (event == null) {
+            // 事件不可变，并发创建时任一个都可以使用
+            event = new LifecycleEvent(this, null, type);
+            cachedEvents[type.ordinal()] = event;
+        }
+        return event;
+    }
+
+    @Override
+    public final synchronized void init() throws LifecycleException {
+        if (!state.equals(LifecycleState.NEW)) {
+            invalidTransition(LifecycleEventType.BEFORE_INIT_EVENT);
+        }
+
+        LifecycleTransitionEvent event = new LifecycleTransitionEvent();
+        event.begin();
+        try {
+            setStateInternal(LifecycleState.INITIALIZING, null, false);
+            initInternal();
+            setStateInternal(LifecycleState.INITIALIZED, null, false);
+        } catch (Throwable t) {
+            handleSubClassException(t, "Failed to initialize component [" + this + "]");
+        } finally {
+            event.commit(this, "init");
+        }
+    }
+
+    /**
+     * 子类初始化
+     */
+    protected abstract void initInternal() throws LifecycleException;
+
+    @Override
+    public final synchronized void start() throws LifecycleException {
+        if (LifecycleState.STARTING_PREP.equals(state) || LifecycleState.STARTING.equals(state) ||
+            LifecycleState.STARTED.equals(state)) {
+            if (log.isDebugEnabled()) {
+                log.debug("The start() method was called on component [{}] after start() had already been called",
+                    this);
+            }
+            return;
+        }
+
+        if (state.equals(LifecycleState.NEW)) {
+            init();
+        } else if (state.equals(LifecycleState.FAILED)) {
+            stop();
+        } else if (!state.equals(LifecycleState.INITIALIZED) && !state.equals(LifecycleState.STOPPED)) {
+            invalidTransition(LifecycleEventType.BEFORE_START_EVENT);
+        }
+
+        LifecycleTransitionEvent event = new LifecycleTransitionEvent();
+        event.begin();
+        try {
+            setStateInternal(LifecycleState.STARTING_PREP, null, false);
+            startInternal();
+            if (state.equals(LifecycleState.FAILED)) {
+                // 子类设置为 FAILED 表示启动失败，需要清理已经启动的部分
+                stop();
+            } else if (!state.equals(LifecycleState.STARTING)) {
+                invalidTransition(LifecycleEventType.AFTER_START_EVENT);
+            } else {
+                setStateInternal(LifecycleState.STARTED, null, false);
+            }
+        } catch (Throwable t) {
+            handleSubClassException(t, "Failed to start component [" + this + "]");
+        } finally {
+            event.commit(this, "start");
+        }
+    }
+
+    /**
+     * 子类开始，结束前必须设置状态为 STARTING
+     */
+    protected abstract void startInternal() throws LifecycleException;
+
+    @Override
+    public final synchronized void stop() throws LifecycleException {
+        if (LifecycleState.STOPPING_PREP.equals(state) || LifecycleState.STOPPING.equals(state) ||
+            LifecycleState.STOPPED.equals(state)) {
+            if (log.isDebugEnabled()) {
+                log.debug("The stop() method was called on component [{}] after stop() had already been called",
+                    this);
+            }
+            return;
+        }
+
+        if (state.equals(LifecycleState.NEW)) {
+            state = LifecycleState.STOPPED;
+            return;
+        }
+
+        if (!state.equals(LifecycleState.STARTED) && !state.equals(LifecycleState.FAILED)) {
+            invalidTransition(LifecycleEventType.BEFORE_STOP_EVENT);
+        }
+
+        LifecycleTransitionEvent event = new LifecycleTransitionEvent();
+        event.begin();
+        try {
+            if (state.equals(LifecycleState.FAILED)) {
+                // 不进入 STOPPING_PREP（该状态是可用的），但仍然触发 BEFORE_STOP_EVENT
+                stateTimes[LifecycleState.STOPPING_PREP.ordinal()] = System.nanoTime();
+                fireLifecycleEvent(LifecycleEventType.BEFORE_STOP_EVENT, null);
+            } else {
+                setStateInternal(LifecycleState.STOPPING_PREP, null, false);
+            }
+
+            stopInternal();
+
+            if (!state.equals(LifecycleState.STOPPING) && !state.equals(LifecycleState.FAILED)) {
+                invalidTransition(LifecycleEventType.AFTER_STOP_EVENT);
+            }
+
+            setStateInternal(LifecycleState.STOPPED, null, false);
+        } catch (Throwable t) {
+            handleSubClassException(t, "Failed to stop component [" + this + "]");
+        } finally {
+            event.commit(this, "stop");
+        }
+    }
+
+    /**
+     * 子类停止，结束前必须设置状态为 STOPPING
+     */
+    protected abstract void stopInternal() throws LifecycleException;
+
+    @Override
+    public final synchronized void destroy() throws LifecycleException {
+        if (LifecycleState.FAILED.equals(state)) {
+            try {
+                // 先清理已经启动的部分
+                stop();
+            } catch (LifecycleException e) {
+                log.error("Failed to stop component [" + this + "] before destroy", e);
+            }
+        }
+
+        if (LifecycleState.DESTROYING.equals(state) || LifecycleState.DESTROYED.equals(state)) {
+            if (log.isDebugEnabled()) {
+                log.debug("The destroy() method was called on component [{}] after destroy() had already been called",
+                    this);
+            }
+            return;
+        }
+
+        if (!state.equals(LifecycleState.STOPPED) && !state.equals(LifecycleState.FAILED) &&
+            !state.equals(LifecycleState.NEW) && !state.equals(LifecycleState.INITIALIZED)) {
+            invalidTransition(LifecycleEventType.BEFORE_DESTROY_EVENT);
+        }
+
+        LifecycleTransitionEvent event = new LifecycleTransitionEvent();
+        event.begin();
+        try {
+            setStateInternal(LifecycleState.DESTROYING, null, false);
+            destroyInternal();
+            setStateInternal(LifecycleState.DESTROYED, null, false);
+        } catch (Throwable t) {
+            handleSubClassException(t, "Failed to destroy component [" + this + "]");
+        } finally {
+            event.commit(this, "destroy");
+        }
+    }
+
+    /**
+     * 子类销毁
+     */
+    protected abstract void destroyInternal() throws LifecycleException;
+
+    @Override
+    public LifecycleState getState() {
+        return state;
+    }
+
+    @Override
+    public String getStateName() {
+        return getState().toString();
+    }
+
+    /**
+     * 最近一次进入该状态的时间（System.nanoTime），没有进入过时返回 0
+     */
+    public long getStateTime(LifecycleState state) {
+        return stateTimes[state.ordinal()];
+    }
+
+    /**
+     * 子组件，{@link LifecycleProfiler} 据此生成耗时树
+     */
+    public Lifecycle[] findLifecycleChildren() {
+        return new Lifecycle[0];
+    }
+
+    /**
+     * 子类在 startInternal、stopInternal 中设置状态
+     */
+    protected synchronized void setState(LifecycleState state) throws LifecycleException {
+        setStateInternal(state, null, true);
+    }
+
+    protected synchronized void setState(LifecycleState state, Object data) throws LifecycleException {
+        setStateInternal(state, data, true);
+    }
+
+    private synchronized void setStateInternal(LifecycleState state, Object data, boolean check)
+        throws LifecycleException {
+        if (log.isDebugEnabled()) {
+            log.debug("Setting state for [{}] to [{}]", this, state);
+        }
+
+        if (check) {
+            // 子类只能设置 STARTING、STOPPING、FAILED
+            if (state == null) {
+                invalidTransition("null");
+                return;
+            }
+
+            if (!(state == LifecycleState.FAILED ||
+                (this.state == LifecycleState.STARTING_PREP && state == LifecycleState.STARTING) ||
+                (this.state == LifecycleState.STOPPING_PREP && state == LifecycleState.STOPPING) ||
+                (this.state == LifecycleState.FAILED && state == LifecycleState.STOPPING))) {
+                invalidTransition(state.name());
+            }
+        }
+
+        this.state = state;
+        stateTimes[state.ordinal()] = System.nanoTime();
+        LifecycleEventType lifecycleEvent = state.getLifecycleEvent();
+        if (lifecycleEvent != null) {
+            fireLifecycleEvent(lifecycleEvent, data);
+        }
+    }
+
+    private void invalidTransition(LifecycleEventType type) throws LifecycleException {
+        invalidTransition(type.getType());
+    }
+
+    private void invalidTransition(String type) throws LifecycleException {
+        throw new LifecycleException("An invalid Lifecycle transition was attempted ([" + type +
+            "]) for component [" + this + "] in state [" + state + "]");
+    }
+
+    private void handleSubClassException(Throwable t, String message) throws LifecycleException {
+        setStateInternal(LifecycleState.FAILED, null, false);
+        if (t instanceof VirtualMachineError) {
+            throw (VirtualMachineError) t;
+        }
+        if (getThrowOnFailure()) {
+            if (!(t instanceof LifecycleException)) {
+                t = new LifecycleException(message, t);
+            }
+            throw (LifecycleException) t;
+        } else {
+            log.error(message, t);
+        }
+    }
+
+    /**
+     * 监听器及其订阅的事件类型，不可变，添加、移除时整体替换
+     */
+    private static final class ListenerTable {
+
+        static final ListenerTable EMPTY = new ListenerTable(new LifecycleListener[0], new int[0]);
+
+        /**
+         * 按添加顺序
+         */
+        final LifecycleListener[] listeners;
+        final int[] masks;
+
+        /**
+         * 事件类型 -> 订阅了该类型的监听器，按添加顺序
+         */
+        final LifecycleListener[][] byType;
+
+        ListenerTable(LifecycleListener[] listeners, int[] masks) {
+            this.listeners = listeners;
+            this.masks = masks;
+            this.byType = new LifecycleListener[EVENT_TYPES.length][];
+            for (LifecycleEventType type : EVENT_TYPES) {
+                int count = 0;
+                for (int mask : masks) {
+                    if ((mask & type.mask()) != 0) {
+                        count++;
+                    }
+                }
+                LifecycleListener[] interested = new LifecycleListener[count];
+                for (int i = 0, j = 0; i < listeners.length; i++) {
+                    if ((masks[i] & type.mask()) != 0) {
+                        interested[j++] = listeners[i];
+                    }
+                }
+                byType[type.ordinal()] = interested;
+            }
+        }
+
+        ListenerTable add(LifecycleListener listener, int mask) {
+            LifecycleListener[] newListeners = Arrays.copyOf(listeners, listeners.length + 1);
+            int[] newMasks = Arrays.copyOf(masks, masks.length + 1);
+            newListeners[listeners.length] = listener;
+            newMasks[masks.length] = mask;
+            return new ListenerTable(newListeners, newMasks);
+        }
+
+        ListenerTable remove(LifecycleListener listener) {
+            for (int i = 0; i < listeners.length; i++) {
+                if (listeners[i] == listener) {
+                    LifecycleListener[] newListeners = new LifecycleListener[listeners.length - 1];
+                    int[] newMasks = new int[masks.length - 1];
+                    System.arraycopy(listeners, 0, newListeners, 0, i);
+                    System.arraycopy(listeners, i + 1, newListeners, i, listeners.length - i - 1);
+                    System.arraycopy(masks, 0, newMasks, 0, i);
+                    System.arraycopy(masks, i + 1, newMasks, i, masks.length - i - 1);
+                    return new ListenerTable(newListeners, newMasks);
+                }
+            }
+            return this;
+        }
+    }
+}
@@ -4,6 +4,18 @@ import java.util.EventObject;
 
 /**
  * 生命周期事件
+ * <p>
+ * 事件类型是 {@link LifecycleEventType} 枚举，判断事件类型使用 {@link #is(LifecycleEventType)}：
+ * <pre>
+ * // 事件类型是字符串常量时的写法，迁移前
+ * if ("start".equals(event.getType())) { ... }
+ * // 迁移后
+ * if (event.is(LifecycleEventType.START_EVENT)) { ... }
+ * </pre>
+ * 注意 {@code LifecycleEventType.START_EVENT.equals(event.getType())} 能编译但永远为 false（枚举与字符串比较）。
+ * 只关心部分事件类型时，优先在注册时订阅，见 {@link Lifecycle#addLifecycleListener(LifecycleListener, int)}
+ * <p>
+ * 不可变；不带数据的事件由 {@link LifecycleBase} 按组件、事件类型缓存复用，监听器不应持有事件用于比较身份
  *
  * @author Adam
  * @since 2023/12/5
@@ -15,14 +27,14 @@ public final class LifecycleEvent extends EventObject {
     /**
      * 数据
      */
-    private Object data;
+    private final Object data;
 
     /**
      * 事件类型
      */
-    private String type;
+    private final LifecycleEventType type;
 
-    public LifecycleEvent(Lifecycle lifecycle, Object data, String type) {
+    public LifecycleEvent(Lifecycle lifecycle, Object data, LifecycleEventType type) {
         super(lifecycle);
         this.data = data;
         this.type = type;
@@ -32,10 +44,28 @@ public final class LifecycleEvent extends EventObject {
         return data;
     }
 
-    public String getType() {
+    public LifecycleEventType getEventType() {
         return type;
     }
 
+    /**
+     * 是否为指定类型的事件
+     */
+    public boolean is(LifecycleEventType type) {
+        return this.type == type;
+    }
+
+    /**
+     * 事件类型名称，与 Tomcat 的事件类型字符串一致
+     *
+     * @deprecated 用于兼容按字符串比较事件类型的监听器，判断事件类型使用 {@link #is(LifecycleEventType)}，
+     * 需要名称时使用 {@code getEventType().getType()}
+     */
+    @Deprecated
+    public String getType() {
+        return type.getType();
+    }
+
     public Lifecycle getLifecycle() {
         return (Lifecycle) getSource();
     }
@@ -2,53 +2,114 @@ package com.nabob.conch.tomcat.core.catalina.lifecycle;
 
 /**
  * LifecycleEvent Type
+ * <p>
+ * 监听器可以只订阅部分事件类型：{@link Lifecycle#addLifecycleListener(LifecycleListener, int)}，
+ * 订阅的类型用位掩码表示，见 {@link #mask(LifecycleEventType...)}、{@link #mask(LifecycleState...)}
+ * <p>
+ * 事件类型原来是字符串常量，迁移时把 {@code XXX_EVENT.equals(event.getType())} 改为
+ * {@link LifecycleEvent#is(LifecycleEventType) event.is(XXX_EVENT)}：枚举与 {@link LifecycleEvent#getType()} 返回的字符串比较
+ * 能编译但永远为 false
  *
  * @author Adam
  * @since 2023/12/5
  */
-public interface LifecycleEventType {
+public enum LifecycleEventType {
 
     /**
      * 初始化前
      */
-    String BEFORE_INIT_EVENT = "before_init";
+    BEFORE_INIT_EVENT("before_init"),
     /**
      * 初始化后
      */
-    String AFTER_INIT_EVENT = "after_init";
+    AFTER_INIT_EVENT("after_init"),
 
     /**
      * 开始
      */
-    String START_EVENT = "start";
+    START_EVENT("start"),
     /**
      * 开始前
      */
-    String BEFORE_START_EVENT = "before_start";
+    BEFORE_START_EVENT("before_start"),
     /**
      * 开始后
      */
-    String AFTER_START_EVENT = "after_start";
+    AFTER_START_EVENT("after_start"),
 
     /**
      * 停止
      */
-    String STOP_EVENT = "stop";
+    STOP_EVENT("stop"),
     /**
      * 停止前
      */
-    String BEFORE_STOP_EVENT = "before_stop";
+    BEFORE_STOP_EVENT("before_stop"),
     /**
      * 停止后
      */
-    String AFTER_STOP_EVENT = "after_stop";
+    AFTER_STOP_EVENT("after_stop"),
 
     /**
      * 销毁前
      */
-    String BEFORE_DESTROY_EVENT = "before_destroy";
+    BEFORE_DESTROY_EVENT("before_destroy"),
     /**
      * 销毁后
      */
-    String AFTER_DESTROY_EVENT = "after_destroy";
+    AFTER_DESTROY_EVENT("after_destroy");
+
+    /**
+     * 订阅全部事件类型的掩码
+     */
+    public static final int ALL = (1 << values().length) - 1;
+
+    private final String type;
+
+    LifecycleEventType(String type) {
+        this.type = type;
+    }
+
+    /**
+     * 事件类型名称，与 Tomcat 的事件类型字符串一致
+     */
+    public String getType() {
+        return type;
+    }
+
+    /**
+     * 该事件类型的掩码
+     */
+    public int mask() {
+        return 1 << ordinal();
+    }
+
+    /**
+     * 订阅指定事件类型的掩码
+     */
+    public static int mask(LifecycleEventType... types) {
+        int mask = 0;
+        for (LifecycleEventType type : types) {
+            mask |= type.mask();
+        }
+        return mask;
+    }
+
+    /**
+     * 订阅进入指定状态时触发的事件的掩码，不触发事件的状态（NEW、FAILED）被忽略
+     */
+    public static int mask(LifecycleState... states) {
+        int mask = 0;
+        for (LifecycleState state : states) {
+            if (state.getLifecycleEvent() != null) {
+                mask |= state.getLifecycleEvent().mask();
+            }
+        }
+        return mask;
+    }
+
+    @Override
+    public String toString() {
+        return type;
+    }
 }
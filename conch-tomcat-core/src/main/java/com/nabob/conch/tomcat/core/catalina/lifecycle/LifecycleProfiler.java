@@ -0,0 +1,235 @@
+package com.nabob.conch.tomcat.core.catalina.lifecycle;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.InstanceNotFoundException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * 生命周期耗时统计
+ * <p>
+ * 根据 {@link LifecycleBase} 记录的进入各状态的时间，计算根组件及其子组件（{@link LifecycleBase#findLifecycleChildren()}）
+ * 各阶段的耗时，生成耗时树：
+ * <pre>
+ * StandardServer init=1.204ms start=930.113ms
+ *   StandardService[A] init=0.051ms@+0.310ms start=300.204ms@+0.415ms
+ *   StandardService[C] init=0.032ms@+0.402ms start=300.187ms@+300.701ms
+ * slowest start path: StandardServer > StandardService[D] (930.113ms)
+ * </pre>
+ * - 耗时为最近一次执行该阶段的耗时，{@code @+} 为相对根组件该阶段开始的时间，并行启动时可以看出组件之间的等待
+ * - 最慢路径：从根组件开始，每层取该阶段最晚完成的子组件，即决定整体耗时的组件
+ * <p>
+ * 由 Catalina 在启动、停止后写入日志，并注册为 platform MBean，见 {@link LifecycleProfilerMBean}
+ *
+ * @author Adam
+ * @since 2024/1/30
+ */
+public final class LifecycleProfiler implements LifecycleProfilerMBean {
+
+    public static final String OBJECT_NAME = "com.nabob.conch.tomcat.core.catalina:type=LifecycleProfiler";
+
+    /**
+     * 生命周期阶段：开始状态 -> 结束状态
+     */
+    public enum Phase {
+
+        INIT("init", LifecycleState.INITIALIZING, LifecycleState.INITIALIZED),
+        START("start", LifecycleState.STARTING_PREP, LifecycleState.STARTED),
+        STOP("stop", LifecycleState.STOPPING_PREP, LifecycleState.STOPPED),
+        DESTROY("destroy", LifecycleState.DESTROYING, LifecycleState.DESTROYED);
+
+        private final String label;
+        private final LifecycleState begin;
+        private final LifecycleState end;
+
+        Phase(String label, LifecycleState begin, LifecycleState end) {
+            this.label = label;
+            this.begin = begin;
+            this.end = end;
+        }
+    }
+
+    private final Lifecycle root;
+
+    public LifecycleProfiler(Lifecycle root) {
+        this.root = root;
+    }
+
+    /**
+     * 组件某阶段的开始时间（System.nanoTime），没有执行时返回 0
+     */
+    public static long beginTime(Lifecycle component, Phase phase) {
+        if (!(component instanceof LifecycleBase)) {
+            return 0;
+        }
+        return ((LifecycleBase) component).getStateTime(phase.begin);
+    }
+
+    /**
+     * 组件某阶段的结束时间（System.nanoTime），没有完成时返回 0
+     */
+    public static long endTime(Lifecycle component, Phase phase) {
+        long begin = beginTime(component, phase);
+        if (begin == 0) {
+            return 0;
+        }
+        long end = ((LifecycleBase) component).getStateTime(phase.end);
+        // 结束时间早于开始时间：该阶段再次执行，还没有完成
+        return end - begin >= 0 ? end : 0;
+    }
+
+    /**
+     * 组件某阶段的耗时（纳秒），没有执行或者没有完成时返回 -1
+     */
+    public static long nanos(Lifecycle component, Phase phase) {
+        long end = endTime(component, phase);
+        return end == 0 ? -1 : end - beginTime(component, phase);
+    }
+
+    /**
+     * 指定阶段的耗时树，每个阶段附带最慢路径
+     */
+    public String format(Phase... phases) {
+        StringBuilder sb = new StringBuilder(256);
+        format(root, 0, phases, sb, Collections.newSetFromMap(new IdentityHashMap<>()));
+        for (Phase phase : phases) {
+            if (endTime(root, phase) != 0) {
+                sb.append("slowest ").append(phase.label).append(" path: ").append(slowestPath(phase)).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private void format(Lifecycle component, int depth, Phase[] phases, StringBuilder sb, Set<Lifecycle> visited) {
+        if (!visited.add(component)) {
+            return;
+        }
+        for (int i = 0; i < depth; i++) {
+            sb.append("  ");
+        }
+        sb.append(component);
+        for (Phase phase : phases) {
+            long nanos = nanos(component, phase);
+            if (nanos < 0) {
+                continue;
+            }
+            sb.append(' ').append(phase.label).append('=').append(millis(nanos)).append("ms");
+            long rootBegin = beginTime(root, phase);
+            if (depth > 0 && rootBegin != 0) {
+                sb.append("@+").append(millis(beginTime(component, phase) - rootBegin)).append("ms");
+            }
+        }
+        sb.append('\n');
+        for (Lifecycle child : children(component)) {
+            format(child, depth + 1, phases, sb, visited);
+        }
+    }
+
+    /**
+     * 从根组件开始，每层取该阶段最晚完成的子组件
+     */
+    private String slowestPath(Phase phase) {
+        StringBuilder sb = new StringBuilder();
+        Set<Lifecycle> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Lifecycle component = root;
+        while (component != null && visited.add(component)) {
+            if (sb.length() > 0) {
+                sb.append(" > ");
+            }
+            sb.append(component);
+            Lifecycle slowest = null;
+            long slowestEnd = 0;
+            for (Lifecycle child : children(component)) {
+                long end = endTime(child, phase);
+                if (end != 0 && (slowest == null || end - slowestEnd > 0)) {
+                    slowest = child;
+                    slowestEnd = end;
+                }
+            }
+            component = slowest;
+        }
+        sb.append(" (").append(millis(nanos(root, phase))).append("ms)");
+        return sb.toString();
+    }
+
+    private static Lifecycle[] children(Lifecycle component) {
+        if (component instanceof LifecycleBase) {
+            return ((LifecycleBase) component).findLifecycleChildren();
+        }
+        return new Lifecycle[0];
+    }
+
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+    }
+
+    private double phaseMillis(Phase phase) {
+        long nanos = nanos(root, phase);
+        return nanos < 0 ? -1 : nanos / 1_000_000.0;
+    }
+
+    /**
+     * 注册为 platform MBean，同名 MBean 已存在时替换
+     */
+    public void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            try {
+                server.registerMBean(this, name);
+            } catch (InstanceAlreadyExistsException e) {
+                server.unregisterMBean(name);
+                server.registerMBean(this, name);
+            }
+        } catch (Exception | LinkageError e) {
+            // JMX 不可用时不影响启动
+        }
+    }
+
+    public void unregister() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(new ObjectName(OBJECT_NAME));
+        } catch (InstanceNotFoundException e) {
+            // Ignore
+        } catch (Exception | LinkageError e) {
+            // JMX 不可用
+        }
+    }
+
+    // ------------------------------------------------------------- MBean
+
+    @Override
+    public String getTimingTree() {
+        return format(Phase.values());
+    }
+
+    @Override
+    public double getInitMillis() {
+        return phaseMillis(Phase.INIT);
+    }
+
+    @Override
+    public double getStartMillis() {
+        return phaseMillis(Phase.START);
+    }
+
+    @Override
+    public double getStopMillis() {
+        return phaseMillis(Phase.STOP);
+    }
+
+    @Override
+    public double getDestroyMillis() {
+        return phaseMillis(Phase.DESTROY);
+    }
+
+    @Override
+    public String getSlowestStartPath() {
+        return endTime(root, Phase.START) == 0 ? null : slowestPath(Phase.START);
+    }
+}
@@ -0,0 +1,44 @@
+package com.nabob.conch.tomcat.core.catalina.lifecycle;
+
+/**
+ * 生命周期耗时 MBean
+ * <p>
+ * ObjectName：{@value LifecycleProfiler#OBJECT_NAME}
+ * <p>
+ * 耗时为最近一次执行该阶段的耗时，没有执行或者没有完成时为 -1
+ *
+ * @author Adam
+ * @since 2024/1/30
+ */
+public interface LifecycleProfilerMBean {
+
+    /**
+     * 耗时树，格式同启动日志
+     */
+    String getTimingTree();
+
+    /**
+     * 根组件初始化耗时（毫秒）
+     */
+    double getInitMillis();
+
+    /**
+     * 根组件启动耗时（毫秒）
+     */
+    double getStartMillis();
+
+    /**
+     * 根组件停止耗时（毫秒）
+     */
+    double getStopMillis();
+
+    /**
+     * 根组件销毁耗时（毫秒）
+     */
+    double getDestroyMillis();
+
+    /**
+     * 启动最慢的路径：从根组件开始，每层取最晚启动完成的子组件
+     */
+    String getSlowestStartPath();
+}
@@ -28,9 +28,9 @@ public enum LifecycleState {
     /**
      * 事件类型
      */
-    private final String lifecycleEvent;
+    private final LifecycleEventType lifecycleEvent;
 
-    private LifecycleState(boolean available, String lifecycleEvent) {
+    private LifecycleState(boolean available, LifecycleEventType lifecycleEvent) {
         this.available = available;
         this.lifecycleEvent = lifecycleEvent;
     }
@@ -52,7 +52,10 @@ public enum LifecycleState {
         return available;
     }
 
-    public String getLifecycleEvent() {
+    /**
+     * 进入该状态时触发的事件类型，不触发事件时为 null
+     */
+    public LifecycleEventType getLifecycleEvent() {
         return lifecycleEvent;
     }
 }
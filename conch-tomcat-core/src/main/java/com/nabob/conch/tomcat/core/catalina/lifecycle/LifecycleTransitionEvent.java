@@ -0,0 +1,54 @@
+package com.nabob.conch.tomcat.core.catalina.lifecycle;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR 事件：组件执行一次 init、start、stop、destroy
+ * <p>
+ * 持续时间为 {@link LifecycleBase} 对应生命周期方法的耗时（包括触发事件、子组件的流转），默认不开启，开启方式：
+ * <pre>
+ * jcmd &lt;pid&gt; JFR.start settings=profile +com.nabob.conch.tomcat.core.LifecycleTransition#enabled=true
+ * </pre>
+ * 或者在 .jfc 中配置 {@code <event name="com.nabob.conch.tomcat.core.LifecycleTransition"><setting name="enabled">true</setting></event>}
+ *
+ * @author Adam
+ * @since 2024/1/31
+ */
+@Name("com.nabob.conch.tomcat.core.LifecycleTransition")
+@Label("Lifecycle Transition")
+@Category({"Conch Tomcat", "Lifecycle"})
+@Description("A component init, start, stop or destroy")
+@Enabled(false)
+@StackTrace(false)
+final class LifecycleTransitionEvent extends Event {
+
+    @Label("Component")
+    String component;
+
+    @Label("Phase")
+    @Description("init, start, stop or destroy")
+    String phase;
+
+    @Label("State")
+    @Description("Component state when the phase returned")
+    String state;
+
+    /**
+     * 没有开启、或者没有超过阈值时，不计算组件名称
+     */
+    void commit(Lifecycle lifecycle, String phase) {
+        end();
+        if (shouldCommit()) {
+            this.component = lifecycle.toString();
+            this.phase = phase;
+            this.state = lifecycle.getState().name();
+            commit();
+        }
+    }
+}
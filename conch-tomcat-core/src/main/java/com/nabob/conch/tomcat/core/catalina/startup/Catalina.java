@@ -1,6 +1,21 @@
 package com.nabob.conch.tomcat.core.catalina.startup;
 
 import com.nabob.conch.tomcat.core.catalina.Server;
+import com.nabob.conch.tomcat.core.catalina.lifecycle.LifecycleException;
+import com.nabob.conch.tomcat.core.catalina.lifecycle.LifecycleProfiler;
+import com.nabob.conch.tomcat.core.catalina.lifecycle.LifecycleState;
+import com.nabob.conch.tomcat.core.juli.logging.Log;
+import com.nabob.conch.tomcat.core.juli.logging.LogFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Catalina（创始人）
@@ -10,12 +25,16 @@ import com.nabob.conch.tomcat.core.catalina.Server;
  * 特性：
  * - 共享类加载
  * - 持有Server CEO对象
+ * - 启动、停止后把各组件的耗时树写入日志，启动时注册 {@link LifecycleProfiler} MBean，停止后注销
+ * - 向运行中的 Server 发送 shutdown 命令，见 {@link #stopServer()}
  *
  * @author Adam
  * @since 2023/12/5
  */
 public class Catalina {
 
+    private static final Log log = LogFactory.getLog(Catalina.class);
+
     /**
      * The shared extensions class loader for this server.
      */
@@ -25,4 +44,149 @@ public class Catalina {
      * CEO
      */
     protected Server server = null;
+
+    /**
+     * 启动后是否 await，await 结束后停止
+     */
+    protected boolean await = false;
+
+    /**
+     * 生命周期耗时
+     */
+    protected LifecycleProfiler profiler = null;
+
+    public Server getServer() {
+        return server;
+    }
+
+    public void setServer(Server server) {
+        this.server = server;
+    }
+
+    public boolean isAwait() {
+        return await;
+    }
+
+    public void setAwait(boolean await) {
+        this.await = await;
+    }
+
+    public ClassLoader getParentClassLoader() {
+        return parentClassLoader;
+    }
+
+    public void setParentClassLoader(ClassLoader parentClassLoader) {
+        this.parentClassLoader = parentClassLoader;
+    }
+
+    /**
+     * 启动 Server
+     */
+    public void start() {
+        if (server == null) {
+            log.error("Cannot start server, server instance is not configured");
+            return;
+        }
+        server.setCatalina(this);
+
+        profiler = new LifecycleProfiler(server);
+        profiler.register();
+
+        long t1 = System.nanoTime();
+        try {
+            server.start();
+        } catch (LifecycleException e) {
+            log.error("The required Server component failed to start so Tomcat is unable to start", e);
+            logTimings(LifecycleProfiler.Phase.INIT, LifecycleProfiler.Phase.START);
+            try {
+                server.destroy();
+            } catch (LifecycleException e1) {
+                log.debug("Failed to destroy the server", e1);
+            }
+            profiler.unregister();
+            return;
+        }
+
+        if (log.isInfoEnabled()) {
+            log.info("Server startup in [{}] milliseconds", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - t1));
+        }
+        logTimings(LifecycleProfiler.Phase.INIT, LifecycleProfiler.Phase.START);
+
+        if (await) {
+            server.await();
+            stop();
+        }
+    }
+
+    /**
+     * 停止并销毁 Server，写入耗时后注销 {@link LifecycleProfiler} MBean
+     */
+    public void stop() {
+        if (server == null) {
+            return;
+        }
+        try {
+            LifecycleState state = server.getState();
+            if (state != LifecycleState.STOPPING_PREP && state != LifecycleState.STOPPED &&
+                state != LifecycleState.DESTROYING && state != LifecycleState.DESTROYED) {
+                server.stop();
+            }
+            if (state != LifecycleState.DESTROYING && state != LifecycleState.DESTROYED) {
+                server.destroy();
+            }
+        } catch (LifecycleException e) {
+            log.error("Failed to stop the server", e);
+        }
+        logTimings(LifecycleProfiler.Phase.STOP, LifecycleProfiler.Phase.DESTROY);
+        if (profiler != null) {
+            profiler.unregister();
+        }
+    }
+
+    /**
+     * 向运行中的 Server（另一个进程）发送 shutdown 命令，地址、端口、命令取自当前配置的 Server
+     */
+    public void stopServer() {
+        if (server == null) {
+            log.error("Cannot stop server, server instance is not configured");
+            return;
+        }
+        SocketAddress endpoint;
+        SocketChannel channel = null;
+        try {
+            if (server.getUnixDomainSocketPath() != null) {
+                endpoint = UnixDomainSocketAddress.of(server.getUnixDomainSocketPath());
+                channel = SocketChannel.open(StandardProtocolFamily.UNIX);
+            } else if (server.getPort() > 0) {
+                endpoint = new InetSocketAddress(server.getAddress(), server.getPort());
+                channel = SocketChannel.open();
+            } else {
+                log.error("No shutdown port configured. Shut down server through OS signal. Server not shut down.");
+                return;
+            }
+            channel.connect(endpoint);
+            ByteBuffer command = ByteBuffer.wrap((server.getShutdown() + "\n").getBytes(StandardCharsets.UTF_8));
+            while (command.hasRemaining()) {
+                channel.write(command);
+            }
+        } catch (IOException e) {
+            log.error("Could not contact [" + (server.getUnixDomainSocketPath() != null ?
+                server.getUnixDomainSocketPath() : server.getAddress() + ":" + server.getPort()) +
+                "]. Server may not be running.", e);
+        } finally {
+            if (channel != null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    private void logTimings(LifecycleProfiler.Phase... phases) {
+        if (profiler != null && log.isInfoEnabled()) {
+            log.info("Lifecycle timings:\n" + profiler.format(phases));
+        }
+    }
 }
@@ -0,0 +1,53 @@
+package com.nabob.conch.tomcat.core.juli;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.logging.LogRecord;
+
+/**
+ * 按日志级别自适应丢弃（OVERFLOW_DROP_ADAPTIVE）
+ * <p>
+ * 入队前按队列占用率决定是否丢弃当前Record，先丢弃低级别的日志：
+ * - 占用率低于 lowWatermark：全部入队
+ * - 占用率在 lowWatermark 和 highWatermark 之间：低于 sampleLevel 的日志按 1/sampleRate 采样
+ * - 占用率高于 highWatermark：低于 protectedLevel 的日志全部丢弃
+ * - protectedLevel 及以上的日志不会被丢弃，队列满时也不阻塞：丢弃一条更早入队的日志腾出空间
+ * <p>
+ * 采样使用 ThreadLocalRandom，不需要共享计数器
+ *
+ * @author Adam
+ * @since 2024/1/24
+ */
+final class AdaptiveOverflow {
+
+    private AdaptiveOverflow() {
+    }
+
+    /**
+     * 是否是受保护（不丢弃、不阻塞）的日志
+     */
+    static boolean isProtected(LogRecord record) {
+        return record.getLevel().intValue() >= AsyncFileHandler.ADAPTIVE_PROTECTED_LEVEL.intValue();
+    }
+
+    /**
+     * 按队列占用率判断是否丢弃当前Record
+     *
+     * @param size     当前队列中的Record数
+     * @param capacity 队列容量
+     * @return true 丢弃
+     */
+    static boolean shed(LogRecord record, long size, long capacity) {
+        if (isProtected(record)) {
+            return false;
+        }
+        double occupancy = (double) size / capacity;
+        if (occupancy < AsyncFileHandler.ADAPTIVE_LOW_WATERMARK) {
+            return false;
+        }
+        if (occupancy >= AsyncFileHandler.ADAPTIVE_HIGH_WATERMARK) {
+            return true;
+        }
+        return record.getLevel().intValue() < AsyncFileHandler.ADAPTIVE_SAMPLE_LEVEL.intValue() &&
+            ThreadLocalRandom.current().nextInt(AsyncFileHandler.ADAPTIVE_SAMPLE_RATE) != 0;
+    }
+}
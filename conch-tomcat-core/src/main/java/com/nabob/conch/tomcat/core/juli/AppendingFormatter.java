@@ -0,0 +1,19 @@
+package com.nabob.conch.tomcat.core.juli;
+
+import java.util.logging.LogRecord;
+
+/**
+ * 可以把日志直接追加到 StringBuilder 的 Formatter
+ * <p>
+ * FileHandler 发现 Formatter 实现了该接口时，直接格式化到复用的 StringBuilder，跳过中间的 String
+ *
+ * @author Adam
+ * @since 2024/1/18
+ */
+public interface AppendingFormatter {
+
+    /**
+     * 格式化并直接追加到 sb
+     */
+    void format(LogRecord record, StringBuilder sb);
+}
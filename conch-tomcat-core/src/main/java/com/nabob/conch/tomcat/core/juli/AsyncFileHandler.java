@@ -1,5 +1,6 @@
 package com.nabob.conch.tomcat.core.juli;
 
+import java.util.List;
 import java.util.concurrent.LinkedBlockingDeque;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.RejectedExecutionHandler;
@@ -7,6 +8,8 @@ import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
 import java.util.logging.LogRecord;
 
 /**
@@ -18,6 +21,31 @@ import java.util.logging.LogRecord;
  * 新增系统配置：
  * - org.apache.juli.AsyncOverflowDropType 默认值：1   超出队列大小后的丢弃策略类型
  * - org.apache.juli.AsyncMaxRecordCount 默认值： 10000  队列最大存放日志Record容量
+ * - org.apache.juli.AsyncQueueType 默认值：1   队列类型 1: LinkedBlockingDeque线程池 2: 无锁环形队列 RingBuffer 3: 分片队列
+ * - org.apache.juli.AsyncBatchSize 默认值：1   写线程一次批量写入的最大Record数，大于1时开启批量写（RingBuffer队列、分片队列）
+ * - org.apache.juli.AsyncBatchMaxBytes 默认值：262144   批量写缓冲区大小（以字符数近似），超过后先写入文件
+ * - org.apache.juli.AsyncWriterThreads 默认值：2   分片队列的写线程数
+ * <p>
+ * 丢弃策略类型为 5（按日志级别自适应丢弃，见 {@link AdaptiveOverflow}）时，新增系统配置：
+ * - org.apache.juli.AsyncAdaptiveLowWatermark 默认值：0.5   队列占用率超过后，低于 sampleLevel 的日志按比例采样
+ * - org.apache.juli.AsyncAdaptiveHighWatermark 默认值：0.8   队列占用率超过后，低于 protectedLevel 的日志全部丢弃
+ * - org.apache.juli.AsyncAdaptiveSampleLevel 默认值：INFO
+ * - org.apache.juli.AsyncAdaptiveSampleRate 默认值：10   采样时每 N 条保留 1 条
+ * - org.apache.juli.AsyncAdaptiveProtectedLevel 默认值：WARNING   该级别及以上的日志不丢弃，队列满时也不阻塞
+ * - org.apache.juli.AsyncAdaptiveSummaryInterval 默认值：10   每隔多少秒写一条 "N log records suppressed" 日志
+ * <p>
+ * 分片队列时，新增 Handler 配置（未配置时使用上面的系统配置）：
+ * - queueGroup 队列分组，同一分组的 Handler 共享一个队列；未配置时每个 Handler 使用独立的队列
+ * - maxRecordCount 队列最大存放日志Record容量
+ * - overflowDropType 超出队列大小后的丢弃策略类型
+ * <p>
+ * Handler 配置：
+ * - captureLocation 默认值：true   入队前是否获取日志的调用方（类名、方法名）；Formatter 不输出调用方时可关闭，
+ * 关闭后该 Handler 写出的调用方为空（OneLineSimpleFormatter 输出 logger 名称），其他 Handler 不受影响；
+ * 通过 Log 接口打日志时，如果处理该日志的 Handler 都关闭了 captureLocation，不再遍历调用栈
+ * <p>
+ * 监控指标（入队、写入、各丢弃策略的丢弃数、阻塞时间、队列最大值、入队耗时、写入耗时）注册为 platform MBean，
+ * 见 {@link AsyncLoggerMetricsMBean}
  *
  * @author Adam
  * @since 2023/12/15
@@ -37,27 +65,103 @@ public class AsyncFileHandler extends FileHandler {
     public static final int OVERFLOW_DROP_FLUSH = 3;
     // 丢弃当前 - 当前被reject的task runnable
     public static final int OVERFLOW_DROP_CURRENT = 4;
+    // 按日志级别自适应丢弃 - 先丢弃低级别的日志，高级别的日志不阻塞
+    public static final int OVERFLOW_DROP_ADAPTIVE = 5;
+
+    // 队列类型 - 单线程线程池 + LinkedBlockingDeque
+    public static final int QUEUE_TYPE_EXECUTOR = 1;
+    // 队列类型 - 预分配的无锁多生产者单消费者环形队列
+    public static final int QUEUE_TYPE_RING_BUFFER = 2;
+    // 队列类型 - 每个Handler（或分组）独立的队列 + 写线程池
+    public static final int QUEUE_TYPE_SHARDED = 3;
 
     // 默认
     public static final int DEFAULT_OVERFLOW_DROP_TYPE = 1;
     public static final int DEFAULT_MAX_RECORDS = 10000;
+    public static final int DEFAULT_QUEUE_TYPE = QUEUE_TYPE_EXECUTOR;
+    public static final int DEFAULT_BATCH_SIZE = 1;
+    public static final int DEFAULT_BATCH_MAX_BYTES = 256 * 1024;
+    public static final int DEFAULT_WRITER_THREADS = 2;
 
     // 获取配置 from System Properties
     public static final int OVERFLOW_DROP_TYPE = Integer.parseInt(System.getProperty("org.apache.juli.AsyncOverflowDropType", Integer.toString(DEFAULT_OVERFLOW_DROP_TYPE)));
     public static final int MAX_RECORDS = Integer.parseInt(System.getProperty("org.apache.juli.AsyncMaxRecordCount", Integer.toString(DEFAULT_MAX_RECORDS)));
+    public static final int QUEUE_TYPE = Integer.parseInt(System.getProperty("org.apache.juli.AsyncQueueType", Integer.toString(DEFAULT_QUEUE_TYPE)));
+    public static final int BATCH_SIZE = Integer.parseInt(System.getProperty("org.apache.juli.AsyncBatchSize", Integer.toString(DEFAULT_BATCH_SIZE)));
+    public static final int BATCH_MAX_BYTES = Integer.parseInt(System.getProperty("org.apache.juli.AsyncBatchMaxBytes", Integer.toString(DEFAULT_BATCH_MAX_BYTES)));
+    public static final int WRITER_THREADS = Integer.parseInt(System.getProperty("org.apache.juli.AsyncWriterThreads", Integer.toString(DEFAULT_WRITER_THREADS)));
+
+    // 自适应丢弃配置
+    public static final double ADAPTIVE_LOW_WATERMARK = Double.parseDouble(System.getProperty("org.apache.juli.AsyncAdaptiveLowWatermark", "0.5"));
+    public static final double ADAPTIVE_HIGH_WATERMARK = Double.parseDouble(System.getProperty("org.apache.juli.AsyncAdaptiveHighWatermark", "0.8"));
+    public static final Level ADAPTIVE_SAMPLE_LEVEL = Level.parse(System.getProperty("org.apache.juli.AsyncAdaptiveSampleLevel", Level.INFO.getName()));
+    public static final int ADAPTIVE_SAMPLE_RATE = Math.max(1, Integer.parseInt(System.getProperty("org.apache.juli.AsyncAdaptiveSampleRate", "10")));
+    public static final Level ADAPTIVE_PROTECTED_LEVEL = Level.parse(System.getProperty("org.apache.juli.AsyncAdaptiveProtectedLevel", Level.WARNING.getName()));
+    public static final long ADAPTIVE_SUMMARY_INTERVAL = Long.parseLong(System.getProperty("org.apache.juli.AsyncAdaptiveSummaryInterval", "10"));
 
     /**
-     * 异步写日志 线程池
+     * 监控指标，需在 LOGGER_SERVICE 之前初始化
+     */
+    private static final AsyncLoggerMetrics METRICS = new AsyncLoggerMetrics();
+
+    /**
+     * 异步写日志 服务
      * <p>
-     * - 只有一个线程
-     * - 阻塞队列 LinkedBlockingDeque
+     * - 只有一个写线程（分片队列时为写线程池）
+     * - 队列：阻塞队列 LinkedBlockingDeque 或 无锁环形队列 RingBuffer 或 分片队列
      * - 拒绝策略
      */
-    private static final LoggerExecutorService LOGGER_SERVICE = new LoggerExecutorService(OVERFLOW_DROP_TYPE, MAX_RECORDS);
+    private static final LoggerService LOGGER_SERVICE = createLoggerService(QUEUE_TYPE, OVERFLOW_DROP_TYPE, MAX_RECORDS);
+
+    static {
+        METRICS.register();
+    }
+
+    /**
+     * 队列分组，null 表示独立的队列（仅分片队列）
+     */
+    private final String queueGroup;
+
+    /**
+     * 队列最大存放日志Record容量（仅分片队列）
+     */
+    private final int maxRecordCount;
+
+    /**
+     * 超出队列大小后的丢弃策略类型（仅分片队列）
+     */
+    private final int overflowDropType;
+
+    /**
+     * 入队前是否获取日志的调用方
+     */
+    private final boolean captureLocation;
+
+    /**
+     * 是否使用自适应丢弃策略
+     */
+    private final boolean adaptive;
+
+    /**
+     * 自适应丢弃策略丢弃的Record数，写入 summary 后清零
+     */
+    private final LongAdder suppressed = new LongAdder();
+
+    /**
+     * 上一次写 summary 的时间
+     */
+    private volatile long lastSuppressedReport = System.nanoTime();
 
     public AsyncFileHandler() {
         super();
-        LOGGER_SERVICE.registerHandler();
+        String className = this.getClass().getName();
+        String group = getProperty(className + ".queueGroup", null);
+        queueGroup = group == null || group.isEmpty() ? null : group;
+        maxRecordCount = getIntProperty(className + ".maxRecordCount", MAX_RECORDS);
+        overflowDropType = getIntProperty(className + ".overflowDropType", OVERFLOW_DROP_TYPE);
+        captureLocation = Boolean.parseBoolean(getProperty(className + ".captureLocation", "true"));
+        adaptive = (QUEUE_TYPE == QUEUE_TYPE_SHARDED ? overflowDropType : OVERFLOW_DROP_TYPE) == OVERFLOW_DROP_ADAPTIVE;
+        LOGGER_SERVICE.registerHandler(this);
     }
 
     @Override
@@ -66,26 +170,148 @@ public class AsyncFileHandler extends FileHandler {
             return;
         }
 
-        // 在给异步线程执行前，先记录下日志的原始方法名
-        record.getSourceMethodName();
+        if (captureLocation) {
+            // 在给异步线程执行前，先记录下日志的原始方法名
+            record.getSourceMethodName();
+        }
+        // 不获取调用方时不复制 Record：是否写出调用方和线程名一样由写线程记录（见 FileHandlerThread），
+        // 同一个 Record 还会交给其他 Handler（如父 Logger 的 ConsoleHandler），写线程不能修改它
 
-        LOGGER_SERVICE.execute(new Runnable() {
+        long start = System.nanoTime();
+        // 入队时获取线程名，写线程不再按线程ID查询
+        LOGGER_SERVICE.publish(this, record, Thread.currentThread().getName());
+        METRICS.enqueueLatency(System.nanoTime() - start);
+    }
 
-            @Override
-            public void run() {
-                /*
-                 * During Tomcat shutdown, the Handlers are closed before the executor queue is flushed therefore the
-                 * closed flag is ignored if the executor is shutting down.
-                 */
-                if (!closed || LOGGER_SERVICE.isTerminating()) {
-                    publishInternal(record);
-                }
+    /**
+     * 入队前是否获取日志的调用方
+     */
+    @Override
+    public boolean isCaptureLocation() {
+        return captureLocation;
+    }
+
+    /**
+     * 复制 Record，调用方为空且不会再推断
+     * <p>
+     * 只在写线程上、Formatter 会直接读取调用方时使用：写线程上推断调用方不仅要遍历调用栈，还会修改其他 Handler
+     * 可能正在读取的 Record
+     */
+    private static LogRecord withoutLocation(LogRecord record) {
+        LogRecord copy = new LogRecord(record.getLevel(), record.getMessage());
+        copy.setLoggerName(record.getLoggerName());
+        copy.setResourceBundle(record.getResourceBundle());
+        copy.setResourceBundleName(record.getResourceBundleName());
+        copy.setParameters(record.getParameters());
+        copy.setThrown(record.getThrown());
+        copy.setSequenceNumber(record.getSequenceNumber());
+        copy.setLongThreadID(record.getLongThreadID());
+        copy.setInstant(record.getInstant());
+        copy.setSourceClassName(null);
+        copy.setSourceMethodName(null);
+        return copy;
+    }
+
+    protected void publishInternal(LogRecord record, String threadName) {
+        if (adaptive) {
+            reportSuppressed(false);
+        }
+        if (!captureLocation && !isLocationAware()) {
+            record = withoutLocation(record);
+        }
+        FileHandlerThread.setRecordThread(record, threadName, captureLocation);
+        super.publishLoggable(record);
+    }
+
+    /**
+     * 写线程批量写日志，一批只 flush 一次
+     */
+    protected void publishBatchInternal(List<LogRecord> records, List<String> threadNames) {
+        if (adaptive) {
+            reportSuppressed(false);
+        }
+        if (!captureLocation && !isLocationAware()) {
+            for (int i = 0, n = records.size(); i < n; i++) {
+                records.set(i, withoutLocation(records.get(i)));
             }
-        });
+        }
+        super.publishBatch(records, threadNames, BATCH_MAX_BYTES);
+    }
+
+    /**
+     * 自适应丢弃策略丢弃了一条该Handler的Record
+     */
+    void suppressed() {
+        suppressed.increment();
+    }
+
+    /**
+     * 距离上一次检查超过 summary 间隔（或 force）时，把这段时间内被丢弃的Record数写成一条日志
+     */
+    private void reportSuppressed(boolean force) {
+        long now = System.nanoTime();
+        if (!force && now - lastSuppressedReport < TimeUnit.SECONDS.toNanos(ADAPTIVE_SUMMARY_INTERVAL)) {
+            return;
+        }
+        lastSuppressedReport = now;
+        long count = suppressed.sumThenReset();
+        if (count > 0) {
+            LogRecord summary = new LogRecord(Level.WARNING,
+                "{0} log records suppressed by the adaptive overflow policy");
+            summary.setParameters(new Object[] {Long.toString(count)});
+            summary.setLoggerName(AsyncFileHandler.class.getName());
+            summary.setSourceClassName(AsyncFileHandler.class.getName());
+            summary.setSourceMethodName("reportSuppressed");
+            super.publish(summary);
+        }
+    }
+
+    String getQueueGroup() {
+        return queueGroup;
+    }
+
+    int getMaxRecordCount() {
+        return maxRecordCount;
     }
 
-    protected void publishInternal(LogRecord record) {
-        super.publish(record);
+    int getOverflowDropType() {
+        return overflowDropType;
+    }
+
+    private int getIntProperty(String name, int defaultValue) {
+        try {
+            return Integer.parseInt(getProperty(name, Integer.toString(defaultValue)));
+        } catch (NumberFormatException ignore) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * 异步日志监控指标
+     */
+    public static AsyncLoggerMetrics getMetrics() {
+        return METRICS;
+    }
+
+    /**
+     * 当前队列中的Record数
+     */
+    static long getQueueSize() {
+        return LOGGER_SERVICE.getQueueSize();
+    }
+
+    /**
+     * 写线程平均每批写入的Record数（RingBuffer队列、分片队列统计）
+     */
+    public static double getRecordsPerBatch() {
+        return LOGGER_SERVICE.getRecordsPerBatch();
+    }
+
+    /**
+     * 写线程最近一秒每秒 flush 次数（仅RingBuffer队列统计）
+     */
+    public static double getFlushesPerSecond() {
+        return LOGGER_SERVICE.getFlushesPerSecond();
     }
 
     @Override
@@ -99,7 +325,7 @@ public class AsyncFileHandler extends FileHandler {
             }
             closed = false;
         }
-        LOGGER_SERVICE.registerHandler();
+        LOGGER_SERVICE.registerHandler(this);
         super.open();
     }
 
@@ -114,11 +340,67 @@ public class AsyncFileHandler extends FileHandler {
             }
             closed = true;
         }
-        LOGGER_SERVICE.deregisterHandler();
+        LOGGER_SERVICE.deregisterHandler(this);
+        if (adaptive) {
+            reportSuppressed(true);
+        }
         super.close();
     }
 
-    static final class LoggerExecutorService extends ThreadPoolExecutor {
+    private static LoggerService createLoggerService(final int queueType, final int overflowDropType,
+                                                     final int maxRecords) {
+        if (queueType == QUEUE_TYPE_RING_BUFFER) {
+            return new LoggerRingBufferService(METRICS, overflowDropType, maxRecords, BATCH_SIZE);
+        }
+        if (queueType == QUEUE_TYPE_SHARDED) {
+            return new LoggerShardedService(METRICS, WRITER_THREADS, BATCH_SIZE);
+        }
+        return new LoggerExecutorService(METRICS, overflowDropType, maxRecords);
+    }
+
+    /**
+     * 异步写日志 服务
+     * <p>
+     * 所有 AsyncFileHandler 共享同一个服务，由服务的写线程调用 {@link #publishInternal(LogRecord, String)} 落盘
+     * <p>
+     * 服务内部可以按Handler划分队列（分片队列），所以注册、注销时传入Handler
+     */
+    interface LoggerService {
+
+        /**
+         * 日志Record入队，队列满时按 overflowDropType 处理
+         *
+         * @param threadName 打日志的线程名，入队时获取
+         */
+        void publish(AsyncFileHandler handler, LogRecord record, String threadName);
+
+        void registerHandler(AsyncFileHandler handler);
+
+        /**
+         * Handler数量为0，并且jvm shutting down 时，排空队列并关闭写线程
+         */
+        void deregisterHandler(AsyncFileHandler handler);
+
+        /**
+         * 是否正在关闭（排空队列）
+         */
+        boolean isTerminating();
+
+        /**
+         * 当前队列中的Record数
+         */
+        long getQueueSize();
+
+        default double getRecordsPerBatch() {
+            return 0;
+        }
+
+        default double getFlushesPerSecond() {
+            return 0;
+        }
+    }
+
+    static final class LoggerExecutorService extends ThreadPoolExecutor implements LoggerService {
 
         private static final ThreadFactory THREAD_FACTORY = new FileHandlerThreadFactory(THREAD_PREFIX);
 
@@ -127,21 +409,50 @@ public class AsyncFileHandler extends FileHandler {
         // 我们也可以在创建ThreadPoolExecutor时，直接就给JVM挂上shutdown钩子，这样比较粗暴点，没有业务因子判断，只关注JVM shut down
         private final AtomicInteger handlerCount = new AtomicInteger();
 
-        LoggerExecutorService(final int overflowDropType, final int maxRecords) {
+        /**
+         * 队列最大值每隔多少个任务采样一次，LinkedBlockingDeque.size() 需要加锁
+         */
+        private static final int QUEUE_SIZE_SAMPLE_MASK = 15;
+
+        private final AsyncLoggerMetrics metrics;
+
+        private final int maxRecords;
+
+        private final boolean adaptive;
+
+        /**
+         * 自适应丢弃时使用的队列长度估算值：入队 +1，写线程取出或被拒绝策略挤掉 -1
+         * <p>
+         * LinkedBlockingDeque.size() 需要加锁，不适合每条日志都调用
+         */
+        private final LongAdder pending = new LongAdder();
+
+        /**
+         * 已执行的任务数，只由写线程访问
+         */
+        private long executedCount = 0;
+
+        LoggerExecutorService(final AsyncLoggerMetrics metrics, final int overflowDropType, final int maxRecords) {
             super(1, 1, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingDeque<>(maxRecords), THREAD_FACTORY);
+            this.metrics = metrics;
+            this.maxRecords = maxRecords;
+            this.adaptive = overflowDropType == OVERFLOW_DROP_ADAPTIVE;
             switch (overflowDropType) {
                 case OVERFLOW_DROP_LAST:
                 default:
                     setRejectedExecutionHandler(new DropLastPolicy());
                     break;
                 case OVERFLOW_DROP_FIRST:
-                    setRejectedExecutionHandler(new DiscardOldestPolicy());
+                    setRejectedExecutionHandler(new DropFirstPolicy());
                     break;
                 case OVERFLOW_DROP_FLUSH:
                     setRejectedExecutionHandler(new DropFlushPolicy());
                     break;
                 case OVERFLOW_DROP_CURRENT:
-                    setRejectedExecutionHandler(new DiscardPolicy());
+                    setRejectedExecutionHandler(new DropCurrentPolicy());
+                    break;
+                case OVERFLOW_DROP_ADAPTIVE:
+                    setRejectedExecutionHandler(new AdaptivePolicy());
             }
         }
 
@@ -150,11 +461,102 @@ public class AsyncFileHandler extends FileHandler {
             return (LinkedBlockingDeque<Runnable>) super.getQueue();
         }
 
-        public void registerHandler() {
+        @Override
+        public void publish(AsyncFileHandler handler, LogRecord record, String threadName) {
+            if (adaptive && AdaptiveOverflow.shed(record, pending.sum(), maxRecords)) {
+                handler.suppressed();
+                metrics.droppedCurrent();
+                return;
+            }
+            LogTask task = new LogTask(handler, record, threadName);
+            execute(task);
+            // 拒绝策略在当前线程执行
+            if (task.dropped) {
+                metrics.droppedCurrent();
+            } else {
+                metrics.enqueued();
+                if (adaptive) {
+                    pending.increment();
+                }
+            }
+        }
+
+        @Override
+        public long getQueueSize() {
+            return getQueue().size();
+        }
+
+        /**
+         * 写日志任务
+         */
+        private final class LogTask implements Runnable {
+
+            private final AsyncFileHandler handler;
+            private final LogRecord record;
+            private final String threadName;
+
+            /**
+             * 被拒绝策略丢弃，只由提交任务的线程访问
+             */
+            boolean dropped = false;
+
+            LogTask(AsyncFileHandler handler, LogRecord record, String threadName) {
+                this.handler = handler;
+                this.record = record;
+                this.threadName = threadName;
+            }
+
+            @Override
+            public void run() {
+                if (adaptive) {
+                    pending.decrement();
+                }
+                if ((++executedCount & QUEUE_SIZE_SAMPLE_MASK) == 0) {
+                    metrics.queueSize(getQueue().size() + 1);
+                }
+                /*
+                 * During Tomcat shutdown, the Handlers are closed before the executor queue is flushed therefore
+                 * the closed flag is ignored if the executor is shutting down.
+                 */
+                if (!handler.closed || isTerminating()) {
+                    long start = System.nanoTime();
+                    try {
+                        handler.publishInternal(record, threadName);
+                    } finally {
+                        metrics.written(1, System.nanoTime() - start);
+                    }
+                }
+            }
+        }
+
+        /**
+         * 队列已满，记录队列最大值
+         */
+        void rejected() {
+            metrics.queueSize(maxRecords);
+        }
+
+        static void drop(Runnable r) {
+            if (r instanceof LogTask) {
+                ((LogTask) r).dropped = true;
+            }
+        }
+
+        static LogRecord recordOf(Runnable r) {
+            return r instanceof LogTask ? ((LogTask) r).record : null;
+        }
+
+        static AsyncFileHandler handlerOf(Runnable r) {
+            return r instanceof LogTask ? ((LogTask) r).handler : null;
+        }
+
+        @Override
+        public void registerHandler(AsyncFileHandler handler) {
             handlerCount.incrementAndGet();
         }
 
-        public void deregisterHandler() {
+        @Override
+        public void deregisterHandler(AsyncFileHandler handler) {
             int newCount = handlerCount.decrementAndGet();
             if (newCount == 0) {
                 try {
@@ -185,11 +587,17 @@ public class AsyncFileHandler extends FileHandler {
 
         @Override
         public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            LoggerExecutorService service = (LoggerExecutorService) executor;
             if (!executor.isShutdown()) {
+                service.rejected();
                 // 丢掉一个
-                ((LoggerExecutorService) executor).getQueue().pollLast();
+                if (service.getQueue().pollLast() != null) {
+                    service.metrics.droppedLast();
+                }
                 // 继续执行当前被reject的Runnable
                 executor.execute(r);
+            } else {
+                LoggerExecutorService.drop(r);
             }
         }
     }
@@ -197,24 +605,116 @@ public class AsyncFileHandler extends FileHandler {
     /**
      * 拒绝处理：
      * <p>
-     * 一直尝试再次放入队列，这种模式下，不允许任何丢失（最严格）
+     * 丢弃队列中最早的一个（同 DiscardOldestPolicy，增加丢弃计数）
      */
-    private static class DropFlushPolicy implements RejectedExecutionHandler {
+    private static class DropFirstPolicy implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            LoggerExecutorService service = (LoggerExecutorService) executor;
+            if (!executor.isShutdown()) {
+                service.rejected();
+                if (service.getQueue().poll() != null) {
+                    service.metrics.droppedFirst();
+                }
+                executor.execute(r);
+            } else {
+                LoggerExecutorService.drop(r);
+            }
+        }
+    }
+
+    /**
+     * 拒绝处理：
+     * <p>
+     * 丢弃当前被reject的Runnable（同 DiscardPolicy，增加丢弃计数）
+     */
+    private static class DropCurrentPolicy implements RejectedExecutionHandler {
 
         @Override
         public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
-            while (true) {
-                if (executor.isShutdown()) {
+            ((LoggerExecutorService) executor).rejected();
+            LoggerExecutorService.drop(r);
+        }
+    }
+
+    /**
+     * 拒绝处理：
+     * <p>
+     * 按日志级别自适应丢弃：受保护级别的日志丢弃队列中最早的非保护级别日志腾出空间（没有时丢弃最早的一个），不阻塞；
+     * 其他日志丢弃当前
+     */
+    private static class AdaptivePolicy implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            LoggerExecutorService service = (LoggerExecutorService) executor;
+            service.rejected();
+            LogRecord record = LoggerExecutorService.recordOf(r);
+            if (executor.isShutdown() || record == null || !AdaptiveOverflow.isProtected(record)) {
+                AsyncFileHandler handler = LoggerExecutorService.handlerOf(r);
+                if (handler != null) {
+                    handler.suppressed();
+                }
+                LoggerExecutorService.drop(r);
+                return;
+            }
+            Runnable evicted = null;
+            // 队列满时才会遍历，受保护级别的日志很少
+            for (Runnable queued : service.getQueue()) {
+                LogRecord queuedRecord = LoggerExecutorService.recordOf(queued);
+                if (queuedRecord != null && !AdaptiveOverflow.isProtected(queuedRecord)) {
+                    evicted = queued;
                     break;
                 }
-                try {
-                    if (executor.getQueue().offer(r, 1000, TimeUnit.MILLISECONDS)) {
+            }
+            if (evicted == null || !service.getQueue().removeFirstOccurrence(evicted)) {
+                evicted = service.getQueue().poll();
+            }
+            if (evicted != null) {
+                service.pending.decrement();
+                service.metrics.droppedFirst();
+                AsyncFileHandler handler = LoggerExecutorService.handlerOf(evicted);
+                if (handler != null) {
+                    handler.suppressed();
+                }
+            }
+            executor.execute(r);
+        }
+    }
+
+    /**
+     * 拒绝处理：
+     * <p>
+     * 一直尝试再次放入队列，这种模式下，不允许任何丢失（最严格）
+     */
+    private static class DropFlushPolicy implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            LoggerExecutorService service = (LoggerExecutorService) executor;
+            service.rejected();
+            long start = System.nanoTime();
+            AsyncLogBlockedEvent event = new AsyncLogBlockedEvent();
+            event.begin();
+            try {
+                while (true) {
+                    if (executor.isShutdown()) {
+                        LoggerExecutorService.drop(r);
                         break;
                     }
-                } catch (InterruptedException e) {
-                    Thread.currentThread().interrupt();
-                    throw new RejectedExecutionException("Interrupted", e);
+                    try {
+                        if (executor.getQueue().offer(r, 1000, TimeUnit.MILLISECONDS)) {
+                            break;
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new RejectedExecutionException("Interrupted", e);
+                    }
                 }
+            } finally {
+                service.metrics.dropFlushBlocked(System.nanoTime() - start);
+                event.commit("executor");
             }
         }
     }
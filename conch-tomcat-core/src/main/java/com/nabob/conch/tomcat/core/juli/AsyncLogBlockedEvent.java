@@ -0,0 +1,40 @@
+package com.nabob.conch.tomcat.core.juli;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Threshold;
+
+/**
+ * JFR 事件：OVERFLOW_DROP_FLUSH 模式下队列满，业务线程阻塞等待写线程腾出空间
+ * <p>
+ * 持续时间即业务线程的阻塞时间，默认不开启；开启后可以在 JMC 中与请求耗时对齐
+ *
+ * @author Adam
+ * @since 2024/1/31
+ */
+@Name("com.nabob.conch.tomcat.core.AsyncLogBlocked")
+@Label("Async Log Blocked")
+@Category({"Conch Tomcat", "Logging"})
+@Description("A thread blocked publishing a log record because the async log queue was full")
+@Enabled(false)
+@Threshold("0 ms")
+@StackTrace(false)
+final class AsyncLogBlockedEvent extends Event {
+
+    @Label("Queue Type")
+    @Description("executor, ringbuffer or sharded")
+    String queueType;
+
+    void commit(String queueType) {
+        end();
+        if (shouldCommit()) {
+            this.queueType = queueType;
+            commit();
+        }
+    }
+}
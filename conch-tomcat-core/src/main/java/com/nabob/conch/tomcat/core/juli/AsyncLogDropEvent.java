@@ -0,0 +1,42 @@
+package com.nabob.conch.tomcat.core.juli;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR 事件：异步日志队列满，丢弃一条日志
+ * <p>
+ * 每丢弃一条日志记录一个事件，持续积压时事件很多，只在排查问题时开启，默认不开启
+ *
+ * @author Adam
+ * @since 2024/1/31
+ */
+@Name("com.nabob.conch.tomcat.core.AsyncLogDrop")
+@Label("Async Log Drop")
+@Category({"Conch Tomcat", "Logging"})
+@Description("A log record dropped because the async log queue was full")
+@Enabled(false)
+@StackTrace(false)
+final class AsyncLogDropEvent extends Event {
+
+    static final String DROP_LAST = "last";
+    static final String DROP_FIRST = "first";
+    static final String DROP_CURRENT = "current";
+
+    @Label("Dropped")
+    @Description("last: newest queued record, first: oldest queued record, current: the record being published")
+    String dropped;
+
+    static void commit(String dropped) {
+        AsyncLogDropEvent event = new AsyncLogDropEvent();
+        if (event.isEnabled()) {
+            event.dropped = dropped;
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,211 @@
+package com.nabob.conch.tomcat.core.juli;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * 异步日志监控指标
+ * <p>
+ * 所有计数器都是 LongAdder / LongAccumulator，业务线程、写线程记录指标时没有锁和 CAS 竞争；
+ * 由 AsyncFileHandler 注册为 platform MBean，见 {@link AsyncLoggerMetricsMBean}；
+ * 丢弃日志同时记录为 JFR 事件 {@link AsyncLogDropEvent}（默认不开启）
+ *
+ * @author Adam
+ * @since 2024/1/23
+ */
+public final class AsyncLoggerMetrics implements AsyncLoggerMetricsMBean {
+
+    public static final String OBJECT_NAME = "com.nabob.conch.tomcat.core.juli:type=AsyncFileHandler";
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder droppedLast = new LongAdder();
+    private final LongAdder droppedFirst = new LongAdder();
+    private final LongAdder droppedCurrent = new LongAdder();
+    private final LongAccumulator highWaterMark = new LongAccumulator(Math::max, 0);
+
+    private final LatencyHistogram enqueueLatency = new LatencyHistogram();
+    private final LatencyHistogram dropFlushBlocked = new LatencyHistogram();
+    private final LatencyHistogram batchWriteTime = new LatencyHistogram();
+
+    AsyncLoggerMetrics() {
+    }
+
+    // ------------------------------------------------------------- 记录指标
+
+    void enqueued() {
+        enqueued.increment();
+    }
+
+    void enqueueLatency(long nanos) {
+        enqueueLatency.record(nanos);
+    }
+
+    void written(int count, long nanos) {
+        written.add(count);
+        batchWriteTime.record(nanos);
+    }
+
+    void droppedLast() {
+        droppedLast.increment();
+        AsyncLogDropEvent.commit(AsyncLogDropEvent.DROP_LAST);
+    }
+
+    void droppedFirst() {
+        droppedFirst.increment();
+        AsyncLogDropEvent.commit(AsyncLogDropEvent.DROP_FIRST);
+    }
+
+    void droppedCurrent() {
+        droppedCurrent.increment();
+        AsyncLogDropEvent.commit(AsyncLogDropEvent.DROP_CURRENT);
+    }
+
+    void dropFlushBlocked(long nanos) {
+        dropFlushBlocked.record(nanos);
+    }
+
+    void queueSize(long size) {
+        highWaterMark.accumulate(size);
+    }
+
+    /**
+     * 注册为 platform MBean，同名 MBean 已存在（例如被其他 ClassLoader 加载）时忽略
+     */
+    void register() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(this, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // Ignore
+        } catch (Exception | LinkageError e) {
+            // JMX 不可用时不影响写日志
+        }
+    }
+
+    // ------------------------------------------------------------- MBean
+
+    @Override
+    public int getQueueType() {
+        return AsyncFileHandler.QUEUE_TYPE;
+    }
+
+    @Override
+    public int getQueueCapacity() {
+        return AsyncFileHandler.MAX_RECORDS;
+    }
+
+    @Override
+    public long getQueueSize() {
+        return AsyncFileHandler.getQueueSize();
+    }
+
+    @Override
+    public long getQueueHighWaterMark() {
+        return highWaterMark.get();
+    }
+
+    @Override
+    public long getEnqueuedCount() {
+        return enqueued.sum();
+    }
+
+    @Override
+    public long getWrittenCount() {
+        return written.sum();
+    }
+
+    @Override
+    public long getDroppedCount() {
+        return droppedLast.sum() + droppedFirst.sum() + droppedCurrent.sum();
+    }
+
+    @Override
+    public long getDroppedLastCount() {
+        return droppedLast.sum();
+    }
+
+    @Override
+    public long getDroppedFirstCount() {
+        return droppedFirst.sum();
+    }
+
+    @Override
+    public long getDroppedCurrentCount() {
+        return droppedCurrent.sum();
+    }
+
+    @Override
+    public long getDropFlushBlockedCount() {
+        return dropFlushBlocked.getCount();
+    }
+
+    @Override
+    public long getDropFlushBlockedTimeMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(dropFlushBlocked.getTotalNanos());
+    }
+
+    @Override
+    public long getDropFlushBlocked99thPercentileMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(dropFlushBlocked.getPercentileNanos(99));
+    }
+
+    @Override
+    public long getDropFlushBlockedMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(dropFlushBlocked.getMaxNanos());
+    }
+
+    @Override
+    public long getEnqueueLatency50thPercentileMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(enqueueLatency.getPercentileNanos(50));
+    }
+
+    @Override
+    public long getEnqueueLatency99thPercentileMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(enqueueLatency.getPercentileNanos(99));
+    }
+
+    @Override
+    public long getEnqueueLatencyMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(enqueueLatency.getMaxNanos());
+    }
+
+    @Override
+    public long getBatchWriteTime50thPercentileMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(batchWriteTime.getPercentileNanos(50));
+    }
+
+    @Override
+    public long getBatchWriteTime99thPercentileMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(batchWriteTime.getPercentileNanos(99));
+    }
+
+    @Override
+    public long getBatchWriteTimeMaxMicros() {
+        return TimeUnit.NANOSECONDS.toMicros(batchWriteTime.getMaxNanos());
+    }
+
+    @Override
+    public double getRecordsPerBatch() {
+        return AsyncFileHandler.getRecordsPerBatch();
+    }
+
+    @Override
+    public double getFlushesPerSecond() {
+        return AsyncFileHandler.getFlushesPerSecond();
+    }
+
+    @Override
+    public void resetStatistics() {
+        highWaterMark.reset();
+        enqueueLatency.reset();
+        dropFlushBlocked.reset();
+        batchWriteTime.reset();
+    }
+}
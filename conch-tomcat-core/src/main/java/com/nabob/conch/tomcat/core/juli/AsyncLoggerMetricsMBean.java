@@ -0,0 +1,110 @@
+package com.nabob.conch.tomcat.core.juli;
+
+/**
+ * 异步日志监控指标 MBean
+ * <p>
+ * ObjectName：{@value AsyncLoggerMetrics#OBJECT_NAME}
+ * <p>
+ * 告警参考：
+ * - DroppedCount 增长：日志丢失
+ * - DropFlushBlockedCount / DropFlushBlockedTimeMillis 增长、QueueHighWaterMark 接近 QueueCapacity：写线程跟不上，业务线程被反压
+ *
+ * @author Adam
+ * @since 2024/1/23
+ */
+public interface AsyncLoggerMetricsMBean {
+
+    /**
+     * 队列类型 1: LinkedBlockingDeque线程池 2: 无锁环形队列 RingBuffer 3: 分片队列
+     */
+    int getQueueType();
+
+    /**
+     * 队列容量（分片队列为默认的单个分片容量）
+     */
+    int getQueueCapacity();
+
+    /**
+     * 当前队列中的Record数
+     */
+    long getQueueSize();
+
+    /**
+     * 队列中Record数的最大值
+     */
+    long getQueueHighWaterMark();
+
+    /**
+     * 入队成功的Record数
+     */
+    long getEnqueuedCount();
+
+    /**
+     * 写线程交给 FileHandler 写入的Record数
+     */
+    long getWrittenCount();
+
+    /**
+     * 丢弃的Record总数
+     */
+    long getDroppedCount();
+
+    /**
+     * OVERFLOW_DROP_LAST 丢弃的Record数
+     */
+    long getDroppedLastCount();
+
+    /**
+     * OVERFLOW_DROP_FIRST 丢弃的Record数
+     */
+    long getDroppedFirstCount();
+
+    /**
+     * OVERFLOW_DROP_CURRENT 丢弃的Record数
+     */
+    long getDroppedCurrentCount();
+
+    /**
+     * 队列满时业务线程被阻塞（等待入队）的次数
+     */
+    long getDropFlushBlockedCount();
+
+    /**
+     * 队列满时业务线程被阻塞的总时间
+     */
+    long getDropFlushBlockedTimeMillis();
+
+    /**
+     * 队列满时业务线程单次被阻塞的 99 分位时间
+     */
+    long getDropFlushBlocked99thPercentileMicros();
+
+    long getDropFlushBlockedMaxMicros();
+
+    /**
+     * 入队耗时
+     */
+    long getEnqueueLatency50thPercentileMicros();
+
+    long getEnqueueLatency99thPercentileMicros();
+
+    long getEnqueueLatencyMaxMicros();
+
+    /**
+     * 写线程写入一批（或一条）Record的耗时
+     */
+    long getBatchWriteTime50thPercentileMicros();
+
+    long getBatchWriteTime99thPercentileMicros();
+
+    long getBatchWriteTimeMaxMicros();
+
+    double getRecordsPerBatch();
+
+    double getFlushesPerSecond();
+
+    /**
+     * 重置直方图和队列最大值，计数器不重置
+     */
+    void resetStatistics();
+}
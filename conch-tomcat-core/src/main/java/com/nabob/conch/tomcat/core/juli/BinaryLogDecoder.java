@@ -0,0 +1,237 @@
+package com.nabob.conch.tomcat.core.juli;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 二进制日志解码器，把 {@link BinaryLogFileWriter} 写入的日志文件还原为 {@link OneLineSimpleFormatter} 格式的文本
+ * <p>
+ * 命令行：
+ * <pre>
+ * java -cp conch-tomcat-core.jar com.nabob.conch.tomcat.core.juli.BinaryLogDecoder [-encoding UTF-8] file...
+ * </pre>
+ * 按参数顺序解码，输出到标准输出；支持压缩后的 .gz 文件。
+ * JVM 崩溃时文件末尾可能有不完整的日志，解码到该位置时停止并在标准错误输出提示
+ *
+ * @author Adam
+ * @since 2024/1/19
+ */
+public class BinaryLogDecoder {
+
+    private final OneLineSimpleFormatter formatter = new OneLineSimpleFormatter();
+
+    private final List<String> dictionary = new ArrayList<>();
+
+    /**
+     * 自定义日志级别，Level 的构造方法会注册到全局，按名称复用
+     */
+    private final Map<String, Level> customLevels = new HashMap<>();
+
+    private final StringBuilder line = new StringBuilder(256);
+
+    private long lastMillis;
+
+    public static void main(String[] args) throws IOException {
+        Charset charset = Charset.defaultCharset();
+        List<String> files = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            if ("-encoding".equals(args[i]) && i + 1 < args.length) {
+                charset = Charset.forName(args[++i]);
+            } else {
+                files.add(args[i]);
+            }
+        }
+        if (files.isEmpty()) {
+            System.err.println("Usage: " + BinaryLogDecoder.class.getName() + " [-encoding <charset>] <file>...");
+            System.exit(1);
+        }
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, charset));
+        try {
+            for (String file : files) {
+                try (InputStream in = open(file)) {
+                    new BinaryLogDecoder().decode(in, out);
+                } catch (EOFException e) {
+                    System.err.println("[" + file + "] ends with an incomplete record, decoding stopped");
+                }
+            }
+        } finally {
+            out.flush();
+        }
+    }
+
+    private static InputStream open(String file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        if (file.endsWith(FileHandler.COMPRESSED_SUFFIX)) {
+            in = new GZIPInputStream(in);
+        }
+        return in;
+    }
+
+    /**
+     * 解码 in 中的全部日志，写入 out
+     *
+     * @throws EOFException 文件末尾有不完整的日志
+     */
+    public void decode(InputStream in, Writer out) throws IOException {
+        DataInputStream data = new DataInputStream(new BufferedInputStream(in));
+        boolean session = false;
+        int tag;
+        while ((tag = data.read()) >= 0) {
+            if (tag == BinaryLogFileWriter.TAG_SESSION) {
+                int version = data.readUnsignedByte();
+                if (version != BinaryLogFileWriter.VERSION) {
+                    throw new IOException("Unsupported binary log version [" + version + "]");
+                }
+                dictionary.clear();
+                lastMillis = data.readLong();
+                session = true;
+            } else if (!session) {
+                throw new IOException("Not a binary log file");
+            } else if (tag == BinaryLogFileWriter.TAG_DICT) {
+                int id = (int) readVarLong(data);
+                if (id != dictionary.size() + 1) {
+                    throw new IOException("Corrupted dictionary entry [" + id + "]");
+                }
+                dictionary.add(readString(data));
+            } else if (tag == BinaryLogFileWriter.TAG_RECORD) {
+                decodeRecord(data, out);
+            } else if (tag == BinaryLogFileWriter.TAG_TEXT) {
+                out.write(readString(data));
+            } else {
+                throw new IOException("Unknown tag [" + tag + "]");
+            }
+        }
+    }
+
+    private void decodeRecord(DataInputStream data, Writer out) throws IOException {
+        long millis = lastMillis + unzigzag(readVarLong(data));
+        lastMillis = millis;
+
+        int levelCode = data.readUnsignedByte();
+        Level level;
+        if (levelCode == BinaryLogFileWriter.LEVEL_CUSTOM) {
+            level = customLevels.computeIfAbsent(lookup(readVarLong(data)), DecodedLevel::new);
+        } else if (levelCode < BinaryLogFileWriter.LEVELS.length) {
+            level = BinaryLogFileWriter.LEVELS[levelCode];
+        } else {
+            throw new IOException("Unknown level [" + levelCode + "]");
+        }
+
+        String logger = lookup(readVarLong(data));
+        String thread = lookup(readVarLong(data));
+        long threadId = readVarLong(data);
+        String sourceClass = lookup(readVarLong(data));
+        String sourceMethod = lookup(readVarLong(data));
+
+        int parameterCount = (int) readVarLong(data);
+        String message;
+        Object[] parameters = null;
+        if (parameterCount > 0) {
+            message = lookup(readVarLong(data));
+            parameters = new Object[parameterCount];
+            for (int i = 0; i < parameterCount; i++) {
+                parameters[i] = readParameter(data);
+            }
+        } else {
+            message = readString(data);
+        }
+        String thrown = data.readUnsignedByte() == 0 ? null : readString(data);
+
+        LogRecord record = new LogRecord(level, message);
+        record.setInstant(Instant.ofEpochMilli(millis));
+        record.setLoggerName(logger);
+        record.setLongThreadID(threadId);
+        record.setSourceClassName(sourceClass);
+        record.setSourceMethodName(sourceMethod);
+        record.setParameters(parameters);
+
+        line.setLength(0);
+        formatter.format(record, thread, line);
+        if (thrown != null) {
+            line.append(thrown);
+        }
+        out.append(line);
+    }
+
+    private Object readParameter(DataInputStream data) throws IOException {
+        int type = data.readUnsignedByte();
+        switch (type) {
+            case BinaryLogFileWriter.PARAM_NULL:
+                return null;
+            case BinaryLogFileWriter.PARAM_STRING:
+                return readString(data);
+            case BinaryLogFileWriter.PARAM_LONG:
+                return Long.valueOf(unzigzag(readVarLong(data)));
+            case BinaryLogFileWriter.PARAM_DOUBLE:
+                return Double.valueOf(Double.longBitsToDouble(data.readLong()));
+            case BinaryLogFileWriter.PARAM_DATE:
+                return new Date(unzigzag(readVarLong(data)));
+            default:
+                throw new IOException("Unknown parameter type [" + type + "]");
+        }
+    }
+
+    private String lookup(long id) throws IOException {
+        if (id == 0) {
+            return null;
+        }
+        if (id > dictionary.size()) {
+            throw new IOException("Unknown dictionary entry [" + id + "]");
+        }
+        return dictionary.get((int) id - 1);
+    }
+
+    private static long readVarLong(DataInputStream data) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = data.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    private static String readString(DataInputStream data) throws IOException {
+        int length = (int) readVarLong(data);
+        byte[] bytes = new byte[length];
+        data.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * 自定义日志级别，只用于输出级别名称
+     */
+    private static final class DecodedLevel extends Level {
+
+        private static final long serialVersionUID = 1L;
+
+        DecodedLevel(String name) {
+            super(name, Level.ALL.intValue());
+        }
+    }
+}
@@ -0,0 +1,450 @@
+package com.nabob.conch.tomcat.core.juli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.MissingResourceException;
+import java.util.ResourceBundle;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * 二进制编码的 LogFileWriter
+ * <p>
+ * 写日志时不格式化，直接把 LogRecord 编码为紧凑的二进制，格式化的开销转移到离线的 {@link BinaryLogDecoder}：
+ * - 时间戳：相对上一条日志的差值，zigzag + varint 编码
+ * - 日志级别：标准级别一个字节
+ * - logger、线程名、类名、方法名：字典编码，第一次出现时写入字典项，之后只写 varint 编号
+ * - 日志内容：保留原始的模板和参数，不执行 MessageFormat；有参数的模板同样字典编码
+ * - 异常：写入异常堆栈文本
+ * <p>
+ * 文件由若干段（session）组成，每次打开文件、字典满了都会开始新的一段，段内字典和时间戳基准独立，所以可以追加写入已存在的文件：
+ * <pre>
+ * session: 'S' version(1) baseMillis(8)
+ * dict:    'D' id(varint) string
+ * record:  'R' delta(zigzag varint) level(1) [customLevel(dict)] logger(dict) thread(dict) threadId(varint)
+ *              class(dict) method(dict) paramCount(varint) message(dict|string) param* thrown(0|1 string)
+ * text:    'T' string                                           Formatter 的 head/tail，原样输出
+ * string:  utf8Length(varint) utf8
+ * </pre>
+ * 使用 ReentrantLock 保证多个写日志线程互斥，编码到复用的 byte[]，超过 bufferSize 或者 flush 时通过 FileChannel 追加写入
+ *
+ * @author Adam
+ * @since 2024/1/19
+ */
+final class BinaryLogFileWriter implements LogFileWriter {
+
+    /**
+     * 二进制日志文件后缀
+     */
+    static final String SUFFIX = ".bin";
+
+    static final byte VERSION = 1;
+
+    static final byte TAG_SESSION = 'S';
+    static final byte TAG_DICT = 'D';
+    static final byte TAG_RECORD = 'R';
+    static final byte TAG_TEXT = 'T';
+
+    /**
+     * 自定义日志级别，之后跟级别名称
+     */
+    static final byte LEVEL_CUSTOM = 0;
+
+    /**
+     * 标准日志级别，下标即编码
+     */
+    static final Level[] LEVELS = {null, Level.OFF, Level.SEVERE, Level.WARNING, Level.INFO, Level.CONFIG,
+        Level.FINE, Level.FINER, Level.FINEST, Level.ALL};
+
+    static final byte PARAM_NULL = 0;
+    static final byte PARAM_STRING = 1;
+    static final byte PARAM_LONG = 2;
+    static final byte PARAM_DOUBLE = 3;
+    static final byte PARAM_DATE = 4;
+
+    /**
+     * 字典的最大项数，超过后开始新的一段，避免动态的名称让字典无限增长
+     */
+    static final int MAX_DICTIONARY_SIZE = 64 * 1024;
+
+    private static final int DEFAULT_BUFFER_CAPACITY = 8 * 1024;
+
+    /**
+     * 一条大日志让 byte[] 扩容后，超过该大小在写入文件后缩回
+     */
+    private static final int MAX_RETAINED_CAPACITY = 512 * 1024;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final FileChannel channel;
+    private final int threshold;
+
+    private final Map<String, Integer> dictionary = new HashMap<>();
+
+    private byte[] bytes;
+    private int count;
+
+    private long lastMillis;
+
+    BinaryLogFileWriter(File file, int bufferSize) throws IOException {
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND);
+        this.threshold = bufferSize > 0 ? bufferSize : DEFAULT_BUFFER_CAPACITY;
+        this.bytes = new byte[threshold];
+        startSession(System.currentTimeMillis());
+    }
+
+    /**
+     * 编码一条日志
+     *
+     * @param record     日志Record
+     * @param threadName 打日志的线程名
+     * @return 编码后的字节数
+     */
+    int write(LogRecord record, String threadName) throws IOException {
+        lock.lock();
+        try {
+            if (dictionary.size() > MAX_DICTIONARY_SIZE) {
+                startSession(record.getMillis());
+            }
+
+            // 先执行业务代码（参数的 toString、异常堆栈），失败时还没有写入任何内容
+            Object[] parameters = renderParameters(record.getParameters());
+            String thrown = renderThrown(record.getThrown());
+
+            int start = count;
+            int dictionarySize = dictionary.size();
+            long lastMillisBefore = lastMillis;
+            try {
+                writeRecord(record, threadName, parameters, thrown);
+            } catch (RuntimeException | Error e) {
+                // 丢弃写了一半的日志和这条日志新增的字典项，保证文件可以解码
+                count = start;
+                lastMillis = lastMillisBefore;
+                dictionary.values().removeIf(id -> id > dictionarySize);
+                throw e;
+            }
+
+            int written = count - start;
+            if (count >= threshold) {
+                drain();
+            }
+            return written;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void writeRecord(LogRecord record, String threadName, Object[] parameters, String thrown) {
+        // 先写入字典项，字典项必须在引用它的日志之前
+        Level level = record.getLevel();
+        int levelCode = levelCode(level);
+        int customLevel = levelCode == LEVEL_CUSTOM ? lookup(level.getLocalizedName()) : 0;
+        int logger = lookup(record.getLoggerName());
+        int thread = lookup(threadName);
+        int sourceClass = lookup(OneLineSimpleFormatter.resolveSourceClassName(record));
+        int sourceMethod = lookup(OneLineSimpleFormatter.resolveSourceMethodName(record));
+        int parameterCount = parameters == null ? 0 : parameters.length;
+        String template = localize(record);
+        int message = parameterCount > 0 ? lookup(template) : 0;
+
+        writeByte(TAG_RECORD);
+        long millis = record.getMillis();
+        writeVarLong(zigzag(millis - lastMillis));
+        lastMillis = millis;
+        writeByte(levelCode);
+        if (levelCode == LEVEL_CUSTOM) {
+            writeVarLong(customLevel);
+        }
+        writeVarLong(logger);
+        writeVarLong(thread);
+        writeVarLong(record.getLongThreadID());
+        writeVarLong(sourceClass);
+        writeVarLong(sourceMethod);
+        writeVarLong(parameterCount);
+        if (parameterCount > 0) {
+            writeVarLong(message);
+            for (Object parameter : parameters) {
+                writeParameter(parameter);
+            }
+        } else {
+            writeString(template);
+        }
+        if (thrown == null) {
+            writeByte(0);
+        } else {
+            writeByte(1);
+            writeString(thrown);
+        }
+    }
+
+    /**
+     * 非数字、日期的参数转换为字符串；toString() 抛出异常时使用异常信息
+     */
+    private static Object[] renderParameters(Object[] parameters) {
+        if (parameters == null || parameters.length == 0) {
+            return parameters;
+        }
+        Object[] rendered = null;
+        for (int i = 0; i < parameters.length; i++) {
+            Object parameter = parameters[i];
+            if (parameter == null || parameter instanceof String || parameter instanceof Long ||
+                parameter instanceof Integer || parameter instanceof Short || parameter instanceof Byte ||
+                parameter instanceof Double || parameter instanceof Float || parameter instanceof Date) {
+                continue;
+            }
+            if (rendered == null) {
+                rendered = parameters.clone();
+            }
+            rendered[i] = JsonFormatter.parameterToString(parameter);
+        }
+        return rendered == null ? parameters : rendered;
+    }
+
+    private static String renderThrown(Throwable thrown) {
+        if (thrown == null) {
+            return null;
+        }
+        StringWriter sw = new StringWriter();
+        try {
+            thrown.printStackTrace(new PrintWriter(sw));
+        } catch (RuntimeException e) {
+            return thrown.getClass().getName() + " (printStackTrace threw " + e + ")";
+        }
+        return sw.toString();
+    }
+
+    /**
+     * Formatter 的 head/tail，解码时原样输出
+     */
+    @Override
+    public int write(CharSequence chars) throws IOException {
+        if (chars == null || chars.length() == 0) {
+            return 0;
+        }
+        lock.lock();
+        try {
+            int start = count;
+            writeByte(TAG_TEXT);
+            writeString(chars.toString());
+            int written = count - start;
+            if (count >= threshold) {
+                drain();
+            }
+            return written;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public long length() throws IOException {
+        lock.lock();
+        try {
+            return channel.size() + count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            drain();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            drain();
+        } finally {
+            try {
+                channel.close();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 开始新的一段：清空字典，重置时间戳基准
+     */
+    private void startSession(long baseMillis) {
+        dictionary.clear();
+        lastMillis = baseMillis;
+        writeByte(TAG_SESSION);
+        writeByte(VERSION);
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            writeByte((int) (baseMillis >>> shift));
+        }
+    }
+
+    /**
+     * 字典编号，0 表示 null；第一次出现时写入字典项
+     */
+    private int lookup(String value) {
+        if (value == null) {
+            return 0;
+        }
+        Integer id = dictionary.get(value);
+        if (id != null) {
+            return id;
+        }
+        int newId = dictionary.size() + 1;
+        dictionary.put(value, newId);
+        writeByte(TAG_DICT);
+        writeVarLong(newId);
+        writeString(value);
+        return newId;
+    }
+
+    private static int levelCode(Level level) {
+        for (int i = 1; i < LEVELS.length; i++) {
+            if (LEVELS[i] == level) {
+                return i;
+            }
+        }
+        return LEVEL_CUSTOM;
+    }
+
+    /**
+     * 与 Formatter.formatMessage 一致，有 ResourceBundle 时先本地化模板
+     */
+    private static String localize(LogRecord record) {
+        String message = record.getMessage();
+        ResourceBundle bundle = record.getResourceBundle();
+        if (bundle != null && message != null) {
+            try {
+                return bundle.getString(message);
+            } catch (MissingResourceException e) {
+                // 使用原始消息
+            }
+        }
+        return message;
+    }
+
+    private void writeParameter(Object parameter) {
+        if (parameter == null) {
+            writeByte(PARAM_NULL);
+        } else if (parameter instanceof Long || parameter instanceof Integer || parameter instanceof Short ||
+            parameter instanceof Byte) {
+            writeByte(PARAM_LONG);
+            writeVarLong(zigzag(((Number) parameter).longValue()));
+        } else if (parameter instanceof Double || parameter instanceof Float) {
+            writeByte(PARAM_DOUBLE);
+            long bits = Double.doubleToRawLongBits(((Number) parameter).doubleValue());
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                writeByte((int) (bits >>> shift));
+            }
+        } else if (parameter instanceof Date) {
+            writeByte(PARAM_DATE);
+            writeVarLong(zigzag(((Date) parameter).getTime()));
+        } else {
+            writeByte(PARAM_STRING);
+            writeString(String.valueOf(parameter));
+        }
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private void writeByte(int b) {
+        ensureCapacity(1);
+        bytes[count++] = (byte) b;
+    }
+
+    private void writeVarLong(long value) {
+        ensureCapacity(10);
+        while ((value & ~0x7FL) != 0) {
+            bytes[count++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        bytes[count++] = (byte) value;
+    }
+
+    /**
+     * varint 字节数 + UTF-8，直接编码到 byte[]，不创建中间 byte[]
+     */
+    private void writeString(String value) {
+        if (value == null) {
+            value = "null";
+        }
+        int length = value.length();
+        int utf8Length = 0;
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                utf8Length++;
+            } else if (c < 0x800) {
+                utf8Length += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < length &&
+                Character.isLowSurrogate(value.charAt(i + 1))) {
+                utf8Length += 4;
+                i++;
+            } else {
+                utf8Length += 3;
+            }
+        }
+        writeVarLong(utf8Length);
+        ensureCapacity(utf8Length);
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c < 0x80) {
+                bytes[count++] = (byte) c;
+            } else if (c < 0x800) {
+                bytes[count++] = (byte) (0xC0 | (c >> 6));
+                bytes[count++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < length &&
+                Character.isLowSurrogate(value.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, value.charAt(++i));
+                bytes[count++] = (byte) (0xF0 | (cp >> 18));
+                bytes[count++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                bytes[count++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                bytes[count++] = (byte) (0x80 | (cp & 0x3F));
+            } else {
+                // 落单的代理字符按 3 字节编码，解码时替换为 U+FFFD
+                bytes[count++] = (byte) (0xE0 | (c >> 12));
+                bytes[count++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                bytes[count++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private void ensureCapacity(int n) {
+        if (count + n > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, count + n));
+        }
+    }
+
+    /**
+     * 把 byte[] 中的内容全部写入 FileChannel
+     */
+    private void drain() throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes, 0, count);
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            count = 0;
+            if (bytes.length > MAX_RETAINED_CAPACITY) {
+                bytes = new byte[threshold];
+            }
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.nabob.conch.tomcat.core.juli;
+
+import java.lang.ref.WeakReference;
+import java.util.Objects;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.logging.ErrorManager;
+import java.util.logging.Filter;
+import java.util.logging.Handler;
+import java.util.logging.LogManager;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+/**
+ * 突发重复日志去重 Filter
+ * <p>
+ * 故障期间大量线程每秒打印成千上万条相同的日志和异常堆栈，会占满 AsyncFileHandler 的队列和磁盘。
+ * 该 Filter 按 logger + 消息模板 + 异常类型和异常消息 计算日志指纹，同一指纹在时间窗口内只放行第一条，
+ * 之后的重复日志只计数；窗口结束后写一条带重复次数的日志：
+ * <pre>
+ * [repeated 1234 more times in 1000 ms] 原始日志内容
+ * </pre>
+ * 配置（Filter 类名 + 属性名）：
+ * - window 默认值：1000   时间窗口（毫秒）
+ * - maxEntries 默认值：4096   同时跟踪的最大指纹数（向上取整为2的幂）
+ * - stackFrames 默认值：0   参与指纹计算的异常栈顶帧数；大于0时每条带异常的日志都要复制一次异常的调用栈
+ * （Throwable.getStackTrace() 返回副本），默认只使用异常类型、异常消息和 cause 类型
+ * <p>
+ * 通过 Handler 的 filter 属性配置，例如：
+ * <pre>
+ * com.nabob.conch.tomcat.core.juli.AsyncFileHandler.filter = com.nabob.conch.tomcat.core.juli.BurstDeduplicationFilter
+ * </pre>
+ * 性能：指纹表是固定大小的数组，按指纹哈希定位槽位，没有锁；重复日志只是一次比较和一次原子计数。
+ * 哈希冲突时新指纹替换旧指纹（先写出旧指纹的重复次数），所以表的大小是有界的。
+ * 写出重复次数前先把指纹标记为已退役（计数原子地替换为负数），之后的计数失败、按新窗口处理，重复次数不会丢失
+ * 过期指纹的重复次数由 FileHandler 的内部调度器每个窗口写出一次，不占用打日志的线程；
+ * Handler 关闭时写出所有未写出的重复次数
+ *
+ * @author Adam
+ * @since 2024/1/25
+ */
+public class BurstDeduplicationFilter implements Filter {
+
+    public static final long DEFAULT_WINDOW = 1000;
+    public static final int DEFAULT_MAX_ENTRIES = 4096;
+    public static final int DEFAULT_STACK_FRAMES = 0;
+
+    /**
+     * 没有设置 Handler 时报告定时清理的错误
+     */
+    private static final ErrorManager FALLBACK_ERROR_MANAGER = new ErrorManager();
+
+    private final long window;
+    private final int stackFrames;
+    private final int mask;
+
+    /**
+     * 指纹表，按指纹哈希定位槽位
+     */
+    private final AtomicReferenceArray<Entry> entries;
+
+    /**
+     * 写出重复次数的 Handler，由 FileHandler 配置时设置；为空时通过原始 Logger 写出
+     */
+    private volatile Handler handler;
+
+    public BurstDeduplicationFilter() {
+        String className = this.getClass().getName();
+        this.window = Math.max(1, getLongProperty(className + ".window", DEFAULT_WINDOW));
+        this.stackFrames = (int) Math.max(0, getLongProperty(className + ".stackFrames", DEFAULT_STACK_FRAMES));
+        int maxEntries = (int) Math.min(1 << 20, Math.max(1, getLongProperty(className + ".maxEntries",
+            DEFAULT_MAX_ENTRIES)));
+        int size = maxEntries <= 1 ? 1 : Integer.highestOneBit(maxEntries - 1) << 1;
+        this.mask = size - 1;
+        this.entries = new AtomicReferenceArray<>(size);
+        SweepTask task = new SweepTask(this);
+        task.future = FileHandler.scheduler().scheduleWithFixedDelay(task, window, window, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 设置写出重复次数的 Handler
+     */
+    public void setHandler(Handler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public boolean isLoggable(LogRecord record) {
+        if (record instanceof RepeatedRecord) {
+            return true;
+        }
+        final long now = record.getMillis();
+
+        final Throwable thrown = record.getThrown();
+        final Class<?> thrownClass = thrown == null ? null : thrown.getClass();
+        final int thrownHash = thrown == null ? 0 : thrownHash(thrown);
+        final int hash = hash(record.getLoggerName(), record.getMessage(), thrownClass, thrownHash);
+        final int index = hash & mask;
+
+        while (true) {
+            Entry entry = entries.get(index);
+            if (entry != null && entry.matches(hash, record.getLoggerName(), record.getMessage(), thrownClass,
+                thrownHash)) {
+                // 指纹已退役（被替换、清理）时计数失败，重新读取槽位
+                if (now - entry.start < window && entry.repeated.getAndIncrement() >= 0) {
+                    return false;
+                }
+            }
+            // 新指纹、窗口已结束、哈希冲突：开始新的窗口
+            Entry fresh = new Entry(hash, record.getLoggerName(), record.getMessage(), thrownClass, thrownHash,
+                now, record);
+            if (entries.compareAndSet(index, entry, fresh)) {
+                if (entry != null) {
+                    publishRepeated(entry, null);
+                }
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 写出所有未写出的重复次数并清空指纹表，Handler 关闭时调用
+     *
+     * @param target 写出重复次数日志的方式，为空时与定时清理相同
+     */
+    public void flush(Consumer<LogRecord> target) {
+        for (int i = 0; i <= mask; i++) {
+            Entry entry = entries.getAndSet(i, null);
+            if (entry != null) {
+                publishRepeated(entry, target);
+            }
+        }
+    }
+
+    /**
+     * 清理过期指纹，写出其重复次数；不再出现的指纹的重复次数也能及时写出
+     */
+    private void sweep(long now) {
+        for (int i = 0; i <= mask; i++) {
+            Entry entry = entries.get(i);
+            if (entry != null && now - entry.start >= window && entries.compareAndSet(i, entry, null)) {
+                publishRepeated(entry, null);
+            }
+        }
+    }
+
+    /**
+     * 写出一个指纹在窗口内被去重的次数；调用前指纹已从指纹表中移除，只有一个线程会调用
+     */
+    private void publishRepeated(Entry entry, Consumer<LogRecord> target) {
+        // 退役：之后的计数都失败，取到的就是最终的重复次数
+        long repeated = entry.repeated.getAndSet(Entry.RETIRED);
+        if (repeated <= 0) {
+            return;
+        }
+        LogRecord first = entry.first;
+        RepeatedRecord summary = new RepeatedRecord(first,
+            "[repeated " + repeated + " more times in " + window + " ms] " +
+                (first.getMessage() == null ? "" : first.getMessage()));
+        Handler owner = handler;
+        if (target != null) {
+            target.accept(summary);
+        } else if (owner != null) {
+            owner.publish(summary);
+        } else if (first.getLoggerName() != null) {
+            Logger.getLogger(first.getLoggerName()).log(summary);
+        }
+    }
+
+    /**
+     * 报告错误：有 Handler 时使用 Handler 的 ErrorManager
+     */
+    private void reportError(String msg, Exception e) {
+        Handler owner = handler;
+        ErrorManager errorManager = owner == null ? FALLBACK_ERROR_MANAGER : owner.getErrorManager();
+        errorManager.error(msg, e, ErrorManager.GENERIC_FAILURE);
+    }
+
+    /**
+     * 异常部分的指纹：异常消息、cause 类型，配置了 stackFrames 时再加上栈顶若干帧
+     */
+    private int thrownHash(Throwable thrown) {
+        Throwable cause = thrown.getCause();
+        int h = 31 * Objects.hashCode(thrown.getMessage()) + (cause == null ? 0 : cause.getClass().hashCode());
+        if (stackFrames == 0) {
+            return h;
+        }
+        StackTraceElement[] frames = thrown.getStackTrace();
+        for (int i = 0, n = Math.min(stackFrames, frames.length); i < n; i++) {
+            h = 31 * h + frames[i].hashCode();
+        }
+        return h;
+    }
+
+    private static int hash(String loggerName, String message, Class<?> thrownClass, int thrownHash) {
+        int h = Objects.hashCode(loggerName);
+        h = 31 * h + Objects.hashCode(message);
+        h = 31 * h + Objects.hashCode(thrownClass);
+        h = 31 * h + thrownHash;
+        // 扩散高位，减少只用低位定位槽位时的冲突
+        return h ^ (h >>> 16);
+    }
+
+    private static long getLongProperty(String name, long defaultValue) {
+        String value = LogManager.getLogManager().getProperty(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException ignore) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * 定时清理任务，只弱引用 Filter：Filter 被替换、不再使用后取消任务
+     */
+    private static final class SweepTask implements Runnable {
+
+        private final WeakReference<BurstDeduplicationFilter> filter;
+
+        volatile ScheduledFuture<?> future;
+
+        SweepTask(BurstDeduplicationFilter filter) {
+            this.filter = new WeakReference<>(filter);
+        }
+
+        @Override
+        public void run() {
+            BurstDeduplicationFilter current = filter.get();
+            if (current == null) {
+                ScheduledFuture<?> f = future;
+                if (f != null) {
+                    f.cancel(false);
+                }
+                return;
+            }
+            try {
+                current.sweep(System.currentTimeMillis());
+            } catch (RuntimeException e) {
+                // 异常会终止定时任务，只报告
+                current.reportError("Unable to publish repeated log records", e);
+            }
+        }
+    }
+
+    /**
+     * 一个指纹及其当前窗口
+     */
+    private static final class Entry {
+
+        /**
+         * 已退役的计数，之后的 getAndIncrement 仍为负数
+         */
+        static final long RETIRED = Long.MIN_VALUE;
+
+        final int hash;
+        final String loggerName;
+        final String message;
+        final Class<?> thrownClass;
+        final int thrownHash;
+
+        /**
+         * 窗口开始时间
+         */
+        final long start;
+
+        /**
+         * 窗口内第一条日志，写出重复次数时使用其级别、logger、参数
+         */
+        final LogRecord first;
+
+        /**
+         * 窗口内被去重的次数，退役后为负数
+         */
+        final AtomicLong repeated = new AtomicLong();
+
+        Entry(int hash, String loggerName, String message, Class<?> thrownClass, int thrownHash, long start,
+              LogRecord first) {
+            this.hash = hash;
+            this.loggerName = loggerName;
+            this.message = message;
+            this.thrownClass = thrownClass;
+            this.thrownHash = thrownHash;
+            this.start = start;
+            this.first = first;
+        }
+
+        boolean matches(int hash, String loggerName, String message, Class<?> thrownClass, int thrownHash) {
+            return this.hash == hash && this.thrownClass == thrownClass && this.thrownHash == thrownHash &&
+                Objects.equals(this.message, message) && Objects.equals(this.loggerName, loggerName);
+        }
+    }
+
+    /**
+     * 重复次数日志，复制窗口内第一条日志的级别、logger、来源和参数，不再经过去重
+     */
+    private static final class RepeatedRecord extends LogRecord {
+
+        private static final long serialVersionUID = 1L;
+
+        RepeatedRecord(LogRecord first, String message) {
+            super(first.getLevel(), message);
+            setLoggerName(first.getLoggerName());
+            setSourceClassName(first.getSourceClassName());
+            setSourceMethodName(first.getSourceMethodName());
+            setParameters(first.getParameters());
+            setResourceBundle(first.getResourceBundle());
+            setResourceBundleName(first.getResourceBundleName());
+        }
+    }
+}
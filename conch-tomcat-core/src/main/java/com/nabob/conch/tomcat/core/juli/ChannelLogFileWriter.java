@@ -0,0 +1,100 @@
+package com.nabob.conch.tomcat.core.juli;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 基于 NIO FileChannel 的 LogFileWriter
+ * <p>
+ * - 复用同一个 CharsetEncoder，把格式化结果直接编码到复用的 ByteBuffer（可选堆外内存），不再为每条日志创建 byte[]
+ * - ByteBuffer 满了或者 flush 时，通过 FileChannel 以追加（APPEND）模式写入文件
+ * - 使用 ReentrantLock 保证多个写日志线程互斥
+ *
+ * @author Adam
+ * @since 2024/1/10
+ */
+final class ChannelLogFileWriter extends EncodingLogFileWriter {
+
+    /**
+     * FileHandler 未设置 bufferSize 时的 ByteBuffer 大小
+     */
+    static final int DEFAULT_BUFFER_CAPACITY = 8 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer buffer;
+
+    ChannelLogFileWriter(File file, Charset charset, int bufferSize, boolean direct) throws IOException {
+        super(charset);
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.APPEND);
+        int capacity = Math.max(bufferSize > 0 ? bufferSize : DEFAULT_BUFFER_CAPACITY,
+            (int) Math.ceil(encoder.maxBytesPerChar()));
+        this.buffer = direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    @Override
+    protected ByteBuffer target() {
+        return buffer;
+    }
+
+    /**
+     * ByteBuffer 已满，先写入文件
+     */
+    @Override
+    protected void overflow() throws IOException {
+        drain();
+    }
+
+    @Override
+    public long length() throws IOException {
+        lock.lock();
+        try {
+            return channel.size() + buffer.position();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            drain();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            finish();
+            drain();
+        } finally {
+            try {
+                channel.close();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 把 ByteBuffer 中的内容全部写入 FileChannel
+     */
+    private void drain() throws IOException {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            buffer.clear();
+        }
+    }
+}
@@ -5,14 +5,28 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
+import java.util.Set;
 import java.util.StringTokenizer;
-import java.util.WeakHashMap;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
@@ -36,7 +50,7 @@ import java.util.logging.Logger;
  * ClassLoaderLogInfo ->
  *  -> 管理JDK的Logger 使用 LogNode rootNode
  *      -> 因为日志是可以依据包路径进行设置的，所以这里会解析包路径，组装成一个LogNode
- *      -> LogNode: （使用一个Map加一个链表管理）
+ *      -> LogNode: （使用一个并发Map加一个链表管理）
  *          -> Map用于当前LogNode所持有的所有同层子LogNode（只有一层）
  *          -> parent节点，链接存在父依赖关系的LogNode
  *              ->  RootNode:
@@ -58,6 +72,18 @@ import java.util.logging.Logger;
  *
  * </pre>
  *
+ * <h3>并发</h3>
+ * getProperty 不加锁（FileHandler.configure、addLogger 都会频繁调用，多个 Web 应用并行启动时不再串行）：
+ * - ClassLoader -> ClassLoaderLogInfo 使用弱引用 Key 的 ConcurrentHashMap，读不加锁，ClassLoader 被回收后清理
+ * - 每个 ClassLoader 的配置是不可变快照，重新读取配置时整体替换
+ * - 沿父 ClassLoader 查找配置的结果按 ClassLoader 缓存，配置变化、ClassLoader 被回收时失效
+ * <p>
+ * addLogger 不加锁，见 {@link #addLogger(Logger)}；创建 ClassLoaderLogInfo、读取配置仍然加锁
+ *
+ * <h3>热加载</h3>
+ * -Dorg.apache.juli.WatchConfiguration=true 时监听各 ClassLoader 的配置文件（文件系统中的 logging.properties、
+ * java.util.logging.config.file），变化后只修改变化的配置，见 {@link #reloadConfiguration(ClassLoader, Path)}
+ *
  * <h3>JUL LogManager:</h3>
  * <pre>
  * 有一个全局LogManager对象，用于维护有关Loggers和日志服务的一组共享状态。
@@ -90,13 +116,24 @@ import java.util.logging.Logger;
  */
 public class ClassLoaderLogManager extends LogManager {
 
+    /**
+     * 是否监听配置文件并热加载
+     */
+    private static final boolean WATCH_CONFIGURATION =
+        Boolean.parseBoolean(System.getProperty("org.apache.juli.WatchConfiguration", "false"));
+
     private static ThreadLocal<Boolean> addingLocalRootLogger = ThreadLocal.withInitial(() -> Boolean.FALSE);
 
+    /**
+     * 配置文件监听，第一次需要监听时创建
+     */
+    private ConfigurationWatcher watcher;
+
     /**
      * 根据不同的ClassLoader，加载对应的日志信息
-     * 使用 WeakHashMap 避免应用重新部署导致的 ClassLoader引用泄露
+     * 使用弱引用 Key 避免应用重新部署导致的 ClassLoader引用泄露
      */
-    protected final Map<ClassLoader, ClassLoaderLogInfo> classLoaderLoggers = new WeakHashMap<>();
+    protected final ClassLoaderLogInfoMap classLoaderLoggers = new ClassLoaderLogInfoMap();
 
     /**
      * 覆盖 addLogger 方法
@@ -106,11 +143,13 @@ public class ClassLoaderLogManager extends LogManager {
      * {@link LogManager#addLogger(java.util.logging.Logger)} ClassLoaderLogManager重新该方法
      *
      * <p>
-     * synchronized 线程安全的，必须
-     * 原LogManager的addLogger内部也使用了synchronized以保障LogManager的线程安全
+     * 不使用全局锁，多个线程可以并行创建不同名称的 Logger：
+     * - 同名 Logger 由第一个线程创建，其他线程等待创建完成后返回 false，LogManager 再通过 getLogger 获取已创建的 Logger
+     * - Logger 配置完成（级别、父子关系、Handler）后才放入 loggers，getLogger 不会返回配置了一半的 Logger
+     * - LogNode 树是并发的，父子关系设置后再检查，与并发创建的父/子 Logger 交错时重新设置
      */
     @Override
-    public synchronized boolean addLogger(final Logger logger) {
+    public boolean addLogger(final Logger logger) {
         final String loggerName = logger.getName();
         ClassLoader classLoader = getClassLoader();
         ClassLoaderLogInfo classLoaderInfo = getClassLoaderInfo(classLoader);
@@ -118,7 +157,29 @@ public class ClassLoaderLogManager extends LogManager {
         if (classLoaderInfo.loggers.containsKey(loggerName)) {
             return false;
         }
-        classLoaderInfo.loggers.put(loggerName, logger);
+
+        // 同名 Logger 只由一个线程创建
+        CountDownLatch creation = new CountDownLatch(1);
+        CountDownLatch existing = classLoaderInfo.creating.putIfAbsent(loggerName, creation);
+        if (existing != null) {
+            awaitCreation(existing);
+            return false;
+        }
+        try {
+            if (classLoaderInfo.loggers.containsKey(loggerName)) {
+                return false;
+            }
+            configureLogger(logger, classLoader, classLoaderInfo);
+            classLoaderInfo.loggers.put(loggerName, logger);
+            return true;
+        } finally {
+            classLoaderInfo.creating.remove(loggerName);
+            creation.countDown();
+        }
+    }
+
+    private void configureLogger(final Logger logger, ClassLoader classLoader, ClassLoaderLogInfo classLoaderInfo) {
+        final String loggerName = logger.getName();
 
         // 为logger配置日志级别；rootLogger的loggerName是 ""， 所以配置文件中的 .level 将是rootLogger的配置级别
         final String levelString = getProperty(loggerName + ".level");
@@ -142,13 +203,10 @@ public class ClassLoaderLogManager extends LogManager {
         node.logger = logger;
 
         // Set parent logger
-        Logger parentLogger = node.findParentLogger();
-        if (parentLogger != null) {
-            doSetParentLogger(logger, parentLogger);
-        }
+        node.linkParentLogger();
 
         // Tell children we are their new parent
-        node.setParentLogger(logger);
+        node.setParentLogger();
 
         // Add associated handlers, if any are defined using the .handlers property.
         // In this case, handlers of the parent logger(s) will not be used
@@ -161,9 +219,9 @@ public class ClassLoaderLogManager extends LogManager {
                 Handler handler = null;
                 ClassLoader current = classLoader;
                 while (current != null) {
-                    classLoaderInfo = classLoaderLoggers.get(current);
-                    if (classLoaderInfo != null) {
-                        handler = classLoaderInfo.handlers.get(handlerName);
+                    ClassLoaderLogInfo info = classLoaderLoggers.get(current);
+                    if (info != null) {
+                        handler = info.handlers.get(handlerName);
                         if (handler != null) {
                             break;
                         }
@@ -183,8 +241,36 @@ public class ClassLoaderLogManager extends LogManager {
         if (Boolean.parseBoolean(useParentHandlersString)) {
             logger.setUseParentHandlers(true);
         }
+    }
 
-        return true;
+    private static void awaitCreation(CountDownLatch creation) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                creation.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 覆盖 getLogger 方法，从当前ClassLoader的 loggers 中获取，不加锁
+     * <p>
+     * 不覆盖时 LogManager 从自己维护的命名空间中获取，而 addLogger 已被覆盖，LogManager.demandLogger 会一直获取不到
+     */
+    @Override
+    public Logger getLogger(final String name) {
+        return getClassLoaderInfo(getClassLoader()).loggers.get(name);
+    }
+
+    @Override
+    public Enumeration<String> getLoggerNames() {
+        return Collections.enumeration(getClassLoaderInfo(getClassLoader()).loggers.keySet());
     }
 
     /**
@@ -236,32 +322,47 @@ public class ClassLoaderLogManager extends LogManager {
     }
 
 
-    private synchronized String findProperty(String name) {
+    /**
+     * 不加锁：配置是不可变快照，沿父 ClassLoader 查找的结果已缓存
+     */
+    private String findProperty(String name) {
         ClassLoader classLoader = getClassLoader();
         ClassLoaderLogInfo info = getClassLoaderInfo(classLoader);
-        String result = info.props.getProperty(name);
-        // If the property was not found, and the current classloader had no
-        // configuration (property list is empty), look for the parent classloader
-        // properties.
-        if ((result == null) && (info.props.isEmpty())) {
-            if (classLoader != null) {
-                ClassLoader current = classLoader.getParent();
-                while (current != null) {
-                    info = classLoaderLoggers.get(current);
-                    if (info != null) {
-                        result = info.props.getProperty(name);
-                        if ((result != null) || (!info.props.isEmpty())) {
-                            break;
-                        }
-                    }
-                    current = current.getParent();
+        // 先读取代数：查找期间配置发生变化时，缓存的结果带着旧的代数，下一次查找时重新计算
+        int generation = info.generation;
+        ResolvedProperties resolved = info.resolved;
+        if (resolved == null || resolved.generation != generation) {
+            resolved = resolveProperties(classLoader, info, generation);
+            info.resolved = resolved;
+        }
+        String result = resolved.props.get(name);
+        if (result == null && resolved.inherited) {
+            result = super.getProperty(name);
+        }
+        return result;
+    }
+
+    /**
+     * 查找 ClassLoader 使用的配置
+     * <p>
+     * 当前ClassLoader没有配置（配置为空）时，使用第一个有配置的父ClassLoader的配置，仍找不到的属性使用 LogManager 的配置
+     */
+    private ResolvedProperties resolveProperties(ClassLoader classLoader, ClassLoaderLogInfo info, int generation) {
+        Map<String, String> props = info.props;
+        if (!props.isEmpty()) {
+            return new ResolvedProperties(generation, props, false);
+        }
+        if (classLoader != null) {
+            ClassLoader current = classLoader.getParent();
+            while (current != null) {
+                ClassLoaderLogInfo parentInfo = classLoaderLoggers.get(current);
+                if (parentInfo != null && !parentInfo.props.isEmpty()) {
+                    return new ResolvedProperties(generation, parentInfo.props, true);
                 }
-            }
-            if (result == null) {
-                result = super.getProperty(name);
+                current = current.getParent();
             }
         }
-        return result;
+        return new ResolvedProperties(generation, props, true);
     }
 
 
@@ -276,20 +377,29 @@ public class ClassLoaderLogManager extends LogManager {
     /**
      * 根据ClassLoader 获取 日志信息
      */
-    protected synchronized ClassLoaderLogInfo getClassLoaderInfo(ClassLoader classLoader) {
+    protected ClassLoaderLogInfo getClassLoaderInfo(ClassLoader classLoader) {
 
         if (classLoader == null) {
             classLoader = this.getClass().getClassLoader();
         }
 
+        // 已初始化完成的不加锁
         ClassLoaderLogInfo classLoaderLogInfo = classLoaderLoggers.get(classLoader);
-        if (classLoaderLogInfo == null) {
-            try {
-                readConfiguration(classLoader);
-            } catch (IOException e) {
-                // do nothing
-            }
+        if (classLoaderLogInfo != null && classLoaderLogInfo.initialized) {
+            return classLoaderLogInfo;
+        }
+
+        // 创建，或等待其他线程初始化完成（初始化线程重入时直接返回）
+        synchronized (this) {
             classLoaderLogInfo = classLoaderLoggers.get(classLoader);
+            if (classLoaderLogInfo == null) {
+                try {
+                    readConfiguration(classLoader);
+                } catch (IOException e) {
+                    // do nothing
+                }
+                classLoaderLogInfo = classLoaderLoggers.get(classLoader);
+            }
         }
 
         return classLoaderLogInfo;
@@ -302,6 +412,8 @@ public class ClassLoaderLogManager extends LogManager {
 
         // 获取配置文件资源
         InputStream is = null;
+        // 配置文件路径，开启热加载时监听
+        Path configFile = null;
 
         try {
 
@@ -311,6 +423,9 @@ public class ClassLoaderLogManager extends LogManager {
                 URL logConfig = ((URLClassLoader) classLoader).findResource("logging.properties");
                 if (null != logConfig) {
                     is = classLoader.getResourceAsStream("logging.properties");
+                    if ("file".equals(logConfig.getProtocol())) {
+                        configFile = Paths.get(logConfig.toURI());
+                    }
                 }
             }
         } catch (Exception e) {
@@ -323,6 +438,7 @@ public class ClassLoaderLogManager extends LogManager {
             if (configFileStr != null) {
                 try {
                     is = new FileInputStream(configFileStr);
+                    configFile = Paths.get(configFileStr);
                 } catch (FileNotFoundException e) {
                     System.err.println("Configuration error");
                     e.printStackTrace();
@@ -374,7 +490,193 @@ public class ClassLoaderLogManager extends LogManager {
             addLogger(rootLogger);
         } finally {
             addingLocalRootLogger.set(Boolean.FALSE);
+            classLoaderLogInfo.initialized = true;
+        }
+
+        if (WATCH_CONFIGURATION && configFile != null) {
+            watchConfiguration(configFile, classLoader);
+        }
+    }
+
+    /**
+     * 监听配置文件，配置变化后热加载
+     */
+    private void watchConfiguration(Path configFile, ClassLoader classLoader) {
+        if (watcher == null) {
+            try {
+                watcher = new ConfigurationWatcher(this);
+            } catch (IOException e) {
+                System.err.println("Unable to watch logging configuration");
+                e.printStackTrace();
+                return;
+            }
+        }
+        watcher.watch(configFile, classLoader);
+    }
+
+    /**
+     * 热加载配置文件：与当前配置比较，只修改变化的部分
+     * <p>
+     * - 替换配置快照，此后创建的 Logger、读取配置的 Handler 使用新配置
+     * - 变化的 {@code <logger>.level}：已创建的 Logger 直接修改级别（删除配置时恢复为继承父Logger的级别）
+     * - 变化的 Handler 配置（Handler类名 + level / filter / formatter）：直接修改，不关闭 Writer，不影响异步队列中的日志
+     * - 其他变化（handlers、Handler 的文件、队列配置等）需要重新创建 Handler，不修改，提示重启后生效
+     * <p>
+     * 加载耗时、修改的 Logger 数、Handler 配置数写入日志
+     */
+    protected synchronized void reloadConfiguration(ClassLoader classLoader, Path configFile) {
+        long start = System.nanoTime();
+        ClassLoaderLogInfo classLoaderLogInfo = classLoaderLoggers.get(classLoader);
+        if (classLoaderLogInfo == null) {
+            return;
+        }
+
+        Properties props = new Properties();
+        try (InputStream is = Files.newInputStream(configFile)) {
+            props.load(is);
+        } catch (IOException e) {
+            System.err.println("Configuration error");
+            e.printStackTrace();
+            return;
+        }
+
+        Map<String, String> oldProps = classLoaderLogInfo.props;
+        Map<String, String> newProps = snapshot(props);
+        Set<String> changed = new TreeSet<>();
+        for (Map.Entry<String, String> entry : newProps.entrySet()) {
+            if (!entry.getValue().equals(oldProps.get(entry.getKey()))) {
+                changed.add(entry.getKey());
+            }
+        }
+        for (String name : oldProps.keySet()) {
+            if (!newProps.containsKey(name)) {
+                changed.add(name);
+            }
+        }
+        if (changed.isEmpty()) {
+            return;
+        }
+
+        classLoaderLogInfo.props = newProps;
+        classLoaderLoggers.invalidate(classLoader);
+
+        // Handler 通过 LogManager.getProperty 读取配置，依赖线程上下文 ClassLoader
+        Thread thread = Thread.currentThread();
+        ClassLoader original = thread.getContextClassLoader();
+        thread.setContextClassLoader(classLoader);
+        try {
+            int loggers = 0;
+            int handlerProperties = 0;
+            List<String> restartRequired = new ArrayList<>();
+            for (String name : changed) {
+                String value = newProps.get(name);
+                // Handler 配置：Handler类名 + . + 配置名，同一个类的多个 Handler（如 1catalina.、2localhost. 前缀）共享同一份配置
+                boolean handlerMatched = false;
+                boolean handlerRestartRequired = false;
+                for (Handler handler : classLoaderLogInfo.handlers.values()) {
+                    String prefix = handler.getClass().getName() + ".";
+                    if (!name.startsWith(prefix)) {
+                        continue;
+                    }
+                    handlerMatched = true;
+                    int result = applyHandlerChange(handler, name, name.substring(prefix.length()), value);
+                    if (result == CHANGE_HANDLER) {
+                        handlerProperties++;
+                    } else if (result == CHANGE_RESTART_REQUIRED) {
+                        handlerRestartRequired = true;
+                    }
+                }
+                if (handlerMatched) {
+                    if (handlerRestartRequired) {
+                        restartRequired.add(name);
+                    }
+                    continue;
+                }
+
+                int result = applyChange(classLoaderLogInfo, name, value);
+                if (result == CHANGE_LOGGER) {
+                    loggers++;
+                } else if (result == CHANGE_HANDLER) {
+                    handlerProperties++;
+                } else if (result == CHANGE_RESTART_REQUIRED) {
+                    restartRequired.add(name);
+                }
+            }
+
+            StringBuilder report = new StringBuilder("Reloaded logging configuration [").append(configFile)
+                .append("] in ").append(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start)).append(" us: ")
+                .append(changed.size()).append(" changed properties, ").append(loggers).append(" logger levels and ")
+                .append(handlerProperties).append(" handler properties applied");
+            for (Handler handler : classLoaderLogInfo.handlers.values()) {
+                if (handler instanceof AsyncFileHandler) {
+                    // 异步队列没有重建，其中的日志不受影响
+                    report.append(", ").append(AsyncFileHandler.getQueueSize()).append(" queued async records kept");
+                    break;
+                }
+            }
+            Logger log = Logger.getLogger(ClassLoaderLogManager.class.getName());
+            log.info(report.toString());
+            if (!restartRequired.isEmpty()) {
+                log.warning("Logging configuration changes require a restart to take effect: " + restartRequired);
+            }
+        } finally {
+            thread.setContextClassLoader(original);
+        }
+    }
+
+    private static final int CHANGE_IGNORED = 0;
+    private static final int CHANGE_LOGGER = 1;
+    private static final int CHANGE_HANDLER = 2;
+    private static final int CHANGE_RESTART_REQUIRED = 3;
+
+    /**
+     * 使一项变化的 Handler 配置在一个 Handler 上生效
+     *
+     * @param property 去掉Handler类名前缀后的配置名
+     * @param value    新的值，null 表示已删除
+     */
+    private int applyHandlerChange(Handler handler, String name, String property, String value) {
+        try {
+            if (handler instanceof FileHandler) {
+                return ((FileHandler) handler).reconfigure(property) ? CHANGE_HANDLER : CHANGE_RESTART_REQUIRED;
+            }
+            if ("level".equals(property)) {
+                handler.setLevel(value == null ? Level.ALL : Level.parse(value.trim()));
+                return CHANGE_HANDLER;
+            }
+        } catch (IllegalArgumentException e) {
+            System.err.println("Configuration error: " + name + "=" + value);
+            return CHANGE_IGNORED;
+        }
+        return CHANGE_RESTART_REQUIRED;
+    }
+
+    /**
+     * 使一项变化的 Logger 配置生效
+     *
+     * @param value 新的值，null 表示已删除
+     */
+    private int applyChange(ClassLoaderLogInfo classLoaderLogInfo, String name, String value) {
+        if (name.equals("handlers") || name.endsWith(".handlers") || name.endsWith(".useParentHandlers")) {
+            return CHANGE_RESTART_REQUIRED;
+        }
+
+        // Logger 级别：<logger>.level，rootLogger 为 .level
+        if (name.endsWith(".level")) {
+            Logger logger = classLoaderLogInfo.loggers.get(name.substring(0, name.length() - ".level".length()));
+            if (logger == null) {
+                // 尚未创建的 Logger 创建时读取新配置
+                return CHANGE_IGNORED;
+            }
+            try {
+                logger.setLevel(value == null ? null : Level.parse(value.trim()));
+            } catch (IllegalArgumentException e) {
+                System.err.println("Configuration error: " + name + "=" + value);
+                return CHANGE_IGNORED;
+            }
+            return CHANGE_LOGGER;
         }
+        return CHANGE_IGNORED;
     }
 
     /**
@@ -383,9 +685,11 @@ public class ClassLoaderLogManager extends LogManager {
     protected synchronized void readConfiguration(InputStream is, ClassLoader classLoader) throws IOException {
         ClassLoaderLogInfo classLoaderLogInfo = classLoaderLoggers.get(classLoader);
 
-        // 加载配置
+        // 加载配置：在当前配置的副本上加载，再整体替换为新的不可变快照
+        Properties props = new Properties();
+        props.putAll(classLoaderLogInfo.props);
         try {
-            classLoaderLogInfo.props.load(is);
+            props.load(is);
         } catch (IOException e) {
             System.err.println("Configuration error");
             e.printStackTrace();
@@ -396,12 +700,14 @@ public class ClassLoaderLogManager extends LogManager {
                 // do nothing
             }
         }
+        classLoaderLogInfo.props = snapshot(props);
+        classLoaderLoggers.invalidate(classLoader);
 
         Logger rootLogger = classLoaderLogInfo.rootNode.logger;
 
         // 未这个classLoader的 root logger 创建 handlers
-        String rootHandlers = classLoaderLogInfo.props.getProperty(".handlers");
-        String handlers = classLoaderLogInfo.props.getProperty("handlers");
+        String rootHandlers = classLoaderLogInfo.props.get(".handlers");
+        String handlers = classLoaderLogInfo.props.get("handlers");
 
         if (handlers != null) {
             StringTokenizer handlersTok = new StringTokenizer(handlers, ",");
@@ -446,15 +752,17 @@ public class ClassLoaderLogManager extends LogManager {
 
     /**
      * 管理 Logger，并提供父子链支持
+     * <p>
+     * 并发的前缀树：children 是 ConcurrentHashMap，查找时按 . 切分的名称片段不创建 substring，只有创建新 Node 时才创建
      */
     protected static final class LogNode {
 
         // 该Node所管理的Logger
-        Logger logger;
+        volatile Logger logger;
         // 管理该Node的所有子Node
-        final Map<String, LogNode> children = new HashMap<>();
+        final ConcurrentMap<Segment, LogNode> children = new ConcurrentHashMap<>();
         // 指向该Node的父Node
-        LogNode parent;
+        final LogNode parent;
 
         public LogNode(LogNode parent, Logger logger) {
             this.parent = parent;
@@ -469,36 +777,34 @@ public class ClassLoaderLogManager extends LogManager {
          * 获取Node，没有则创建
          */
         LogNode findNode(String name) {
-            if (logger.getName().equals(name)) {
+            if (logger != null && logger.getName().equals(name)) {
                 return this;
             }
 
             LogNode currentNode = this;
-
-            while (name != null) {
-                // 获取第一个 . 的位置
-                final int dotIndex = name.indexOf('.');
-                // 下一个 log name
-                final String nextName;
-
-                if (dotIndex < 0) {
-                    // 没有 . 的话
-                    nextName = name;
-                    name = null;
-                } else {
-                    nextName = name.substring(0, dotIndex);
-                    name = name.substring(dotIndex + 1);
+            int start = 0;
+            final int length = name.length();
+
+            while (start <= length) {
+                // 下一个 . 的位置
+                int end = name.indexOf('.', start);
+                if (end < 0) {
+                    end = length;
                 }
 
-                LogNode childNode = children.get(nextName);
+                // 查找时使用 name 上的片段，不创建 substring
+                LogNode childNode = currentNode.children.get(new Segment(name, start, end));
                 if (childNode == null) {
-                    childNode = new LogNode(currentNode);
-                    // 放到当前Node的Map中
-                    currentNode.children.put(nextName, childNode);
+                    LogNode newNode = new LogNode(currentNode);
+                    childNode = currentNode.children.putIfAbsent(new Segment(name.substring(start, end)), newNode);
+                    if (childNode == null) {
+                        childNode = newNode;
+                    }
                 }
 
                 // 将子Node赋值给当前Node，那么可以发现children map中都是存放与当前Node只有一层的子Node
                 currentNode = childNode;
+                start = end + 1;
             }
 
             return currentNode;
@@ -514,17 +820,90 @@ public class ClassLoaderLogManager extends LogManager {
             return logger;
         }
 
-        void setParentLogger(final Logger parent) {
+        /**
+         * 设置父Logger
+         * <p>
+         * 设置后再检查：父路径上并发创建了新的 Logger 时，其他线程可能用旧的父Logger覆盖了刚设置的值，重新设置
+         */
+        void linkParentLogger() {
+            final Logger logger = this.logger;
+            Logger parentLogger = findParentLogger();
+            while (parentLogger != null) {
+                doSetParentLogger(logger, parentLogger);
+                Logger current = findParentLogger();
+                if (current == parentLogger) {
+                    break;
+                }
+                parentLogger = current;
+            }
+        }
+
+        /**
+         * 子Node（没有Logger时继续向下）的Logger 重新设置父Logger
+         */
+        void setParentLogger() {
             for (final LogNode childNode : children.values()) {
                 if (childNode.logger == null) {
-                    childNode.setParentLogger(parent);
+                    childNode.setParentLogger();
                 } else {
-                    doSetParentLogger(childNode.logger, parent);
+                    childNode.linkParentLogger();
                 }
             }
         }
     }
 
+    /**
+     * Logger 名称按 . 切分的一个片段
+     * <p>
+     * 查找时引用完整名称上的区间，与存放在 children 中的片段按字符比较
+     */
+    protected static final class Segment {
+
+        private final String name;
+        private final int start;
+        private final int end;
+        private final int hash;
+
+        Segment(String name) {
+            this(name, 0, name.length());
+        }
+
+        Segment(String name, int start, int end) {
+            this.name = name;
+            this.start = start;
+            this.end = end;
+            int h = 0;
+            for (int i = start; i < end; i++) {
+                h = 31 * h + name.charAt(i);
+            }
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Segment)) {
+                return false;
+            }
+            Segment other = (Segment) o;
+            int length = end - start;
+            return hash == other.hash && length == other.end - other.start &&
+                name.regionMatches(start, other.name, other.start, length);
+        }
+
+        @Override
+        public String toString() {
+            return name.substring(start, end);
+        }
+    }
+
     protected static void doSetParentLogger(final Logger logger, final Logger parent) {
         logger.setParent(parent);
     }
@@ -543,17 +922,165 @@ public class ClassLoaderLogManager extends LogManager {
         // 重写LogManager的addLogger方法后，统一管理在这个Map中
         final Map<String, Logger> loggers = new ConcurrentHashMap<>();
 
+        // 正在创建的 Logger，同名 Logger 只由一个线程创建
+        final Map<String, CountDownLatch> creating = new ConcurrentHashMap<>();
+
         // 配置文件中的 Handler，使用: handlers = 1catalina.org.apache.juli.AsyncFileHandler, 2localhost.org.apache.juli.AsyncFileHandler  配置
-        final Map<String, Handler> handlers = new HashMap<>();
+        final Map<String, Handler> handlers = new ConcurrentHashMap<>();
+
+        // 日志配置文件的不可变快照；每个 ClassLoaderLogInfo 对象，可加载自己的配置，重新读取配置时整体替换
+        volatile Map<String, String> props = Collections.emptyMap();
+
+        // 沿父 ClassLoader 查找配置的缓存
+        volatile ResolvedProperties resolved;
+
+        // 查找配置缓存的代数，该 ClassLoader 或父 ClassLoader 的配置变化时递增；只在持有 ClassLoaderLogManager 锁时修改
+        volatile int generation;
 
-        // 用于加载 Properties 资源： 日志配置文件；每个 ClassLoaderLogInfo 对象，可加载自己的配置
-        final Properties props = new Properties();
+        // 是否已初始化完成（配置已读取、root logger 已添加），完成前其他线程需要加锁等待
+        volatile boolean initialized;
 
         ClassLoaderLogInfo(LogNode rootNode) {
             this.rootNode = rootNode;
         }
     }
 
+    /**
+     * ClassLoader 使用的配置，以及缓存时 ClassLoaderLogInfo 的代数
+     */
+    protected static final class ResolvedProperties {
+
+        final int generation;
+
+        final Map<String, String> props;
+
+        // props 中没有的属性是否继续使用 LogManager 的配置（当前ClassLoader没有配置时）
+        final boolean inherited;
+
+        ResolvedProperties(int generation, Map<String, String> props, boolean inherited) {
+            this.generation = generation;
+            this.props = props;
+            this.inherited = inherited;
+        }
+    }
+
+    /**
+     * ClassLoader -> ClassLoaderLogInfo
+     * <p>
+     * 代替 WeakHashMap（get 也会修改内部结构，必须加锁）：ConcurrentHashMap + 弱引用 Key，读不加锁；
+     * ClassLoader 被回收后，下一次读写时从 ReferenceQueue 中清理（子 ClassLoader 引用父 ClassLoader，已经先被回收，
+     * 不需要使其他 ClassLoader 查找配置的缓存失效）
+     */
+    protected static final class ClassLoaderLogInfoMap {
+
+        private final Map<Object, ClassLoaderLogInfo> map = new ConcurrentHashMap<>();
+
+        private final ReferenceQueue<ClassLoader> queue = new ReferenceQueue<>();
+
+        public ClassLoaderLogInfo get(ClassLoader classLoader) {
+            expungeStaleEntries();
+            return map.get(new LookupKey(classLoader));
+        }
+
+        public void put(ClassLoader classLoader, ClassLoaderLogInfo info) {
+            expungeStaleEntries();
+            map.put(new WeakKey(classLoader, queue), info);
+        }
+
+        /**
+         * classLoader 的配置变化：使它及其子 ClassLoader 查找配置的缓存失效，其他 ClassLoader 的缓存不受影响
+         * <p>
+         * 调用方需持有 ClassLoaderLogManager 的锁
+         */
+        void invalidate(ClassLoader classLoader) {
+            for (Map.Entry<Object, ClassLoaderLogInfo> entry : map.entrySet()) {
+                ClassLoader current = ((ClassLoaderKey) entry.getKey()).classLoader();
+                while (current != null && current != classLoader) {
+                    current = current.getParent();
+                }
+                if (current != null || classLoader == null) {
+                    entry.getValue().generation++;
+                }
+            }
+        }
+
+        private void expungeStaleEntries() {
+            Reference<? extends ClassLoader> ref;
+            while ((ref = queue.poll()) != null) {
+                map.remove(ref);
+            }
+        }
+    }
+
+    /**
+     * 按 ClassLoader 实例比较的 Key
+     */
+    private interface ClassLoaderKey {
+
+        ClassLoader classLoader();
+    }
+
+    private static final class WeakKey extends WeakReference<ClassLoader> implements ClassLoaderKey {
+
+        private final int hash;
+
+        WeakKey(ClassLoader classLoader, ReferenceQueue<ClassLoader> queue) {
+            super(classLoader, queue);
+            this.hash = System.identityHashCode(classLoader);
+        }
+
+        @Override
+        public ClassLoader classLoader() {
+            return get();
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            ClassLoader classLoader = get();
+            return classLoader != null && o instanceof ClassLoaderKey && ((ClassLoaderKey) o).classLoader() == classLoader;
+        }
+    }
+
+    private static final class LookupKey implements ClassLoaderKey {
+
+        private final ClassLoader classLoader;
+
+        LookupKey(ClassLoader classLoader) {
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        public ClassLoader classLoader() {
+            return classLoader;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(classLoader);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof ClassLoaderKey && ((ClassLoaderKey) o).classLoader() == classLoader;
+        }
+    }
+
+    private static Map<String, String> snapshot(Properties props) {
+        Map<String, String> result = new HashMap<>();
+        for (String name : props.stringPropertyNames()) {
+            result.put(name, props.getProperty(name));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
     /**
      * 获取 ClassLoader，优先使用线程上下文
      */
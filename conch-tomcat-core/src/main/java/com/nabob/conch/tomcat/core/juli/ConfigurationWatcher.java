@@ -0,0 +1,138 @@
+package com.nabob.conch.tomcat.core.juli;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 监听各 ClassLoader 的 logging.properties，文件变化后由 ClassLoaderLogManager 热加载
+ * <p>
+ * - 一个守护线程、一个 WatchService，监听配置文件所在的目录
+ * - 编辑器保存文件时通常产生多个事件，收到事件后等待 {@link #QUIET_PERIOD} 内不再有事件才加载
+ * - 只弱引用 ClassLoader，应用卸载后不再加载其配置
+ *
+ * @author Adam
+ * @since 2024/1/28
+ */
+final class ConfigurationWatcher implements Runnable {
+
+    /**
+     * 最后一个事件之后等待的时间（毫秒）
+     */
+    static final long QUIET_PERIOD = 200;
+
+    private final ClassLoaderLogManager manager;
+
+    private final WatchService watchService;
+
+    /**
+     * 监听的目录 -> 该目录下的配置文件
+     */
+    private final Map<WatchKey, List<WatchedFile>> watched = new ConcurrentHashMap<>();
+
+    ConfigurationWatcher(ClassLoaderLogManager manager) throws IOException {
+        this.manager = manager;
+        this.watchService = FileSystems.getDefault().newWatchService();
+        Thread thread = new Thread(this, "LoggingConfigurationWatcher");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * 监听 ClassLoader 的配置文件
+     */
+    void watch(Path file, ClassLoader classLoader) {
+        Path path = file.toAbsolutePath().normalize();
+        Path dir = path.getParent();
+        if (dir == null) {
+            return;
+        }
+        try {
+            WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY);
+            watched.computeIfAbsent(key, k -> new CopyOnWriteArrayList<>()).add(new WatchedFile(path, classLoader));
+        } catch (IOException | ClosedWatchServiceException e) {
+            System.err.println("Unable to watch logging configuration [" + path + "]");
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void run() {
+        try {
+            while (true) {
+                Set<WatchedFile> changed = new HashSet<>();
+                WatchKey key = watchService.take();
+                // 合并一段时间内的事件
+                while (key != null) {
+                    collect(key, changed);
+                    key = watchService.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS);
+                }
+                for (WatchedFile file : changed) {
+                    ClassLoader classLoader = file.classLoader.get();
+                    if (classLoader != null) {
+                        manager.reloadConfiguration(classLoader, file.path);
+                    }
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // 停止监听
+        }
+    }
+
+    private void collect(WatchKey key, Set<WatchedFile> changed) {
+        List<WatchedFile> files = watched.get(key);
+        Path dir = (Path) key.watchable();
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (files == null || event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                continue;
+            }
+            Path path = dir.resolve((Path) event.context());
+            for (WatchedFile file : files) {
+                if (file.path.equals(path)) {
+                    changed.add(file);
+                }
+            }
+        }
+        if (files != null) {
+            // ClassLoader 已被回收
+            List<WatchedFile> stale = new ArrayList<>();
+            for (WatchedFile file : files) {
+                if (file.classLoader.get() == null) {
+                    stale.add(file);
+                }
+            }
+            files.removeAll(stale);
+        }
+        if (!key.reset() || (files != null && files.isEmpty())) {
+            key.cancel();
+            watched.remove(key);
+        }
+    }
+
+    private static final class WatchedFile {
+
+        final Path path;
+
+        final WeakReference<ClassLoader> classLoader;
+
+        WatchedFile(Path path, ClassLoader classLoader) {
+            this.path = path;
+            this.classLoader = new WeakReference<>(classLoader);
+        }
+    }
+}
@@ -0,0 +1,116 @@
+package com.nabob.conch.tomcat.core.juli;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 使用 CharsetEncoder 直接编码到 ByteBuffer 的 LogFileWriter
+ * <p>
+ * - 复用同一个 CharsetEncoder
+ * - 日志先拷贝到复用的 CharBuffer 再编码，写入 StringBuilder 时不创建任何对象
+ * - 目标 ByteBuffer 写满时由子类处理（写入文件、重新映射等）
+ * - 使用 ReentrantLock 保证多个写日志线程互斥
+ *
+ * @author Adam
+ * @since 2024/1/16
+ */
+abstract class EncodingLogFileWriter implements LogFileWriter {
+
+    private static final int CHAR_BUFFER_CAPACITY = 4 * 1024;
+
+    protected final CharsetEncoder encoder;
+    protected final ReentrantLock lock = new ReentrantLock();
+
+    private final CharBuffer chars = CharBuffer.allocate(CHAR_BUFFER_CAPACITY);
+
+    protected EncodingLogFileWriter(Charset charset) {
+        this.encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * 当前编码的目标 ByteBuffer
+     */
+    protected abstract ByteBuffer target();
+
+    /**
+     * 目标 ByteBuffer 已写满，腾出空间
+     */
+    protected abstract void overflow() throws IOException;
+
+    @Override
+    public int write(CharSequence csq) throws IOException {
+        lock.lock();
+        try {
+            int length = csq.length();
+            int offset = 0;
+            int written = 0;
+            chars.clear();
+            while (offset < length) {
+                int n = Math.min(length - offset, chars.remaining());
+                copy(csq, offset, offset + n, chars);
+                offset += n;
+                chars.flip();
+                written += encode(chars, false);
+                // 保留未编码的字符（被拆开的代理对），放到下一段之前
+                chars.compact();
+            }
+            return written;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 结束编码，输出 encoder 中残留的状态
+     */
+    protected void finish() throws IOException {
+        chars.clear().flip();
+        encode(chars, true);
+        while (encoder.flush(target()).isOverflow()) {
+            overflow();
+        }
+        encoder.reset();
+    }
+
+    /**
+     * @return 编码后的字节数
+     */
+    private int encode(CharBuffer in, boolean endOfInput) throws IOException {
+        int written = 0;
+        while (true) {
+            ByteBuffer out = target();
+            int start = out.position();
+            CoderResult result = encoder.encode(in, out, endOfInput);
+            written += out.position() - start;
+            if (result.isOverflow()) {
+                overflow();
+            } else if (result.isUnderflow()) {
+                return written;
+            } else {
+                result.throwException();
+            }
+        }
+    }
+
+    private static void copy(CharSequence csq, int start, int end, CharBuffer dst) {
+        int position = dst.position();
+        if (csq instanceof StringBuilder) {
+            ((StringBuilder) csq).getChars(start, end, dst.array(), dst.arrayOffset() + position);
+        } else if (csq instanceof String) {
+            ((String) csq).getChars(start, end, dst.array(), dst.arrayOffset() + position);
+        } else {
+            for (int i = start; i < end; i++) {
+                dst.put(position + i - start, csq.charAt(i));
+            }
+        }
+        dst.position(position + end - start);
+    }
+}
@@ -1,26 +1,34 @@
 package com.nabob.conch.tomcat.core.juli;
 
-import java.io.BufferedOutputStream;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.PrintWriter;
 import java.io.UnsupportedEncodingException;
 import java.nio.charset.Charset;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.sql.Timestamp;
+import java.nio.file.StandardCopyOption;
 import java.time.LocalDate;
+import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.logging.ErrorManager;
 import java.util.logging.Filter;
@@ -29,10 +37,31 @@ import java.util.logging.Handler;
 import java.util.logging.Level;
 import java.util.logging.LogManager;
 import java.util.logging.LogRecord;
+import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.zip.GZIPOutputStream;
 
 /**
  * FileHandler
+ * <p>
+ * 日志文件名：prefix + yyyy-MM-dd + [.N] + suffix [.gz]
+ * - 按日期滚动：日期变化时新建日志文件
+ * - 按大小滚动：maxFileSize 大于0时，当前文件超过该大小后新建同一天的下一个序号文件 juli.yyyy-MM-dd.N.log
+ * - 压缩：compress 为true时，滚动后关闭的日志文件由后台线程 gzip 压缩为 .gz 文件，同时压缩的文件数由
+ * 系统配置 org.apache.juli.FileHandlerMaxConcurrentCompressions（默认值：1）限制
+ * - 清理：按 maxDays 删除过期日志，按 maxTotalSize 从最旧的日志开始删除，直到日志总大小不超过配额
+ * - 二进制：writeMode 为 binary 时不格式化，日志编码为二进制写入 .bin 文件，由 {@link BinaryLogDecoder} 离线还原为文本
+ * <p>
+ * 日期滚动由定时任务驱动：计算下一次滚动（零点）的时间，到点后更新 expectedDate 并主动切换 Writer，
+ * 写日志时只需要读取一次 volatile 的 expectedDate，不需要每条日志都格式化当前时间。外部调度器被关闭导致滚动任务
+ * 丢失时，由内部调度器上的检查任务重新调度，写日志路径不做检查。
+ * 定时任务默认使用内部的单线程调度器，嵌入 Server 时可以通过 {@link #setUtilityExecutor(ScheduledExecutorService)}
+ * 使用 Server 的工具线程
+ * <p>
+ * 写日志路径只使用 j.u.c 的锁（ReentrantReadWriteLock、ReentrantLock），不使用 synchronized，
+ * 虚拟线程打日志时不会钉住载体线程；写日志时重新调度滚动任务也使用 ReentrantLock
+ * <p>
+ * 滚动、清理记录为 JFR 事件 {@link LogRotateEvent}、{@link LogCleanEvent}（默认不开启）
  *
  * @author Adam
  * @since 2023/12/12
@@ -42,10 +71,59 @@ public class FileHandler extends Handler {
     // 永久
     public static final int DEFAULT_MAX_DAYS = -1;
     public static final int DEFAULT_BUFFER_SIZE = -1;
+    // 不限制
+    public static final long DEFAULT_MAX_FILE_SIZE = -1;
+    public static final long DEFAULT_MAX_TOTAL_SIZE = -1;
+
+    /**
+     * 压缩文件后缀
+     */
+    public static final String COMPRESSED_SUFFIX = ".gz";
+
+    public static final int MAX_CONCURRENT_COMPRESSIONS = Integer.parseInt(
+        System.getProperty("org.apache.juli.FileHandlerMaxConcurrentCompressions", "1"));
+
+    // 写入方式 - CharsetEncoder + 复用byte[] + FileOutputStream
+    public static final String WRITE_MODE_STREAM = "stream";
+    // 写入方式 - CharsetEncoder + 复用ByteBuffer + FileChannel
+    public static final String WRITE_MODE_CHANNEL = "channel";
+    // 写入方式 - 内存映射 MappedByteBuffer，JVM 崩溃不丢日志
+    public static final String WRITE_MODE_MAPPED = "mmap";
+    // 写入方式 - 二进制编码，不格式化，由 BinaryLogDecoder 离线还原为文本
+    public static final String WRITE_MODE_BINARY = "binary";
+    public static final String DEFAULT_WRITE_MODE = WRITE_MODE_STREAM;
 
     private static final ExecutorService DELETE_FILES_SERVICE = Executors
         .newSingleThreadExecutor(new FileHandlerThreadFactory("FileHandlerLogFilesCleaner-"));
 
+    /**
+     * 格式化日志复用的 StringBuilder
+     */
+    private static final ThreadLocal<StringBuilder> FORMAT_BUFFER = ThreadLocal
+        .withInitial(() -> new StringBuilder(256));
+    private static final int MAX_FORMAT_BUFFER_SIZE = 512 * 1024;
+
+    /**
+     * 日期滚动的内部调度器，没有设置 utilityExecutor 时使用
+     */
+    private static final ScheduledThreadPoolExecutor ROTATION_SERVICE = createRotationService();
+
+    /**
+     * 外部提供的调度器，例如 Server 的工具线程 {@code Server.getUtilityExecutor()}
+     */
+    private static volatile ScheduledExecutorService utilityExecutor = null;
+
+    /**
+     * 滚动任务调度在外部调度器上时，检查滚动任务是否丢失的间隔（秒）
+     */
+    private static final long ROTATION_CHECK_INTERVAL = 60;
+
+    /**
+     * 压缩已滚动日志文件的线程池，线程数即同时压缩的最大文件数
+     */
+    private static final ExecutorService COMPRESS_FILES_SERVICE = Executors.newFixedThreadPool(
+        Math.max(1, MAX_CONCURRENT_COMPRESSIONS), new FileHandlerThreadFactory("FileHandlerLogFilesCompressor-"));
+
     /**
      * 日志是否可滚动
      * <p>
@@ -81,6 +159,36 @@ public class FileHandler extends Handler {
      */
     private Integer bufferSize;
 
+    /**
+     * 单个日志文件的最大大小（字节，按编码后写入的字节数累计），超过后按大小滚动，只在 rotatable 时生效
+     */
+    private Long maxFileSize;
+
+    /**
+     * 日志文件的总大小配额（字节），超过后从最旧的日志开始删除
+     */
+    private Long maxTotalSize;
+
+    /**
+     * 滚动后是否 gzip 压缩关闭的日志文件
+     */
+    private Boolean compress;
+
+    /**
+     * 日志写入方式：stream、channel、mmap、binary
+     */
+    private String writeMode;
+
+    /**
+     * channel 写入方式下，是否使用堆外内存 ByteBuffer
+     */
+    private Boolean directBuffer;
+
+    /**
+     * mmap 写入方式下，每次映射的窗口大小
+     */
+    private Integer mappedChunkSize;
+
     /**
      * 当前日志文件的日期，未null表示没有日志文件
      * <p>
@@ -88,17 +196,76 @@ public class FileHandler extends Handler {
      */
     private volatile String date = null;
 
+    /**
+     * 当前应该使用的日志日期，由日期滚动定时任务更新；不滚动时为空字符串；
+     * 为 null 表示滚动任务已被 close() 取消，下一条日志写入时重新调度
+     * <p>
+     * 格式：yyyy-MM-dd
+     */
+    private volatile String expectedDate = null;
+
+    /**
+     * 下一次日期滚动的定时任务
+     */
+    private ScheduledFuture<?> rotationFuture = null;
+
+    /**
+     * 执行 rotationFuture 的调度器
+     */
+    private ScheduledExecutorService rotationExecutor = null;
+
+    /**
+     * 滚动任务调度在外部调度器上时，在内部调度器上定期检查滚动任务是否丢失
+     */
+    private ScheduledFuture<?> rotationCheck = null;
+
+    /**
+     * 每次调度滚动任务加1，旧的滚动任务执行完后不再调度下一次，避免出现两条调度链
+     */
+    private long rotationGeneration = 0;
+
+    /**
+     * 调度、取消滚动任务的锁，保护 rotationFuture、rotationExecutor、rotationCheck、rotationGeneration
+     */
+    private final ReentrantLock rotationLock = new ReentrantLock();
+
+    /**
+     * 当前日志文件在当天的序号，0 表示没有序号
+     */
+    private int index = 0;
+
+    /**
+     * 当前日志文件
+     */
+    private volatile File currentFile = null;
+
+    /**
+     * 当前日志文件已写入的大小（字节，打开时为 Writer 的逻辑长度，之后累加每次写入编码后的字节数）
+     */
+    private final AtomicLong currentFileSize = new AtomicLong();
+
     /**
      * 写日志 Writer
      */
-    private volatile PrintWriter writer = null;
+    private volatile LogFileWriter writer = null;
     /**
      * 写日志 Writer 锁
      */
     protected final ReadWriteLock writerLock = new ReentrantReadWriteLock();
 
+    /**
+     * Writer flush 次数
+     */
+    private final LongAdder flushCount = new LongAdder();
+
     public FileHandler() {
         configure();
+        rotationLock.lock();
+        try {
+            scheduleRotation();
+        } finally {
+            rotationLock.unlock();
+        }
     }
 
     @Override
@@ -107,14 +274,19 @@ public class FileHandler extends Handler {
         if (!isLoggable(record)) {
             return;
         }
+        publishLoggable(record);
+    }
 
-        final String tsDate;
-        if (rotatable) {
-            Timestamp ts = new Timestamp(System.currentTimeMillis());
-            // yyyy-MM-dd
-            tsDate = ts.toString().substring(0, 10);
-        } else {
-            tsDate = "";
+    /**
+     * 写一条已经过 {@link #isLoggable(LogRecord)} 检查的日志
+     * <p>
+     * AsyncFileHandler 在业务线程入队前已经检查过，写线程不再重复运行 filter
+     */
+    protected void publishLoggable(LogRecord record) {
+        // 不需要每条日志都计算当前日期，只读取定时任务维护的 expectedDate
+        String tsDate = expectedDate;
+        if (tsDate == null) {
+            tsDate = ensureRotationScheduled();
         }
 
         // 处理日志滚动
@@ -131,50 +303,35 @@ public class FileHandler extends Handler {
         // 参考：https://www.cnblogs.com/mikechenshare/p/16743733.html
         writerLock.readLock().lock();
         try {
-            // 如果当前日期与当前打开的日志日期不一致，则新创建日志文件
-            if (!tsDate.equals(date)) {
-                // 锁升级 换到写锁，释放读锁（有读锁是不能获取写锁的）
-                writerLock.readLock().unlock();
-                writerLock.writeLock().lock();
-                try {
-
-                    // double check
-                    if (!tsDate.equals(date)) {
-                        // 关闭当前Writer
-                        closeWriter();
+            rotateIfNecessary(tsDate);
 
-                        date = tsDate;
-
-                        // 重新开启Writer
-                        openWriter();
-
-                        // 删除旧日志
-                        clean();
-                    }
-
-                } finally {
-                    // 锁降级
-                    writerLock.readLock().lock();
-                    writerLock.writeLock().unlock();
-                }
+            // 二进制日志不格式化
+            if (isBinary()) {
+                publishBinary(record);
+                return;
             }
 
             // 处理 LogRecord
-            // 格式化
-            String result = null;
+            // 格式化 - 复用线程本地的 StringBuilder
+            StringBuilder result = FORMAT_BUFFER.get();
+            result.setLength(0);
             try {
-                result = getFormatter().format(record);
+                format(record, result);
             } catch (Exception e) {
                 reportError(null, e, ErrorManager.FORMAT_FAILURE);
                 return;
             }
 
-            // 写盘 - 多线程时，PrinterWriter使用了父类的lock进行同步操作
+            // 写盘 - 多线程时，由 LogFileWriter 保证同步
             try {
                 if (writer != null) {
-                    writer.write(result);
+                    int written = writer.write(result);
+                    if (maxFileSize > 0) {
+                        currentFileSize.addAndGet(written);
+                    }
                     if (bufferSize < 0) {
                         writer.flush();
+                        flushCount.increment();
                     }
                 } else {
                     reportError("FileHandler is closed or not yet initialized, unable to log [" + result + "]", null,
@@ -182,11 +339,412 @@ public class FileHandler extends Handler {
                 }
             } catch (Exception e) {
                 reportError(null, e, ErrorManager.WRITE_FAILURE);
+            } finally {
+                releaseFormatBuffer(result);
+            }
+        } finally {
+            writerLock.readLock().unlock();
+        }
+
+    }
+
+    /**
+     * 批量写日志（group commit）
+     * <p>
+     * 一批日志只获取一次读锁、只检查一次日期，格式化到同一个缓冲区后一次写入，最后只 flush 一次。
+     * 缓冲区超过 maxChars 时先写入 Writer，避免一批日志占用过多内存。
+     * <p>
+     * 调用方需保证 records 已经过 {@link #isLoggable(LogRecord)} 检查
+     *
+     * @param records     日志Record，按入队顺序
+     * @param threadNames 入队时获取的打日志线程名，与 records 一一对应
+     * @param maxChars    缓冲区最大字符数
+     */
+    protected void publishBatch(List<LogRecord> records, List<String> threadNames, int maxChars) {
+        if (records.isEmpty()) {
+            return;
+        }
+
+        String tsDate = expectedDate;
+        if (tsDate == null) {
+            tsDate = ensureRotationScheduled();
+        }
+
+        writerLock.readLock().lock();
+        try {
+            rotateIfNecessary(tsDate);
+
+            if (writer == null) {
+                reportError("FileHandler is closed or not yet initialized, unable to log [" + records.size() +
+                    "] records", null, ErrorManager.WRITE_FAILURE);
+                return;
+            }
+
+            if (isBinary()) {
+                for (int i = 0, n = records.size(); i < n; i++) {
+                    LogRecord record = records.get(i);
+                    FileHandlerThread.setRecordThread(record, threadNames.get(i), isCaptureLocation());
+                    writeBinary(record);
+                }
+                flushIfUnbuffered();
+                return;
+            }
+
+            StringBuilder buffer = FORMAT_BUFFER.get();
+            buffer.setLength(0);
+            try {
+                for (int i = 0, n = records.size(); i < n; i++) {
+                    LogRecord record = records.get(i);
+                    FileHandlerThread.setRecordThread(record, threadNames.get(i), isCaptureLocation());
+                    // 格式化，单条失败不影响这一批的其他日志
+                    int start = buffer.length();
+                    try {
+                        format(record, buffer);
+                    } catch (Exception e) {
+                        buffer.setLength(start);
+                        reportError(null, e, ErrorManager.FORMAT_FAILURE);
+                        continue;
+                    }
+                    if (buffer.length() >= maxChars) {
+                        writeBuffer(buffer);
+                    }
+                }
+                if (buffer.length() > 0) {
+                    writeBuffer(buffer);
+                }
+                if (bufferSize < 0) {
+                    writer.flush();
+                    flushCount.increment();
+                }
+            } catch (Exception e) {
+                reportError(null, e, ErrorManager.WRITE_FAILURE);
+            } finally {
+                releaseFormatBuffer(buffer);
+            }
+        } finally {
+            writerLock.readLock().unlock();
+        }
+    }
+
+    private boolean isBinary() {
+        return WRITE_MODE_BINARY.equalsIgnoreCase(writeMode);
+    }
+
+    /**
+     * 写出的日志是否包含调用方（类名、方法名）；同步写日志时在打日志线程上格式化，总是包含
+     */
+    public boolean isCaptureLocation() {
+        return true;
+    }
+
+    /**
+     * 写调用方时是否经过 {@link OneLineSimpleFormatter#resolveSourceClassName(LogRecord)}：
+     * 二进制写入、OneLineSimpleFormatter、JsonFormatter 在写线程上不会为关闭了 captureLocation 的日志推断调用方
+     */
+    boolean isLocationAware() {
+        Formatter formatter = getFormatter();
+        return isBinary() || formatter instanceof OneLineSimpleFormatter || formatter instanceof JsonFormatter;
+    }
+
+    /**
+     * 二进制编码一条日志并写盘，调用前需持有读锁
+     */
+    private void publishBinary(LogRecord record) {
+        if (writer == null) {
+            reportError("FileHandler is closed or not yet initialized, unable to log [" + record.getMessage() + "]",
+                null, ErrorManager.WRITE_FAILURE);
+            return;
+        }
+        writeBinary(record);
+        flushIfUnbuffered();
+    }
+
+    private void writeBinary(LogRecord record) {
+        try {
+            int written = ((BinaryLogFileWriter) writer).write(record,
+                OneLineSimpleFormatter.resolveThreadName(record));
+            if (maxFileSize > 0) {
+                currentFileSize.addAndGet(written);
+            }
+        } catch (Exception e) {
+            reportError(null, e, ErrorManager.WRITE_FAILURE);
+        }
+    }
+
+    private void flushIfUnbuffered() {
+        if (bufferSize < 0) {
+            try {
+                writer.flush();
+                flushCount.increment();
+            } catch (Exception e) {
+                reportError(null, e, ErrorManager.FLUSH_FAILURE);
+            }
+        }
+    }
+
+    /**
+     * 格式化并追加到 sb；AppendingFormatter 直接追加，不创建中间 String
+     */
+    private void format(LogRecord record, StringBuilder sb) {
+        Formatter formatter = getFormatter();
+        if (formatter instanceof AppendingFormatter) {
+            ((AppendingFormatter) formatter).format(record, sb);
+        } else {
+            sb.append(formatter.format(record));
+        }
+    }
+
+    /**
+     * 复用的 StringBuilder 过大时丢弃，避免一条大日志长期占用内存
+     */
+    private static void releaseFormatBuffer(StringBuilder sb) {
+        if (sb.capacity() > MAX_FORMAT_BUFFER_SIZE) {
+            FORMAT_BUFFER.remove();
+        }
+    }
+
+    private void writeBuffer(StringBuilder buffer) throws IOException {
+        int written = writer.write(buffer);
+        if (maxFileSize > 0) {
+            currentFileSize.addAndGet(written);
+        }
+        buffer.setLength(0);
+    }
+
+    /**
+     * 当前日志文件应使用的日期，不滚动时为空字符串
+     */
+    private String currentDate() {
+        if (rotatable) {
+            // yyyy-MM-dd
+            return LocalDate.now().toString();
+        }
+        return "";
+    }
+
+    /**
+     * 设置日期滚动使用的调度器，例如 Server 的工具线程；设置为 null 时使用内部调度器
+     * <p>
+     * 对之后的调度生效，已经调度的滚动任务仍在原调度器上执行；原调度器关闭后，下一条日志写入时改由内部调度器调度
+     */
+    public static void setUtilityExecutor(ScheduledExecutorService executor) {
+        utilityExecutor = executor;
+    }
+
+    /**
+     * 内部调度器，同一个包内的定时任务（如 BurstDeduplicationFilter 写出重复次数）也使用它
+     */
+    static ScheduledExecutorService scheduler() {
+        return ROTATION_SERVICE;
+    }
+
+    private static ScheduledThreadPoolExecutor createRotationService() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1,
+            new FileHandlerThreadFactory("FileHandlerRotator-"));
+        executor.setRemoveOnCancelPolicy(true);
+        return executor;
+    }
+
+    /**
+     * 计算下一次日期滚动（明天零点）的时间，调度日期滚动任务
+     * <p>
+     * 调用前需持有 rotationLock
+     */
+    private void scheduleRotation() {
+        expectedDate = currentDate();
+        if (!rotatable) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long nextRollover = LocalDate.now().plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant()
+            .toEpochMilli();
+        long generation = ++rotationGeneration;
+        Runnable task = () -> rotateOnSchedule(generation);
+        ScheduledExecutorService executor = utilityExecutor;
+        if (executor == null || executor.isShutdown()) {
+            executor = ROTATION_SERVICE;
+        }
+        try {
+            rotationFuture = executor.schedule(task, Math.max(0, nextRollover - now), TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // 调度器已关闭，由内部调度器兜底
+            executor = ROTATION_SERVICE;
+            rotationFuture = executor.schedule(task, Math.max(0, nextRollover - now), TimeUnit.MILLISECONDS);
+        }
+        rotationExecutor = executor;
+
+        // 内部调度器不会被关闭，只有外部调度器需要检查
+        if (executor == ROTATION_SERVICE) {
+            cancelRotationCheck();
+        } else if (rotationCheck == null) {
+            rotationCheck = ROTATION_SERVICE.scheduleWithFixedDelay(this::checkRotation, ROTATION_CHECK_INTERVAL,
+                ROTATION_CHECK_INTERVAL, TimeUnit.SECONDS);
+        }
+    }
+
+    private void cancelRotationCheck() {
+        if (rotationCheck != null) {
+            rotationCheck.cancel(false);
+            rotationCheck = null;
+        }
+    }
+
+    private void cancelRotation() {
+        rotationLock.lock();
+        try {
+            rotationGeneration++;
+            expectedDate = null;
+            if (rotationFuture != null) {
+                rotationFuture.cancel(false);
+                rotationFuture = null;
+            }
+            rotationExecutor = null;
+            cancelRotationCheck();
+        } finally {
+            rotationLock.unlock();
+        }
+    }
+
+    /**
+     * close() 取消了滚动任务之后又有日志写入（Writer 延迟重新打开），重新调度滚动任务
+     *
+     * @return 当前应该使用的日志日期
+     */
+    private String ensureRotationScheduled() {
+        rotationLock.lock();
+        try {
+            if (expectedDate == null) {
+                scheduleRotation();
             }
+            return expectedDate;
+        } finally {
+            rotationLock.unlock();
+        }
+    }
+
+    /**
+     * 检查调度在外部调度器上的滚动任务：外部调度器（如 Server 的工具线程）被关闭时，shutdownNow() 丢弃了已调度的任务，
+     * 任务既没有执行也没有被取消，expectedDate 不再更新，此时改由内部调度器重新调度
+     */
+    private void checkRotation() {
+        rotationLock.lock();
+        try {
+            ScheduledFuture<?> future = rotationFuture;
+            ScheduledExecutorService executor = rotationExecutor;
+            if (expectedDate == null || future == null || executor == null) {
+                return;
+            }
+            if (future.isDone() || executor.isShutdown()) {
+                future.cancel(false);
+                // 重新计算当前日期，调度器已关闭时由内部调度器兜底
+                scheduleRotation();
+            }
+        } catch (Exception e) {
+            // 不抛出异常，否则之后不再检查
+            reportError("Unable to reschedule log rotation", e, ErrorManager.GENERIC_FAILURE);
         } finally {
+            rotationLock.unlock();
+        }
+    }
+
+    /**
+     * 日期滚动定时任务：更新 expectedDate，已打开日志文件时主动切换 Writer，再调度下一次滚动
+     * <p>
+     * 调度可能因为时钟调整提前执行，scheduleRotation 会以当前时钟重新计算日期和下一次滚动时间
+     */
+    private void rotateOnSchedule(long generation) {
+        try {
+            String newDate = currentDate();
+            rotationLock.lock();
+            try {
+                // 已经关闭，或者已经被重新调度
+                if (generation != rotationGeneration) {
+                    return;
+                }
+                expectedDate = newDate;
+            } finally {
+                rotationLock.unlock();
+            }
+            writerLock.readLock().lock();
+            try {
+                // 还没有打开日志文件时，等第一条日志再创建
+                if (date != null) {
+                    rotateIfNecessary(newDate);
+                }
+            } finally {
+                writerLock.readLock().unlock();
+            }
+        } catch (Exception e) {
+            reportError("Unable to rotate log file", e, ErrorManager.GENERIC_FAILURE);
+        } finally {
+            rotationLock.lock();
+            try {
+                // 已经关闭，或者已经被重新调度
+                if (rotationFuture != null && generation == rotationGeneration) {
+                    scheduleRotation();
+                }
+            } finally {
+                rotationLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 如果当前日期与当前打开的日志日期不一致，或者当前日志文件超过 maxFileSize，则新创建日志文件
+     * <p>
+     * 调用前需持有读锁，返回时仍持有读锁
+     */
+    private void rotateIfNecessary(String tsDate) {
+        if (!tsDate.equals(date) || isFileSizeExceeded()) {
+            // 锁升级 换到写锁，释放读锁（有读锁是不能获取写锁的）
             writerLock.readLock().unlock();
+            writerLock.writeLock().lock();
+            try {
+
+                // double check
+                boolean dateChanged = !tsDate.equals(date);
+                if (dateChanged || isFileSizeExceeded()) {
+                    File closedFile = currentFile;
+                    LogRotateEvent event = new LogRotateEvent();
+                    event.begin();
+
+                    // 关闭当前Writer
+                    closeWriter();
+
+                    date = tsDate;
+                    index = dateChanged ? lastIndexOfDate(tsDate) : index + 1;
+
+                    // 重新开启Writer
+                    openWriter();
+
+                    event.end();
+                    if (event.shouldCommit()) {
+                        event.closedFile = closedFile == null ? null : closedFile.getPath();
+                        event.newFile = currentFile == null ? null : currentFile.getPath();
+                        event.reason = dateChanged ? "date" : "size";
+                        event.commit();
+                    }
+
+                    // 压缩滚动的日志
+                    if (compress && closedFile != null) {
+                        compressFile(closedFile);
+                    }
+
+                    // 删除旧日志
+                    clean();
+                }
+
+            } finally {
+                // 锁降级
+                writerLock.readLock().lock();
+                writerLock.writeLock().unlock();
+            }
         }
+    }
 
+    private boolean isFileSizeExceeded() {
+        return rotatable && maxFileSize > 0 && writer != null && currentFileSize.get() >= maxFileSize;
     }
 
     @Override
@@ -197,6 +755,7 @@ public class FileHandler extends Handler {
                 return;
             }
             writer.flush();
+            flushCount.increment();
         } catch (Exception e) {
             reportError(null, e, ErrorManager.FLUSH_FAILURE);
         } finally {
@@ -204,15 +763,29 @@ public class FileHandler extends Handler {
         }
     }
 
+    /**
+     * Writer flush 次数
+     */
+    public long getFlushCount() {
+        return flushCount.sum();
+    }
+
     /**
      * 直接开启，可便于测试
      */
     public void open() {
+        ensureRotationScheduled();
         openWriter();
     }
 
     @Override
     public void close() throws SecurityException {
+        Filter filter = getFilter();
+        if (filter instanceof BurstDeduplicationFilter) {
+            // 同步写出尚未写出的重复次数，AsyncFileHandler 关闭后写线程不再处理入队的日志
+            ((BurstDeduplicationFilter) filter).flush(this::publishLoggable);
+        }
+        cancelRotation();
         closeWriter();
     }
 
@@ -239,8 +812,17 @@ public class FileHandler extends Handler {
             prefix = getProperty(className + ".prefix", "juli.");
         }
 
-        pattern = Pattern
-            .compile("^(" + Pattern.quote(prefix) + ")\\d{4}-\\d{1,2}-\\d{1,2}(" + Pattern.quote(suffix) + ")$");
+        if (writeMode == null) {
+            writeMode = getProperty(className + ".writeMode", DEFAULT_WRITE_MODE);
+        }
+        // 二进制日志使用单独的后缀，避免与文本日志混在同一个文件
+        if (isBinary()) {
+            suffix = BinaryLogFileWriter.SUFFIX;
+        }
+
+        // group(1): 日期 group(2): 序号
+        pattern = Pattern.compile("^" + Pattern.quote(prefix) + "(\\d{4}-\\d{1,2}-\\d{1,2})(?:\\.(\\d+))?" +
+            Pattern.quote(suffix) + "(?:" + Pattern.quote(COMPRESSED_SUFFIX) + ")?$");
 
 
         if (maxDays == null) {
@@ -261,6 +843,29 @@ public class FileHandler extends Handler {
             }
         }
 
+        if (maxFileSize == null) {
+            maxFileSize = getLongProperty(className + ".maxFileSize", DEFAULT_MAX_FILE_SIZE);
+        }
+        if (maxTotalSize == null) {
+            maxTotalSize = getLongProperty(className + ".maxTotalSize", DEFAULT_MAX_TOTAL_SIZE);
+        }
+        if (compress == null) {
+            compress = Boolean.valueOf(getProperty(className + ".compress", "false"));
+        }
+
+        if (directBuffer == null) {
+            directBuffer = Boolean.valueOf(getProperty(className + ".directBuffer", "false"));
+        }
+        if (mappedChunkSize == null) {
+            String sChunkSize = getProperty(className + ".mappedChunkSize",
+                String.valueOf(MappedLogFileWriter.DEFAULT_CHUNK_SIZE));
+            try {
+                mappedChunkSize = Integer.valueOf(sChunkSize);
+            } catch (NumberFormatException ignore) {
+                mappedChunkSize = Integer.valueOf(MappedLogFileWriter.DEFAULT_CHUNK_SIZE);
+            }
+        }
+
         // 日志编码 encoding
         String encoding = getProperty(className + ".encoding", null);
         if (encoding != null && encoding.length() > 0) {
@@ -272,19 +877,70 @@ public class FileHandler extends Handler {
         }
 
         // 日志级别 level
-        setLevel(Level.parse(getProperty(className + ".level", Level.ALL.toString())));
+        configureLevel(className);
 
         // 日志Handler的过滤器 filter
+        configureFilter(className, cl);
+
+        // 日志格式化 formatter
+        configureFormatter(className, cl);
+
+        // 设置异常管理器
+        setErrorManager(new ErrorManager());
+    }
+
+    /**
+     * 配置热加载：重新读取一项配置并直接生效，不关闭 Writer，不影响异步队列中的日志
+     *
+     * @param property 配置名（不含类名前缀）
+     * @return false 该配置不支持热加载，需要重启后生效
+     */
+    boolean reconfigure(String property) {
+        String className = this.getClass().getName();
+        ClassLoader cl = ClassLoaderLogManager.getClassLoader();
+        switch (property) {
+            case "level":
+                configureLevel(className);
+                return true;
+            case "filter":
+                configureFilter(className, cl);
+                return true;
+            case "formatter":
+                configureFormatter(className, cl);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private void configureLevel(String className) {
+        setLevel(Level.parse(getProperty(className + ".level", Level.ALL.toString())));
+    }
+
+    private void configureFilter(String className, ClassLoader cl) {
         String filterName = getProperty(className + ".filter", null);
-        if (filterName != null) {
+        Filter previous = getFilter();
+        if (previous instanceof BurstDeduplicationFilter) {
+            // 热加载替换 Filter 前，写出旧 Filter 中的重复次数
+            ((BurstDeduplicationFilter) previous).flush(null);
+        }
+        if (filterName == null) {
+            setFilter(null);
+        } else {
             try {
-                setFilter((Filter) cl.loadClass(filterName).getConstructor().newInstance());
+                Filter filter = (Filter) cl.loadClass(filterName).getConstructor().newInstance();
+                if (filter instanceof BurstDeduplicationFilter) {
+                    // 重复次数日志写到该Handler
+                    ((BurstDeduplicationFilter) filter).setHandler(this);
+                }
+                setFilter(filter);
             } catch (Exception e) {
                 // Ignore
             }
         }
+    }
 
-        // 日志格式化 formatter
+    private void configureFormatter(String className, ClassLoader cl) {
         String formatterName = getProperty(className + ".formatter", null);
         if (formatterName != null) {
             try {
@@ -296,9 +952,6 @@ public class FileHandler extends Handler {
         } else {
             setFormatter(new OneLineSimpleFormatter());
         }
-
-        // 设置异常管理器
-        setErrorManager(new ErrorManager());
     }
 
     private void openWriter() {
@@ -318,40 +971,41 @@ public class FileHandler extends Handler {
 
         // 打开当前日志
         writerLock.writeLock().lock();
-        FileOutputStream fos = null;
-        OutputStream os = null;
         try {
             if (writer != null) {
                 return;
             }
 
-            File pathName = new File(dir.getAbsoluteFile(), prefix + (rotatable ? date : "") + suffix);
             String encoding = getEncoding();
+            Charset charset = encoding == null ? Charset.defaultCharset() : Charset.forName(encoding);
+            File pathName = nextLogFile(dir.getAbsoluteFile(), charset);
+
+            if (isBinary()) {
+                writer = new BinaryLogFileWriter(pathName, bufferSize);
+            } else if (WRITE_MODE_MAPPED.equalsIgnoreCase(writeMode)) {
+                writer = new MappedLogFileWriter(pathName, charset, mappedChunkSize);
+            } else if (WRITE_MODE_CHANNEL.equalsIgnoreCase(writeMode)) {
+                writer = new ChannelLogFileWriter(pathName, charset, bufferSize, directBuffer);
+            } else {
+                writer = new StreamLogFileWriter(pathName, charset, bufferSize);
+            }
 
-            fos = new FileOutputStream(pathName, true);
-            os = bufferSize > 0 ? new BufferedOutputStream(fos, bufferSize) : fos;
-
-            writer = new PrintWriter(os, false, Charset.forName(encoding));
+            currentFile = pathName;
 
             writer.write(getFormatter().getHead(this));
+            // 按字节累计；mmap 模式的文件已按映射窗口预分配，不能使用文件长度
+            currentFileSize.set(writer.length());
 
-        } catch (FileNotFoundException e) {
+        } catch (IOException e) {
             reportError(null, e, ErrorManager.OPEN_FAILURE);
-            writer = null;
-            if (fos != null) {
-                try {
-                    fos.close();
-                } catch (IOException e1) {
-                    // Ignore
-                }
-            }
-            if (os != null) {
+            if (writer != null) {
                 try {
-                    os.close();
+                    writer.close();
                 } catch (IOException e1) {
                     // Ignore
                 }
             }
+            writer = null;
         } finally {
             writerLock.writeLock().unlock();
         }
@@ -371,10 +1025,10 @@ public class FileHandler extends Handler {
 
             // 写一个结尾
             writer.write(getFormatter().getTail(this));
-            writer.flush();
             writer.close();
             writer = null;
             date = null;
+            currentFile = null;
         } catch (Exception e) {
             reportError(null, e, ErrorManager.CLOSE_FAILURE);
         } finally {
@@ -382,26 +1036,159 @@ public class FileHandler extends Handler {
         }
     }
 
+    /**
+     * 当前日期、序号对应的日志文件
+     * <p>
+     * 开启按大小滚动时，跳过已压缩或者已超过 maxFileSize 的序号，避免重启后覆盖已压缩的文件。
+     * 比较大小前先恢复 mmap 模式崩溃后留下的文件，否则预分配的窗口会让没写满的文件看起来已超过 maxFileSize
+     */
+    private File nextLogFile(File dir, Charset charset) {
+        if (!rotatable) {
+            return new File(dir, prefix + suffix);
+        }
+        while (true) {
+            File file = new File(dir, prefix + date + (index > 0 ? "." + index : "") + suffix);
+            if (maxFileSize > 0) {
+                try {
+                    MappedLogFileWriter.recover(file, charset);
+                } catch (IOException e) {
+                    reportError("Unable to recover log file [" + file + "]", e, ErrorManager.OPEN_FAILURE);
+                }
+            }
+            if (maxFileSize > 0 && (new File(dir, file.getName() + COMPRESSED_SUFFIX).exists() ||
+                file.length() >= maxFileSize)) {
+                index++;
+                continue;
+            }
+            return file;
+        }
+    }
+
+    /**
+     * 按大小滚动时，重启后从当天已存在的最大序号继续，保证序号越大日志越新
+     */
+    private int lastIndexOfDate(String tsDate) {
+        if (!rotatable || maxFileSize <= 0 || Files.notExists(getDirectoryAsPath())) {
+            return 0;
+        }
+        int lastIndex = 0;
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(getDirectoryAsPath(),
+            path -> tsDate.equals(obtainDateFromPath(path)))) {
+            for (Path file : files) {
+                lastIndex = Math.max(lastIndex, obtainIndexFromPath(file));
+            }
+        } catch (IOException e) {
+            // Ignore
+        }
+        return lastIndex;
+    }
+
+    /**
+     * 后台 gzip 压缩已关闭的日志文件：先写临时文件，完成后重命名为 .gz 并删除原文件
+     */
+    private void compressFile(File file) {
+        COMPRESS_FILES_SERVICE.execute(() -> {
+            Path source = file.toPath();
+            Path target = source.resolveSibling(file.getName() + COMPRESSED_SUFFIX);
+            Path tmp = source.resolveSibling(file.getName() + COMPRESSED_SUFFIX + ".tmp");
+            try {
+                try (OutputStream os = new GZIPOutputStream(Files.newOutputStream(tmp), 64 * 1024)) {
+                    Files.copy(source, os);
+                }
+                Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                Files.delete(source);
+            } catch (Exception e) {
+                // 压缩前已被配额清理删除的文件，不需要报错
+                if (Files.exists(source)) {
+                    reportError("Unable to compress log file [" + file + "]", e, ErrorManager.GENERIC_FAILURE);
+                }
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException e1) {
+                    // Ignore
+                }
+                return;
+            }
+            // 压缩后文件变小，重新计算总大小配额
+            if (maxTotalSize > 0) {
+                clean();
+            }
+        });
+    }
+
     /**
      * 清理日志
      */
     private void clean() {
-        if (maxDays <= 0 || Files.notExists(getDirectoryAsPath())) {
+        if ((maxDays <= 0 && maxTotalSize <= 0) || Files.notExists(getDirectoryAsPath())) {
             return;
         }
 
         DELETE_FILES_SERVICE.execute(() -> {
-            try (DirectoryStream<Path> files = streamFilesForDelete()){
-                for (Path file : files) {
-                    Files.delete(file);
+            LogCleanEvent event = new LogCleanEvent();
+            event.begin();
+            if (maxDays > 0) {
+                try (DirectoryStream<Path> files = streamFilesForDelete()) {
+                    for (Path file : files) {
+                        event.delete(file);
+                    }
+                } catch (Exception e) {
+                    reportError("Unable to delete log files older than [" + maxDays + "] days", null,
+                        ErrorManager.GENERIC_FAILURE);
                 }
-            } catch (Exception e) {
-                reportError("Unable to delete log files older than [" + maxDays + "] days", null,
-                    ErrorManager.GENERIC_FAILURE);
+            }
+            if (maxTotalSize > 0) {
+                try {
+                    deleteFilesOverQuota(event);
+                } catch (Exception e) {
+                    reportError("Unable to delete log files over [" + maxTotalSize + "] bytes", null,
+                        ErrorManager.GENERIC_FAILURE);
+                }
+            }
+            event.end();
+            if (event.shouldCommit()) {
+                event.directory = directory;
+                event.commit();
             }
         });
     }
 
+    /**
+     * 日志总大小超过 maxTotalSize 时，按日期、序号从最旧的日志开始删除，当前日志文件不删除
+     */
+    private void deleteFilesOverQuota(LogCleanEvent event) throws IOException {
+        List<Path> files = new ArrayList<>();
+        long totalSize = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(getDirectoryAsPath(),
+            path -> obtainDateFromPath(path) != null)) {
+            for (Path file : stream) {
+                files.add(file);
+                totalSize += Files.size(file);
+            }
+        }
+        if (totalSize <= maxTotalSize) {
+            return;
+        }
+
+        files.sort(Comparator.comparing((Path path) -> LocalDate.from(
+                DateTimeFormatter.ISO_LOCAL_DATE.parse(obtainDateFromPath(path))))
+            .thenComparingInt(this::obtainIndexFromPath));
+        File current = currentFile;
+        for (Path file : files) {
+            if (totalSize <= maxTotalSize) {
+                break;
+            }
+            if (current != null && file.getFileName().toString().equals(current.getName())) {
+                continue;
+            }
+            long size = Files.size(file);
+            if (Files.deleteIfExists(file)) {
+                totalSize -= size;
+                event.deleted(size);
+            }
+        }
+    }
+
     /**
      * 获取 可删除的 日志文件 - DirectoryStream 实现了 Iterable 迭代器
      */
@@ -424,7 +1211,7 @@ public class FileHandler extends Handler {
         });
     }
 
-    private String getProperty(String name, String defaultValue) {
+    protected String getProperty(String name, String defaultValue) {
         String value = LogManager.getLogManager().getProperty(name);
         if (value == null) {
             value = defaultValue;
@@ -434,27 +1221,49 @@ public class FileHandler extends Handler {
         return value;
     }
 
+    private long getLongProperty(String name, long defaultValue) {
+        try {
+            return Long.parseLong(getProperty(name, String.valueOf(defaultValue)));
+        } catch (NumberFormatException ignore) {
+            return defaultValue;
+        }
+    }
+
     private Path getDirectoryAsPath() {
         return Path.of(directory);
     }
 
     /**
-     * 从文件名获取日志日期
+     * 从文件名获取日志日期，支持带序号以及压缩的文件名
      */
     private String obtainDateFromPath(Path path) {
         Path fileName = path.getFileName();
         if (fileName == null) {
             return null;
         }
-        String date = fileName.toString();
-        if (pattern.matcher(date).matches()) {
-            date = date.substring(prefix.length());
-            return date.substring(0, date.length() - suffix.length());
+        Matcher matcher = pattern.matcher(fileName.toString());
+        if (matcher.matches()) {
+            return matcher.group(1);
         } else {
             return null;
         }
     }
 
+    /**
+     * 从文件名获取日志序号，没有序号时为0
+     */
+    private int obtainIndexFromPath(Path path) {
+        Path fileName = path.getFileName();
+        if (fileName == null) {
+            return 0;
+        }
+        Matcher matcher = pattern.matcher(fileName.toString());
+        if (matcher.matches() && matcher.group(2) != null) {
+            return Integer.parseInt(matcher.group(2));
+        }
+        return 0;
+    }
+
     /**
      * 创建 FileHandler 的 ThreadFactory
      * <p>
@@ -474,10 +1283,57 @@ public class FileHandler extends Handler {
 
         @Override
         public Thread newThread(Runnable r) {
-            Thread thread = new Thread(group, r, namePrefix + threadNumber.getAndIncrement());
+            Thread thread = new FileHandlerThread(group, r, namePrefix + threadNumber.getAndIncrement());
             thread.setContextClassLoader(FileHandlerThreadFactory.class.getClassLoader());
             thread.setDaemon(true);
             return thread;
         }
     }
+
+    /**
+     * FileHandler 创建的线程
+     * <p>
+     * 异步写日志时，写线程格式化 Record 之前记录该 Record、入队时获取的打日志线程名以及 Handler 是否写出调用方，
+     * Formatter 直接读取，不需要按线程ID查询线程名（线程可能已经结束），也不需要为了去掉调用方复制 Record
+     */
+    static final class FileHandlerThread extends Thread {
+
+        /**
+         * 正在写的 Record、其打日志线程名、是否写出调用方，只由当前线程访问
+         */
+        private LogRecord record;
+        private String recordThreadName;
+        private boolean recordLocation = true;
+
+        FileHandlerThread(ThreadGroup group, Runnable target, String name) {
+            super(group, target, name);
+        }
+
+        /**
+         * 当前线程是写线程时，记录即将写的 Record 的打日志线程名，以及是否写出调用方
+         */
+        static void setRecordThread(LogRecord record, String threadName, boolean location) {
+            Thread thread = Thread.currentThread();
+            if (thread instanceof FileHandlerThread) {
+                FileHandlerThread handlerThread = (FileHandlerThread) thread;
+                handlerThread.record = threadName == null && location ? null : record;
+                handlerThread.recordThreadName = threadName;
+                handlerThread.recordLocation = location;
+            }
+        }
+
+        /**
+         * 入队时获取的打日志线程名，不是正在写的 Record 时返回 null
+         */
+        String getRecordThreadName(LogRecord record) {
+            return this.record == record ? recordThreadName : null;
+        }
+
+        /**
+         * 是否写出该 Record 的调用方，不是正在写的 Record 时返回 true
+         */
+        boolean isRecordLocation(LogRecord record) {
+            return this.record != record || recordLocation;
+        }
+    }
 }
@@ -0,0 +1,200 @@
+package com.nabob.conch.tomcat.core.juli;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.logging.Formatter;
+import java.util.logging.LogRecord;
+
+/**
+ * JSON Formatter
+ * <p>
+ * 每条日志输出为一行 JSON，便于日志采集、索引：
+ * <pre>
+ * {"timestamp":1705545600123,"level":"INFO","thread":"main","threadId":1,"logger":"a.b.C",
+ *  "class":"a.b.C","method":"m","message":"hello world","parameters":["world"],
+ *  "throwable":{"class":"java.lang.IllegalStateException","message":"x",
+ *               "stackTrace":[{"class":"a.b.C","method":"m","file":"C.java","line":10}],"cause":{...}}}
+ * </pre>
+ * <p>
+ * 性能：
+ * - 每个线程复用一个 Jackson JsonGenerator，不经过 ObjectMapper 序列化，也不创建中间对象
+ * - JsonGenerator 输出到复用的 Writer，Writer 直接追加到目标 StringBuilder（回收复用的缓冲区）
+ * - 实现 {@link AppendingFormatter}，FileHandler 可以跳过中间的 String
+ *
+ * @author Adam
+ * @since 2024/1/18
+ */
+public class JsonFormatter extends Formatter implements AppendingFormatter {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    /**
+     * 异常 cause 链的最大深度，避免循环引用
+     */
+    private static final int MAX_CAUSE_DEPTH = 16;
+
+    /**
+     * 复用的 StringBuilder 超过该大小后丢弃，避免一条大日志长期占用内存
+     */
+    private static final int MAX_CACHED_BUILDER_SIZE = 64 * 1024;
+
+    private static final ThreadLocal<StringBuilder> builderCache = ThreadLocal
+        .withInitial(() -> new StringBuilder(512));
+
+    private static final ThreadLocal<JsonLineWriter> writerCache = ThreadLocal.withInitial(JsonLineWriter::new);
+
+    @Override
+    public String format(LogRecord record) {
+        StringBuilder sb = builderCache.get();
+        sb.setLength(0);
+        format(record, sb);
+        String result = sb.toString();
+        if (sb.capacity() > MAX_CACHED_BUILDER_SIZE) {
+            builderCache.remove();
+        }
+        return result;
+    }
+
+    @Override
+    public void format(LogRecord record, StringBuilder sb) {
+        JsonLineWriter writer = writerCache.get();
+        writer.target = sb;
+        int start = sb.length();
+        try {
+            writeRecord(writer.generator, record);
+            writer.generator.flush();
+        } catch (RuntimeException | IOException e) {
+            // JsonGenerator 停在写了一半的对象中，丢弃它，否则该线程之后的日志都会失败或者输出错误的 JSON
+            writerCache.remove();
+            sb.setLength(start);
+            if (e instanceof IOException) {
+                // 写入 StringBuilder 不会出现 IO 异常
+                throw new UncheckedIOException((IOException) e);
+            }
+            throw (RuntimeException) e;
+        } finally {
+            writer.target = null;
+        }
+        sb.append(System.lineSeparator());
+    }
+
+    private void writeRecord(JsonGenerator gen, LogRecord record) throws IOException {
+        gen.writeStartObject();
+        gen.writeNumberField("timestamp", record.getMillis());
+        gen.writeStringField("level", record.getLevel().getName());
+        gen.writeStringField("thread", OneLineSimpleFormatter.resolveThreadName(record));
+        gen.writeNumberField("threadId", record.getLongThreadID());
+        writeStringFieldIfPresent(gen, "logger", record.getLoggerName());
+        writeStringFieldIfPresent(gen, "class", OneLineSimpleFormatter.resolveSourceClassName(record));
+        writeStringFieldIfPresent(gen, "method", OneLineSimpleFormatter.resolveSourceMethodName(record));
+        gen.writeStringField("message", formatMessage(record));
+
+        Object[] parameters = record.getParameters();
+        if (parameters != null && parameters.length > 0) {
+            gen.writeArrayFieldStart("parameters");
+            for (Object parameter : parameters) {
+                gen.writeString(parameterToString(parameter));
+            }
+            gen.writeEndArray();
+        }
+
+        if (record.getThrown() != null) {
+            gen.writeFieldName("throwable");
+            writeThrowable(gen, record.getThrown(), 0);
+        }
+        gen.writeEndObject();
+    }
+
+    private void writeThrowable(JsonGenerator gen, Throwable thrown, int depth) throws IOException {
+        gen.writeStartObject();
+        gen.writeStringField("class", thrown.getClass().getName());
+        writeStringFieldIfPresent(gen, "message", thrown.getMessage());
+
+        gen.writeArrayFieldStart("stackTrace");
+        for (StackTraceElement element : thrown.getStackTrace()) {
+            gen.writeStartObject();
+            gen.writeStringField("class", element.getClassName());
+            gen.writeStringField("method", element.getMethodName());
+            writeStringFieldIfPresent(gen, "file", element.getFileName());
+            if (element.getLineNumber() >= 0) {
+                gen.writeNumberField("line", element.getLineNumber());
+            }
+            gen.writeEndObject();
+        }
+        gen.writeEndArray();
+
+        Throwable cause = thrown.getCause();
+        if (cause != null && cause != thrown && depth < MAX_CAUSE_DEPTH) {
+            gen.writeFieldName("cause");
+            writeThrowable(gen, cause, depth + 1);
+        }
+        gen.writeEndObject();
+    }
+
+    /**
+     * 参数的 toString() 由业务实现，抛出异常时输出异常信息，不影响这条日志的其他字段
+     */
+    static String parameterToString(Object parameter) {
+        try {
+            return String.valueOf(parameter);
+        } catch (RuntimeException e) {
+            return "[" + parameter.getClass().getName() + ".toString() threw " + e + "]";
+        }
+    }
+
+    private static void writeStringFieldIfPresent(JsonGenerator gen, String name, String value) throws IOException {
+        if (value != null) {
+            gen.writeStringField(name, value);
+        }
+    }
+
+    /**
+     * JsonGenerator 的输出，直接追加到目标 StringBuilder，每个线程复用一个
+     */
+    private static final class JsonLineWriter extends Writer {
+
+        private final JsonGenerator generator;
+
+        private StringBuilder target;
+
+        JsonLineWriter() {
+            try {
+                generator = JSON_FACTORY.createGenerator(this);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // 每条日志之间不需要分隔符，换行由 Formatter 输出
+            generator.setRootValueSeparator(null);
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            target.append(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            target.append(str, off, off + len);
+        }
+
+        @Override
+        public void write(int c) {
+            target.append((char) c);
+        }
+
+        @Override
+        public void flush() {
+            // NO-OP
+        }
+
+        @Override
+        public void close() {
+            // NO-OP
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package com.nabob.conch.tomcat.core.juli;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR 事件：FileHandler 在后台线程清理旧日志（超过 maxDays、超过 maxTotalSize）
+ * <p>
+ * 默认不开启；开启时才计算被删除文件的大小
+ *
+ * @author Adam
+ * @since 2024/1/31
+ */
+@Name("com.nabob.conch.tomcat.core.LogClean")
+@Label("Log Clean")
+@Category({"Conch Tomcat", "Logging"})
+@Description("Deletion of log files older than maxDays or over maxTotalSize")
+@Enabled(false)
+@StackTrace(false)
+final class LogCleanEvent extends Event {
+
+    @Label("Directory")
+    String directory;
+
+    @Label("Deleted Files")
+    int deletedFiles;
+
+    @Label("Deleted Size")
+    @DataAmount
+    long deletedBytes;
+
+    /**
+     * 删除文件并计数
+     */
+    void delete(Path file) throws IOException {
+        long size = isEnabled() ? Files.size(file) : 0;
+        Files.delete(file);
+        deleted(size);
+    }
+
+    void deleted(long size) {
+        deletedFiles++;
+        deletedBytes += size;
+    }
+}
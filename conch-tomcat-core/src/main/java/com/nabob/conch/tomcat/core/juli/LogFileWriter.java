@@ -0,0 +1,45 @@
+package com.nabob.conch.tomcat.core.juli;
+
+import java.io.IOException;
+
+/**
+ * FileHandler 写日志文件的 Writer
+ * <p>
+ * 不同的写入方式：
+ * - {@link StreamLogFileWriter} CharsetEncoder 编码到复用的 byte[]，FileOutputStream 追加写入（默认）
+ * - {@link ChannelLogFileWriter} CharsetEncoder 直接编码到复用的 ByteBuffer，FileChannel 追加写入
+ * - {@link MappedLogFileWriter} CharsetEncoder 直接编码到内存映射窗口 MappedByteBuffer
+ * <p>
+ * {@link EncodingLogFileWriter} 的实现写入 StringBuilder 时不创建任何对象，配合
+ * {@link AppendingFormatter} 实现格式化、写入零分配
+ * <p>
+ * 由 FileHandler 的 writerLock 管理打开、关闭；write、flush 可能被多个持有读锁的线程并发调用，实现需自行保证线程安全。
+ * 实现使用 ReentrantLock 互斥，不使用 synchronized
+ *
+ * @author Adam
+ * @since 2024/1/10
+ */
+interface LogFileWriter {
+
+    /**
+     * 写入格式化后的日志
+     *
+     * @return 编码后的字节数，FileHandler 据此按字节累计文件大小
+     */
+    int write(CharSequence chars) throws IOException;
+
+    /**
+     * 文件的逻辑长度：已写入文件的字节数加上缓冲区中还没有写入的字节数，不包括预分配的空间
+     */
+    long length() throws IOException;
+
+    /**
+     * 刷到文件
+     */
+    void flush() throws IOException;
+
+    /**
+     * 刷到文件并关闭
+     */
+    void close() throws IOException;
+}
@@ -0,0 +1,36 @@
+package com.nabob.conch.tomcat.core.juli;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR 事件：FileHandler 滚动日志文件
+ * <p>
+ * 持续时间为持有写锁的时间（关闭旧文件、打开新文件），期间该 Handler 的所有写入都在等待；默认不开启
+ *
+ * @author Adam
+ * @since 2024/1/31
+ */
+@Name("com.nabob.conch.tomcat.core.LogRotate")
+@Label("Log Rotate")
+@Category({"Conch Tomcat", "Logging"})
+@Description("A log file rotation, writes to the handler wait for its duration")
+@Enabled(false)
+@StackTrace(false)
+final class LogRotateEvent extends Event {
+
+    @Label("Closed File")
+    String closedFile;
+
+    @Label("New File")
+    String newFile;
+
+    @Label("Reason")
+    @Description("date or size")
+    String reason;
+}
@@ -0,0 +1,640 @@
+package com.nabob.conch.tomcat.core.juli;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * 异步写日志 服务 - 无锁环形队列（RingBuffer）实现
+ * <p>
+ * 参考 Disruptor：
+ * - 预分配槽位，LogRecord 直接存放在槽位中，入队不再创建 Runnable 和 链表节点
+ * - 多生产者：CAS 抢占序号（sequence），写入槽位后发布该槽位的序号
+ * - 单消费者：写线程按序号顺序读取已发布的槽位，读取后释放槽位
+ * - 写线程空闲时 park，生产者发布后发现写线程在等待，则 unpark
+ * - batchSize 大于1时批量消费（group commit）：一次取出最多 batchSize 个已发布的槽位，按Handler分组后批量写入，
+ *   每个Handler一批只 flush 一次
+ * <p>
+ * 队列满时的丢弃策略（与 LoggerExecutorService 保持一致）：
+ * - OVERFLOW_DROP_LAST：用当前Record替换同一Handler最近入队的Record；附近没有同一Handler的Record时丢弃当前Record
+ * - OVERFLOW_DROP_FIRST：当前Record原地替换最早入队且尚未被写线程读取的Record（因此可能排在更晚的Record之前），
+ *   每次溢出只丢弃一条Record，不阻塞生产者
+ * - OVERFLOW_DROP_FLUSH：一直等待直到入队成功，不允许任何丢失
+ * - OVERFLOW_DROP_CURRENT：丢弃当前Record
+ * - OVERFLOW_DROP_ADAPTIVE：入队前按占用率丢弃低级别的Record（见 {@link AdaptiveOverflow}）；队列满时，受保护级别的Record
+ *   替换同一Handler最早入队的非保护级别Record（因此可能排在更晚的Record之前），其他Record丢弃
+ * <p>
+ * 入队、丢弃、等待、写入的指标记录到 {@link AsyncLoggerMetrics}
+ *
+ * @author Adam
+ * @since 2024/1/8
+ */
+final class LoggerRingBufferService implements AsyncFileHandler.LoggerService {
+
+    /**
+     * OVERFLOW_DROP_LAST 时，从队尾往前查找同一Handler Record的最大槽位数
+     */
+    private static final int DROP_LAST_SCAN_LIMIT = 16;
+
+    /**
+     * 写线程没有数据时，park的最长时间，兜底 unpark 信号丢失以及关闭检查
+     */
+    private static final long CONSUMER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    /**
+     * 生产者等待空闲槽位时，每次 park 的时间
+     */
+    private static final long PRODUCER_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /**
+     * 溢出替换Record时占住槽位的标记，替换期间写线程等待
+     */
+    private static final LogRecord REPLACING = new LogRecord(Level.OFF, null);
+
+    private final AsyncLoggerMetrics metrics;
+
+    private final int overflowDropType;
+
+    /**
+     * 写线程一次批量消费的最大Record数
+     */
+    private final int batchSize;
+
+    /**
+     * 批量写时按Handler分组，只由写线程访问
+     */
+    private final HandlerBatch handlerBatch = new HandlerBatch();
+
+    /**
+     * 槽位数量，2的幂，通过 & mask 计算槽位下标
+     */
+    private final int bufferSize;
+    private final int mask;
+
+    /**
+     * 槽位：日志Record，写线程读取后置为null，null表示该槽位的Record已被丢弃
+     */
+    private final AtomicReferenceArray<LogRecord> records;
+
+    /**
+     * 槽位：Record所属的Handler，在发布序号之前写入，依赖 published 的 volatile 语义保证可见性
+     */
+    private final AsyncFileHandler[] handlers;
+
+    /**
+     * 槽位：入队时获取的打日志线程名，与 handlers 一样依赖 published 保证可见性；
+     * 溢出替换Record时一起替换
+     */
+    private final String[] threadNames;
+
+    /**
+     * 槽位：已发布的序号，等于槽位的当前序号时表示该槽位可被消费
+     */
+    private final AtomicLongArray published;
+
+    /**
+     * 生产者已抢占的最大序号
+     */
+    private final Sequence cursor = new Sequence();
+
+    /**
+     * 写线程已消费的最大序号
+     */
+    private final Sequence consumed = new Sequence();
+
+    private final AtomicInteger handlerCount = new AtomicInteger();
+
+    private final Thread writerThread;
+
+    /**
+     * 写线程是否处于park等待中
+     */
+    private volatile boolean waiting = false;
+
+    private volatile boolean terminating = false;
+
+    // 批量写统计，只由写线程更新
+    private volatile long batchCount = 0;
+    private volatile long batchRecordCount = 0;
+    private volatile double flushesPerSecond = 0;
+    private long flushWindowStart = System.nanoTime();
+    private long flushWindowCount = 0;
+
+    LoggerRingBufferService(final AsyncLoggerMetrics metrics, final int overflowDropType, final int maxRecords,
+                            final int batchSize) {
+        this.metrics = metrics;
+        this.overflowDropType = overflowDropType;
+        this.batchSize = Math.max(1, batchSize);
+        // 向上取整为2的幂
+        this.bufferSize = maxRecords <= 1 ? 1 : Integer.highestOneBit(maxRecords - 1) << 1;
+        this.mask = bufferSize - 1;
+        this.records = new AtomicReferenceArray<>(bufferSize);
+        this.handlers = new AsyncFileHandler[bufferSize];
+        this.threadNames = new String[bufferSize];
+        this.published = new AtomicLongArray(bufferSize);
+        for (int i = 0; i < bufferSize; i++) {
+            published.set(i, -1L);
+        }
+
+        writerThread = new FileHandler.FileHandlerThreadFactory(AsyncFileHandler.THREAD_PREFIX)
+            .newThread(this::drain);
+        writerThread.start();
+    }
+
+    @Override
+    public void publish(AsyncFileHandler handler, LogRecord record, String threadName) {
+        if (terminating) {
+            metrics.droppedCurrent();
+            return;
+        }
+        if (overflowDropType == AsyncFileHandler.OVERFLOW_DROP_ADAPTIVE &&
+            AdaptiveOverflow.shed(record, getQueueSize(), bufferSize)) {
+            handler.suppressed();
+            metrics.droppedCurrent();
+            return;
+        }
+        long sequence = tryClaim();
+        if (sequence < 0) {
+            sequence = claimOnOverflow(handler, record, threadName);
+            if (sequence < 0) {
+                return;
+            }
+        }
+        int index = (int) (sequence & mask);
+        handlers[index] = handler;
+        threadNames[index] = threadName;
+        records.set(index, record);
+        published.set(index, sequence);
+        metrics.enqueued();
+        metrics.queueSize(sequence - consumed.get());
+
+        if (waiting) {
+            LockSupport.unpark(writerThread);
+        }
+    }
+
+    @Override
+    public void registerHandler(AsyncFileHandler handler) {
+        handlerCount.incrementAndGet();
+    }
+
+    @Override
+    public void deregisterHandler(AsyncFileHandler handler) {
+        int newCount = handlerCount.decrementAndGet();
+        if (newCount == 0) {
+            try {
+                Thread dummyHook = new Thread();
+                Runtime.getRuntime().addShutdownHook(dummyHook);
+                Runtime.getRuntime().removeShutdownHook(dummyHook);
+            } catch (IllegalStateException ise) {
+                // JVM is shutting down.
+                // Allow up to 10s for the queue to be emptied
+                terminating = true;
+                LockSupport.unpark(writerThread);
+                try {
+                    writerThread.join(TimeUnit.SECONDS.toMillis(10));
+                } catch (InterruptedException e) {
+                    // Ignore
+                }
+                writerThread.interrupt();
+            }
+        }
+    }
+
+    @Override
+    public boolean isTerminating() {
+        return terminating;
+    }
+
+    @Override
+    public long getQueueSize() {
+        return Math.max(0, cursor.get() - consumed.get());
+    }
+
+    @Override
+    public double getRecordsPerBatch() {
+        long batches = batchCount;
+        return batches == 0 ? 0 : (double) batchRecordCount / batches;
+    }
+
+    @Override
+    public double getFlushesPerSecond() {
+        return flushesPerSecond;
+    }
+
+    /**
+     * CAS 抢占下一个序号，队列已满返回 -1
+     */
+    private long tryClaim() {
+        long current;
+        long next;
+        do {
+            current = cursor.get();
+            next = current + 1;
+            // 槽位还没有被写线程释放
+            if (next - bufferSize > consumed.get()) {
+                return -1L;
+            }
+        } while (!cursor.compareAndSet(current, next));
+        return next;
+    }
+
+    /**
+     * 队列已满时按丢弃策略处理
+     *
+     * @return 抢占到的序号，-1 表示不需要再入队（当前Record已入队或被丢弃）
+     */
+    private long claimOnOverflow(AsyncFileHandler handler, LogRecord record, String threadName) {
+        metrics.queueSize(bufferSize);
+        long sequence;
+        switch (overflowDropType) {
+            case AsyncFileHandler.OVERFLOW_DROP_LAST:
+            default:
+                if (replaceLast(handler, record, threadName)) {
+                    metrics.droppedLast();
+                    metrics.enqueued();
+                    return -1L;
+                }
+                // 可能写线程刚释放了槽位
+                sequence = tryClaim();
+                break;
+            case AsyncFileHandler.OVERFLOW_DROP_FIRST:
+                if (replaceFirst(handler, record, threadName)) {
+                    metrics.droppedFirst();
+                    metrics.enqueued();
+                    return -1L;
+                }
+                // 队列中的Record都已被写线程读取，可能刚释放了槽位
+                sequence = tryClaim();
+                break;
+            case AsyncFileHandler.OVERFLOW_DROP_FLUSH:
+                sequence = awaitClaim();
+                break;
+            case AsyncFileHandler.OVERFLOW_DROP_CURRENT:
+                sequence = -1L;
+                break;
+            case AsyncFileHandler.OVERFLOW_DROP_ADAPTIVE:
+                AsyncFileHandler replaced;
+                if (AdaptiveOverflow.isProtected(record) &&
+                    (replaced = replaceUnprotected(handler, record, threadName)) != null) {
+                    // 被替换的Record属于哪个Handler，就记到哪个Handler的丢弃汇总里
+                    replaced.suppressed();
+                    metrics.droppedFirst();
+                    metrics.enqueued();
+                    return -1L;
+                }
+                sequence = tryClaim();
+                if (sequence < 0) {
+                    handler.suppressed();
+                }
+        }
+        if (sequence < 0) {
+            metrics.droppedCurrent();
+        }
+        return sequence;
+    }
+
+    /**
+     * 从队尾往前查找同一Handler最近入队的Record，用当前Record替换它
+     */
+    private boolean replaceLast(AsyncFileHandler handler, LogRecord record, String threadName) {
+        long last = cursor.get();
+        long first = Math.max(consumed.get() + 1, last - DROP_LAST_SCAN_LIMIT + 1);
+        for (long sequence = last; sequence >= first; sequence--) {
+            int index = (int) (sequence & mask);
+            if (published.get(index) != sequence) {
+                continue;
+            }
+            LogRecord old = records.get(index);
+            if (old == null || old == REPLACING || handlers[index] != handler || published.get(index) != sequence) {
+                continue;
+            }
+            // 写线程读取Record后会置为null，CAS成功说明Record仍在队列中
+            if (replace(index, old, handler, record, threadName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 从队头开始查找最早入队且尚未被写线程读取的Record（可以属于其他Handler），用当前Record替换它
+     */
+    private boolean replaceFirst(AsyncFileHandler handler, LogRecord record, String threadName) {
+        long last = cursor.get();
+        for (long sequence = consumed.get() + 1; sequence <= last; sequence++) {
+            int index = (int) (sequence & mask);
+            if (published.get(index) != sequence) {
+                continue;
+            }
+            LogRecord old = records.get(index);
+            if (old == null || old == REPLACING || published.get(index) != sequence) {
+                continue;
+            }
+            if (replace(index, old, handler, record, threadName)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 从队头开始查找最早入队的非保护级别Record（可以属于其他Handler），用当前Record替换它
+     *
+     * @return 被替换Record所属的Handler，没有可替换的Record时返回null
+     */
+    private AsyncFileHandler replaceUnprotected(AsyncFileHandler handler, LogRecord record, String threadName) {
+        long last = cursor.get();
+        for (long sequence = consumed.get() + 1; sequence <= last; sequence++) {
+            int index = (int) (sequence & mask);
+            if (published.get(index) != sequence) {
+                continue;
+            }
+            LogRecord old = records.get(index);
+            AsyncFileHandler owner = handlers[index];
+            if (old == null || old == REPLACING || published.get(index) != sequence ||
+                AdaptiveOverflow.isProtected(old)) {
+                continue;
+            }
+            if (replace(index, old, handler, record, threadName)) {
+                return owner;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 替换槽位中尚未被写线程读取的Record
+     * <p>
+     * 先用 {@link #REPLACING} 占住槽位，再写入Handler、线程名和新Record，写线程不会读到新Record和旧的Handler、线程名
+     */
+    private boolean replace(int index, LogRecord old, AsyncFileHandler handler, LogRecord record, String threadName) {
+        if (!records.compareAndSet(index, old, REPLACING)) {
+            return false;
+        }
+        handlers[index] = handler;
+        threadNames[index] = threadName;
+        records.set(index, record);
+        return true;
+    }
+
+    /**
+     * 写线程取出槽位中的Record，槽位正在被替换时等待替换完成
+     */
+    private LogRecord take(int index) {
+        while (true) {
+            LogRecord record = records.get(index);
+            if (record == REPLACING) {
+                Thread.onSpinWait();
+            } else if (records.compareAndSet(index, record, null)) {
+                return record;
+            }
+        }
+    }
+
+    /**
+     * 一直尝试抢占序号，直到成功或者关闭
+     */
+    private long awaitClaim() {
+        long start = System.nanoTime();
+        AsyncLogBlockedEvent event = new AsyncLogBlockedEvent();
+        event.begin();
+        try {
+            while (!terminating) {
+                long sequence = tryClaim();
+                if (sequence >= 0) {
+                    return sequence;
+                }
+                LockSupport.parkNanos(this, PRODUCER_PARK_NANOS);
+                if (Thread.interrupted()) {
+                    Thread.currentThread().interrupt();
+                    return -1L;
+                }
+            }
+            return -1L;
+        } finally {
+            metrics.dropFlushBlocked(System.nanoTime() - start);
+            event.commit("ringbuffer");
+        }
+    }
+
+    /**
+     * 写线程：按序号顺序消费已发布的槽位
+     */
+    private void drain() {
+        long next = consumed.get() + 1;
+        while (true) {
+            int index = (int) (next & mask);
+            if (published.get(index) == next) {
+                if (batchSize > 1) {
+                    next = drainBatch(next);
+                    continue;
+                }
+                LogRecord record = take(index);
+                AsyncFileHandler handler = handlers[index];
+                String threadName = threadNames[index];
+                handlers[index] = null;
+                threadNames[index] = null;
+                // 先释放槽位，再写盘
+                consumed.set(next);
+                next++;
+                if (record != null) {
+                    write(handler, record, threadName);
+                }
+                continue;
+            }
+
+            if (terminating && cursor.get() < next) {
+                // 队列已排空
+                return;
+            }
+
+            // 没有可消费的槽位，先标记等待再检查一次，避免丢失生产者的 unpark 信号
+            waiting = true;
+            if (published.get(index) != next && !terminating) {
+                LockSupport.parkNanos(this, CONSUMER_PARK_NANOS);
+            }
+            waiting = false;
+            if (batchSize > 1) {
+                rollFlushWindow(0);
+            }
+            if (Thread.interrupted() && terminating) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 批量消费：从 next 开始取出最多 batchSize 个连续已发布的槽位，按Handler分组批量写入
+     *
+     * @return 下一个待消费的序号
+     */
+    private long drainBatch(long next) {
+        int count = 0;
+        while (count < batchSize) {
+            int index = (int) (next & mask);
+            if (published.get(index) != next) {
+                break;
+            }
+            LogRecord record = take(index);
+            AsyncFileHandler handler = handlers[index];
+            String threadName = threadNames[index];
+            handlers[index] = null;
+            threadNames[index] = null;
+            // 先释放槽位，生产者不需要等这一批写完
+            consumed.set(next);
+            next++;
+            if (record != null && (!handler.closed || terminating)) {
+                handlerBatch.add(handler, record, threadName);
+                count++;
+            }
+        }
+        if (count > 0) {
+            long start = System.nanoTime();
+            long flushes = handlerBatch.publish();
+            metrics.written(count, System.nanoTime() - start);
+            batchCount++;
+            batchRecordCount += count;
+            rollFlushWindow(flushes);
+        }
+        return next;
+    }
+
+    /**
+     * 统计最近一秒的 flush 次数
+     */
+    private void rollFlushWindow(long flushes) {
+        flushWindowCount += flushes;
+        long now = System.nanoTime();
+        long elapsed = now - flushWindowStart;
+        if (elapsed >= TimeUnit.SECONDS.toNanos(1)) {
+            flushesPerSecond = flushWindowCount * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+            flushWindowCount = 0;
+            flushWindowStart = now;
+        }
+    }
+
+    private void write(AsyncFileHandler handler, LogRecord record, String threadName) {
+        /*
+         * During Tomcat shutdown, the Handlers are closed before the queue is flushed therefore the closed flag is
+         * ignored if the service is shutting down.
+         */
+        if (!handler.closed || terminating) {
+            long start = System.nanoTime();
+            try {
+                handler.publishInternal(record, threadName);
+            } catch (RuntimeException e) {
+                // 写线程不能因为单条日志而退出
+            }
+            metrics.written(1, System.nanoTime() - start);
+        }
+    }
+
+    // ------------------------------------------------ HandlerBatch Inner Class
+
+    /**
+     * 一批Record按Handler分组，保持同一Handler内的入队顺序
+     * <p>
+     * Handler数量通常很少，线性查找即可；分组列表复用，避免每批创建对象
+     */
+    static final class HandlerBatch {
+
+        private final List<AsyncFileHandler> handlers = new ArrayList<>();
+        private final List<List<LogRecord>> records = new ArrayList<>();
+        private final List<List<String>> threadNames = new ArrayList<>();
+        private int size = 0;
+
+        void add(AsyncFileHandler handler, LogRecord record, String threadName) {
+            for (int i = 0; i < size; i++) {
+                if (handlers.get(i) == handler) {
+                    records.get(i).add(record);
+                    threadNames.get(i).add(threadName);
+                    return;
+                }
+            }
+            if (size == handlers.size()) {
+                handlers.add(handler);
+                records.add(new ArrayList<>());
+                threadNames.add(new ArrayList<>());
+            } else {
+                handlers.set(size, handler);
+            }
+            records.get(size).add(record);
+            threadNames.get(size).add(threadName);
+            size++;
+        }
+
+        /**
+         * 批量写入并清空分组
+         *
+         * @return 这一批写入产生的 flush 次数
+         */
+        long publish() {
+            long flushes = 0;
+            for (int i = 0; i < size; i++) {
+                AsyncFileHandler handler = handlers.get(i);
+                List<LogRecord> batch = records.get(i);
+                List<String> names = threadNames.get(i);
+                long before = handler.getFlushCount();
+                try {
+                    handler.publishBatchInternal(batch, names);
+                } catch (RuntimeException e) {
+                    // 写线程不能因为单批日志而退出
+                }
+                flushes += handler.getFlushCount() - before;
+                batch.clear();
+                names.clear();
+                handlers.set(i, null);
+            }
+            size = 0;
+            return flushes;
+        }
+    }
+
+    // ---------------------------------------------------- Sequence Inner Class
+
+    /**
+     * 序号，前后填充避免 cursor 与 consumed 之间的伪共享（false sharing）
+     */
+    static class LhsPadding {
+        protected long p1, p2, p3, p4, p5, p6, p7;
+    }
+
+    static class Value extends LhsPadding {
+        protected volatile long value = -1L;
+    }
+
+    static final class Sequence extends Value {
+        protected long p9, p10, p11, p12, p13, p14, p15;
+
+        private static final VarHandle VALUE;
+
+        static {
+            try {
+                VALUE = MethodHandles.lookup().findVarHandle(Value.class, "value", long.class);
+            } catch (ReflectiveOperationException e) {
+                throw new ExceptionInInitializerError(e);
+            }
+        }
+
+        long get() {
+            return value;
+        }
+
+        void set(long newValue) {
+            VALUE.setRelease(this, newValue);
+        }
+
+        boolean compareAndSet(long expect, long update) {
+            return VALUE.compareAndSet(this, expect, update);
+        }
+    }
+}
@@ -0,0 +1,417 @@
+package com.nabob.conch.tomcat.core.juli;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.LogRecord;
+
+/**
+ * 异步写日志 服务 - 分片队列实现
+ * <p>
+ * 共享队列时，一个日志量很大的 Handler（例如访问日志）会占满整个队列，丢弃策略随之丢弃其他 Handler 的日志。
+ * 分片队列让每个 Handler（或同一分组的 Handler）使用独立的队列：
+ * - 队列容量、丢弃策略按 Handler 配置（queueGroup、maxRecordCount、overflowDropType），同一分组使用第一个注册的 Handler 的配置
+ * - 一个小的写线程池服务所有分片：有数据的分片进入就绪队列，写线程每次从一个分片最多取 quantum 个 Record，
+ *   取完后分片仍有数据则重新排到就绪队列末尾，保证各分片轮流写入（公平）
+ * - 同一时刻一个分片只被一个写线程消费（scheduled 标记），分片内保持入队顺序
+ * - batchSize 大于1时，一次取出的 Record 按 Handler 分组批量写入（group commit）
+ * <p>
+ * 丢弃策略（与 LoggerExecutorService 保持一致，只作用于所在分片）：
+ * - OVERFLOW_DROP_LAST：丢弃分片中最迟入队的Record
+ * - OVERFLOW_DROP_FIRST：丢弃分片中最早入队的Record
+ * - OVERFLOW_DROP_FLUSH：一直等待直到入队成功，不允许任何丢失
+ * - OVERFLOW_DROP_CURRENT：丢弃当前Record
+ * - OVERFLOW_DROP_ADAPTIVE：入队前按分片占用率丢弃低级别的Record（见 {@link AdaptiveOverflow}）；分片满时，
+ *   受保护级别的Record丢弃分片中最早的非保护级别Record腾出空间，其他Record丢弃
+ * <p>
+ * 入队、丢弃、等待、写入的指标记录到 {@link AsyncLoggerMetrics}，队列最大值在写线程每次消费分片时采样
+ *
+ * @author Adam
+ * @since 2024/1/22
+ */
+final class LoggerShardedService implements AsyncFileHandler.LoggerService {
+
+    /**
+     * batchSize 为1时，写线程每次从一个分片最多取出的Record数
+     */
+    private static final int DRAIN_QUANTUM = 64;
+
+    /**
+     * 写线程等待就绪分片的最长时间，兜底关闭检查
+     */
+    private static final long POLL_TIMEOUT_MILLIS = 100;
+
+    /**
+     * OVERFLOW_DROP_FLUSH 时，每次等待入队的时间
+     */
+    private static final long OFFER_TIMEOUT_MILLIS = 1000;
+
+    private final AsyncLoggerMetrics metrics;
+
+    private final int batchSize;
+    private final int quantum;
+
+    /**
+     * Handler 所在的分片
+     */
+    private final Map<AsyncFileHandler, Shard> shards = new ConcurrentHashMap<>();
+
+    /**
+     * 分组名称 -> 分片，只在 synchronized 中修改
+     */
+    private final Map<String, Shard> groups = new ConcurrentHashMap<>();
+
+    /**
+     * 有数据、等待写线程消费的分片
+     */
+    private final LinkedBlockingQueue<Shard> ready = new LinkedBlockingQueue<>();
+
+    private final AtomicInteger handlerCount = new AtomicInteger();
+
+    private final Thread[] writerThreads;
+
+    private volatile boolean terminating = false;
+
+    // 批量写统计
+    private final LongAdder batchCount = new LongAdder();
+    private final LongAdder batchRecordCount = new LongAdder();
+
+    LoggerShardedService(final AsyncLoggerMetrics metrics, final int writerThreadCount, final int batchSize) {
+        this.metrics = metrics;
+        this.batchSize = Math.max(1, batchSize);
+        this.quantum = this.batchSize > 1 ? this.batchSize : DRAIN_QUANTUM;
+
+        FileHandler.FileHandlerThreadFactory threadFactory =
+            new FileHandler.FileHandlerThreadFactory(AsyncFileHandler.THREAD_PREFIX);
+        writerThreads = new Thread[Math.max(1, writerThreadCount)];
+        for (int i = 0; i < writerThreads.length; i++) {
+            writerThreads[i] = threadFactory.newThread(this::drain);
+            writerThreads[i].start();
+        }
+    }
+
+    @Override
+    public void publish(AsyncFileHandler handler, LogRecord record, String threadName) {
+        if (terminating) {
+            metrics.droppedCurrent();
+            return;
+        }
+        Shard shard = shards.get(handler);
+        if (shard == null) {
+            // Handler 已关闭
+            return;
+        }
+        if (shard.offer(new Entry(handler, record, threadName))) {
+            metrics.enqueued();
+            schedule(shard);
+        } else {
+            metrics.droppedCurrent();
+        }
+    }
+
+    @Override
+    public void registerHandler(AsyncFileHandler handler) {
+        handlerCount.incrementAndGet();
+        synchronized (this) {
+            String group = handler.getQueueGroup();
+            Shard shard;
+            if (group == null) {
+                shard = new Shard(null, handler.getOverflowDropType(), handler.getMaxRecordCount());
+            } else {
+                shard = groups.computeIfAbsent(group,
+                    g -> new Shard(g, handler.getOverflowDropType(), handler.getMaxRecordCount()));
+            }
+            shard.handlerCount++;
+            shards.put(handler, shard);
+        }
+    }
+
+    @Override
+    public void deregisterHandler(AsyncFileHandler handler) {
+        synchronized (this) {
+            Shard shard = shards.remove(handler);
+            // 分片中剩余的Record由写线程消费（Handler已关闭时跳过），这里只移除分组
+            if (shard != null && --shard.handlerCount == 0 && shard.group != null) {
+                groups.remove(shard.group);
+            }
+        }
+
+        int newCount = handlerCount.decrementAndGet();
+        if (newCount == 0) {
+            try {
+                Thread dummyHook = new Thread();
+                Runtime.getRuntime().addShutdownHook(dummyHook);
+                Runtime.getRuntime().removeShutdownHook(dummyHook);
+            } catch (IllegalStateException ise) {
+                // JVM is shutting down.
+                // Allow up to 10s for the queues to be emptied
+                terminating = true;
+                long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+                for (Thread writerThread : writerThreads) {
+                    long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    try {
+                        if (remaining > 0) {
+                            writerThread.join(remaining);
+                        }
+                    } catch (InterruptedException e) {
+                        // Ignore
+                    }
+                    writerThread.interrupt();
+                }
+            }
+        }
+    }
+
+    @Override
+    public boolean isTerminating() {
+        return terminating;
+    }
+
+    @Override
+    public long getQueueSize() {
+        long size = 0;
+        for (Shard shard : shards.values()) {
+            if (shard.group == null) {
+                size += shard.queue.size();
+            }
+        }
+        for (Shard shard : groups.values()) {
+            size += shard.queue.size();
+        }
+        return size;
+    }
+
+    @Override
+    public double getRecordsPerBatch() {
+        long batches = batchCount.sum();
+        return batches == 0 ? 0 : (double) batchRecordCount.sum() / batches;
+    }
+
+    /**
+     * 分片有数据时放入就绪队列，已在就绪队列或正在被消费的分片不重复放入
+     */
+    private void schedule(Shard shard) {
+        if (shard.scheduled.compareAndSet(false, true)) {
+            ready.offer(shard);
+        }
+    }
+
+    /**
+     * 写线程：轮流消费就绪的分片
+     */
+    private void drain() {
+        LoggerRingBufferService.HandlerBatch handlerBatch = new LoggerRingBufferService.HandlerBatch();
+        while (true) {
+            Shard shard;
+            try {
+                shard = ready.poll(POLL_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                if (terminating) {
+                    return;
+                }
+                continue;
+            }
+            if (shard == null) {
+                if (terminating) {
+                    // 就绪队列已排空
+                    return;
+                }
+                continue;
+            }
+
+            drainShard(shard, handlerBatch);
+
+            // 先清除标记再检查，避免与生产者的 schedule 之间丢失信号
+            shard.scheduled.set(false);
+            if (!shard.queue.isEmpty()) {
+                schedule(shard);
+            }
+        }
+    }
+
+    /**
+     * 从分片中最多取出 quantum 个Record写入
+     */
+    private void drainShard(Shard shard, LoggerRingBufferService.HandlerBatch handlerBatch) {
+        metrics.queueSize(shard.queue.size());
+        long start = System.nanoTime();
+        int count = 0;
+        Entry entry;
+        while (count < quantum && (entry = shard.queue.pollFirst()) != null) {
+            if (shard.adaptive) {
+                shard.pending.decrement();
+            }
+            /*
+             * During Tomcat shutdown, the Handlers are closed before the queue is flushed therefore the closed flag
+             * is ignored if the service is shutting down.
+             */
+            if (entry.handler.closed && !terminating) {
+                continue;
+            }
+            count++;
+            if (batchSize > 1) {
+                handlerBatch.add(entry.handler, entry.record, entry.threadName);
+            } else {
+                try {
+                    entry.handler.publishInternal(entry.record, entry.threadName);
+                } catch (RuntimeException e) {
+                    // 写线程不能因为单条日志而退出
+                }
+            }
+        }
+        if (count > 0) {
+            if (batchSize > 1) {
+                handlerBatch.publish();
+            }
+            metrics.written(count, System.nanoTime() - start);
+            batchCount.increment();
+            batchRecordCount.add(count);
+        }
+    }
+
+    // ------------------------------------------------------- Shard Inner Class
+
+    /**
+     * 分片：独立的有界队列和丢弃策略
+     */
+    private final class Shard {
+
+        final String group;
+        final int overflowDropType;
+        final int capacity;
+        final LinkedBlockingDeque<Entry> queue;
+        final boolean adaptive;
+
+        /**
+         * 自适应丢弃时使用的队列长度估算值：入队 +1，写线程取出或被挤掉 -1
+         * <p>
+         * LinkedBlockingDeque.size() 需要加锁，不适合每条日志都调用
+         */
+        final LongAdder pending = new LongAdder();
+
+        /**
+         * 是否已在就绪队列中或正在被写线程消费
+         */
+        final AtomicBoolean scheduled = new AtomicBoolean();
+
+        /**
+         * 使用该分片的Handler数量，只在 synchronized 中访问
+         */
+        int handlerCount = 0;
+
+        Shard(String group, int overflowDropType, int maxRecords) {
+            this.group = group;
+            this.overflowDropType = overflowDropType;
+            this.capacity = Math.max(1, maxRecords);
+            this.queue = new LinkedBlockingDeque<>(capacity);
+            this.adaptive = overflowDropType == AsyncFileHandler.OVERFLOW_DROP_ADAPTIVE;
+        }
+
+        /**
+         * 入队，队列满时按 overflowDropType 处理
+         *
+         * @return 当前Record是否已入队
+         */
+        boolean offer(Entry entry) {
+            if (adaptive && AdaptiveOverflow.shed(entry.record, pending.sum(), capacity)) {
+                entry.handler.suppressed();
+                return false;
+            }
+            if (queue.offerLast(entry)) {
+                if (adaptive) {
+                    pending.increment();
+                }
+                return true;
+            }
+            metrics.queueSize(capacity);
+            switch (overflowDropType) {
+                case AsyncFileHandler.OVERFLOW_DROP_LAST:
+                default:
+                    while (!queue.offerLast(entry)) {
+                        if (queue.pollLast() != null) {
+                            metrics.droppedLast();
+                        }
+                    }
+                    return true;
+                case AsyncFileHandler.OVERFLOW_DROP_FIRST:
+                    while (!queue.offerLast(entry)) {
+                        if (queue.pollFirst() != null) {
+                            metrics.droppedFirst();
+                        }
+                    }
+                    return true;
+                case AsyncFileHandler.OVERFLOW_DROP_FLUSH:
+                    // 队列满说明分片已被调度，写线程会腾出空间
+                    long start = System.nanoTime();
+                    AsyncLogBlockedEvent event = new AsyncLogBlockedEvent();
+                    event.begin();
+                    try {
+                        while (!terminating) {
+                            try {
+                                if (queue.offerLast(entry, OFFER_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                                    return true;
+                                }
+                            } catch (InterruptedException e) {
+                                Thread.currentThread().interrupt();
+                                return false;
+                            }
+                        }
+                        return false;
+                    } finally {
+                        metrics.dropFlushBlocked(System.nanoTime() - start);
+                        event.commit("sharded");
+                    }
+                case AsyncFileHandler.OVERFLOW_DROP_CURRENT:
+                    return false;
+                case AsyncFileHandler.OVERFLOW_DROP_ADAPTIVE:
+                    if (!AdaptiveOverflow.isProtected(entry.record)) {
+                        entry.handler.suppressed();
+                        return false;
+                    }
+                    while (!queue.offerLast(entry)) {
+                        Entry evicted = evictUnprotected();
+                        if (evicted != null) {
+                            pending.decrement();
+                            evicted.handler.suppressed();
+                            metrics.droppedFirst();
+                        }
+                    }
+                    pending.increment();
+                    return true;
+            }
+        }
+
+        /**
+         * 移除最早入队的非保护级别Record，没有时移除最早的一个
+         */
+        private Entry evictUnprotected() {
+            for (Entry queued : queue) {
+                if (!AdaptiveOverflow.isProtected(queued.record)) {
+                    if (queue.removeFirstOccurrence(queued)) {
+                        return queued;
+                    }
+                    break;
+                }
+            }
+            return queue.pollFirst();
+        }
+    }
+
+    private static final class Entry {
+
+        final AsyncFileHandler handler;
+        final LogRecord record;
+        final String threadName;
+
+        Entry(AsyncFileHandler handler, LogRecord record, String threadName) {
+            this.handler = handler;
+            this.record = record;
+            this.threadName = threadName;
+        }
+    }
+}
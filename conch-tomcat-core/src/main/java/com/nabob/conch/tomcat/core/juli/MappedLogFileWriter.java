@@ -0,0 +1,215 @@
+package com.nabob.conch.tomcat.core.juli;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * 基于内存映射（MappedByteBuffer）的 LogFileWriter
+ * <p>
+ * - 在当前日志文件末尾映射一个 chunkSize 大小的窗口，日志直接编码到映射内存中，写日志只是内存拷贝，没有系统调用
+ * - 窗口写满后，从当前写入位置重新映射下一个窗口（文件按 chunkSize 增长）
+ * - 写入映射内存的数据在 page cache 中，JVM 崩溃后不会丢失，所以 flush 不需要做任何事情
+ * - 关闭时把文件截断到真实长度
+ * <p>
+ * 打开期间在日志文件旁边保留一个标记文件（文件名 + {@link #MARKER_SUFFIX}），内容是当前映射窗口的起始位置，
+ * 每次映射新窗口时更新，正常关闭时删除：
+ * - 重新打开时没有标记文件，说明上次正常关闭，文件长度就是真实长度，数据末尾的 0 字节（如 UTF-16LE 编码、
+ * 消息中的 NUL 字符）原样保留
+ * - 有标记文件说明 JVM 崩溃，文件末尾留下了未使用窗口的 0 字节，只在最后一个窗口内从文件末尾跳过 0 字节找到真实的写入位置；
+ * 这种情况下最后一个窗口末尾真实写入的 NUL 字符无法与未使用空间区分
+ * <p>
+ * 崩溃后文件长度包括预分配的窗口，FileHandler 选择日志文件前通过 {@link #recover(File, Charset)} 截断到真实长度，
+ * 避免按大小滚动时把没写满的文件当作已写满
+ *
+ * @author Adam
+ * @since 2024/1/12
+ */
+final class MappedLogFileWriter extends EncodingLogFileWriter {
+
+    /**
+     * 默认映射窗口大小
+     */
+    static final int DEFAULT_CHUNK_SIZE = 16 * 1024 * 1024;
+
+    /**
+     * 标记文件的后缀
+     */
+    static final String MARKER_SUFFIX = ".mapped";
+
+    /**
+     * 查找真实写入位置时，每次从文件末尾往前读取的大小
+     */
+    private static final int RECOVER_READ_SIZE = 8 * 1024;
+
+    private final FileChannel channel;
+    private final Path marker;
+    private final int chunkSize;
+
+    /**
+     * 当前映射窗口在文件中的起始位置
+     */
+    private long mappedPosition;
+
+    /**
+     * 当前映射窗口
+     */
+    private MappedByteBuffer mapped;
+
+    MappedLogFileWriter(File file, Charset charset, int chunkSize) throws IOException {
+        super(charset);
+        this.channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+            StandardOpenOption.WRITE);
+        this.chunkSize = Math.max(chunkSize, (int) Math.ceil(encoder.maxBytesPerChar()));
+        this.marker = markerOf(file);
+        try {
+            map(recoverEnd(channel, marker, encoder));
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    @Override
+    protected ByteBuffer target() {
+        return mapped;
+    }
+
+    /**
+     * 当前窗口已写满，映射下一个窗口
+     */
+    @Override
+    protected void overflow() throws IOException {
+        map(mappedPosition + mapped.position());
+    }
+
+    /**
+     * 当前写入位置，不包括映射窗口预分配的空间
+     */
+    @Override
+    public long length() {
+        lock.lock();
+        try {
+            return mappedPosition + mapped.position();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 数据已在 page cache 中，不需要系统调用
+     */
+    @Override
+    public void flush() {
+        // NO-OP
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            finish();
+            long length = mappedPosition + mapped.position();
+            mapped = null;
+            // 截断到真实长度，之后重新打开时直接使用文件长度
+            channel.truncate(length);
+            Files.deleteIfExists(marker);
+        } finally {
+            try {
+                channel.close();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 从 position 开始映射一个新窗口，映射超出文件长度时文件会自动增长；position 之前的数据都是真实写入的，记录到标记文件
+     */
+    private void map(long position) throws IOException {
+        Files.write(marker, Long.toString(position).getBytes(StandardCharsets.US_ASCII));
+        mapped = channel.map(FileChannel.MapMode.READ_WRITE, position, chunkSize);
+        mappedPosition = position;
+    }
+
+    /**
+     * 上次 JVM 崩溃（有标记文件）时，把文件截断到真实写入位置并删除标记文件，之后文件长度就是真实长度；
+     * 上次正常关闭时不做任何事情
+     */
+    static void recover(File file, Charset charset) throws IOException {
+        Path marker = markerOf(file);
+        if (!Files.exists(marker)) {
+            return;
+        }
+        if (file.exists()) {
+            try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+                channel.truncate(recoverEnd(channel, marker, charset.newEncoder()));
+            }
+        }
+        Files.deleteIfExists(marker);
+    }
+
+    private static Path markerOf(File file) {
+        return file.toPath().resolveSibling(file.getName() + MARKER_SUFFIX);
+    }
+
+    /**
+     * 文件的真实写入位置
+     * <p>
+     * 上次正常关闭（没有标记文件）时就是文件长度；否则上次 JVM 崩溃，标记文件中的位置之前都是真实数据，
+     * 之后跳过未使用窗口的 0 字节
+     */
+    private static long recoverEnd(FileChannel channel, Path marker, CharsetEncoder encoder) throws IOException {
+        long size = channel.size();
+        if (!Files.exists(marker)) {
+            return size;
+        }
+        long floor;
+        try {
+            floor = Long.parseLong(new String(Files.readAllBytes(marker), StandardCharsets.US_ASCII).trim());
+        } catch (NumberFormatException e) {
+            // 写标记文件时崩溃，只能从文件开头查找
+            floor = 0;
+        }
+        long end = findEnd(channel, Math.max(0, Math.min(floor, size)));
+        // 定长编码（如 UTF-16LE）的字符末尾可能是 0 字节，补齐到完整字符
+        int width = (int) encoder.maxBytesPerChar();
+        if (width > 1 && encoder.averageBytesPerChar() == encoder.maxBytesPerChar() && end % width != 0) {
+            end = Math.min(size, end + width - end % width);
+        }
+        return end;
+    }
+
+    /**
+     * 从文件末尾往前跳过 0 字节，最多跳到 floor
+     */
+    private static long findEnd(FileChannel channel, long floor) throws IOException {
+        long end = channel.size();
+        ByteBuffer buffer = ByteBuffer.allocate(RECOVER_READ_SIZE);
+        while (end > floor) {
+            long start = Math.max(floor, end - RECOVER_READ_SIZE);
+            buffer.clear().limit((int) (end - start));
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer, start + buffer.position()) < 0) {
+                    break;
+                }
+            }
+            for (int i = buffer.position() - 1; i >= 0; i--) {
+                if (buffer.get(i) != 0) {
+                    return start + i + 1;
+                }
+            }
+            end = start;
+        }
+        return floor;
+    }
+}
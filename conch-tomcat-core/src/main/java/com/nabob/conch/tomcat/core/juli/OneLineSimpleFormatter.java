@@ -1,42 +1,76 @@
 package com.nabob.conch.tomcat.core.juli;
 
 import java.io.PrintWriter;
-import java.io.StringWriter;
-import java.lang.management.ManagementFactory;
-import java.lang.management.ThreadInfo;
-import java.lang.management.ThreadMXBean;
+import java.io.Writer;
 import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.Date;
-import java.util.LinkedHashMap;
-import java.util.Map;
 import java.util.logging.Formatter;
 import java.util.logging.LogRecord;
 
 /**
  * OneLine Simple Formatter
+ * <p>
+ * 格式：dd-MM-yyyy HH:mm:ss.SSS LEVEL [thread] class.method message
+ * <p>
+ * 稳定状态下格式化不创建对象：
+ * - 日期前缀 dd-MM-yyyy HH:mm:ss 按秒缓存，只拼接毫秒
+ * - {@link #format(LogRecord)} 复用线程本地的 StringBuilder，只创建返回的 String
+ * - {@link #format(LogRecord, StringBuilder)} 直接追加到调用方的 StringBuilder，FileHandler 可以跳过中间的 String
+ * - 异常堆栈复用线程本地的 PrintWriter 直接写入 StringBuilder
  *
  * @author Adam
  * @since 2023/12/13
  */
-public class OneLineSimpleFormatter extends Formatter {
+public class OneLineSimpleFormatter extends Formatter implements AppendingFormatter {
 
-    private static final Object threadMxBeanLock = new Object();
+    private static final DateTimeFormatter SECOND_FORMATTER = DateTimeFormatter.ofPattern("dd-MM-yyyy HH:mm:ss");
 
     /**
-     * 线程的 MXBean 监控对象
+     * 复用的 StringBuilder 超过该大小后丢弃，避免一条大日志长期占用内存
      */
-    private static volatile ThreadMXBean threadMxBean = null;
+    private static final int MAX_CACHED_BUILDER_SIZE = 64 * 1024;
 
-    private static final int THREAD_NAME_CACHE_SIZE = 10000;
-    private static final ThreadLocal<ThreadNameCache> threadNameCache = ThreadLocal
-        .withInitial(() -> new ThreadNameCache(THREAD_NAME_CACHE_SIZE));
+    private static final ThreadLocal<StringBuilder> builderCache = ThreadLocal
+        .withInitial(() -> new StringBuilder(256));
+
+    private static final ThreadLocal<StackTraceWriter> stackTraceWriterCache = ThreadLocal
+        .withInitial(StackTraceWriter::new);
+
+    /**
+     * 最近一秒的日期前缀
+     */
+    private static volatile SecondCache secondCache = new SecondCache(Long.MIN_VALUE, null);
 
     @Override
     public String format(LogRecord record) {
-        StringBuilder sb = new StringBuilder();
+        StringBuilder sb = builderCache.get();
+        sb.setLength(0);
+        format(record, sb);
+        String result = sb.toString();
+        if (sb.capacity() > MAX_CACHED_BUILDER_SIZE) {
+            builderCache.remove();
+        }
+        return result;
+    }
 
+    /**
+     * 格式化并直接追加到 sb，不创建中间 String
+     */
+    @Override
+    public void format(LogRecord record, StringBuilder sb) {
+        format(record, resolveThreadName(record), sb);
+    }
+
+    /**
+     * 使用指定的线程名格式化，例如 {@link BinaryLogDecoder} 使用编码时记录的线程名
+     */
+    void format(LogRecord record, String threadName, StringBuilder sb) {
         // 日期
-        sb.append(timeStampToString(record.getMillis(), "dd-MM-yyyy HH:mm:ss.SSS"));
+        appendTimestamp(record.getMillis(), sb);
 
         // 日志级别
         sb.append(' ');
@@ -45,21 +79,19 @@ public class OneLineSimpleFormatter extends Formatter {
         // 线程名
         sb.append(' ');
         sb.append('[');
-        final String threadName = Thread.currentThread().getName();
-
-        if (threadName != null && threadName.startsWith(AsyncFileHandler.THREAD_PREFIX)) {
-            // 异步线程写日志的话，获取实际的异步线程名
-            sb.append(getThreadName(record.getLongThreadID()));
-        } else {
-            sb.append(threadName);
-        }
+        sb.append(threadName);
         sb.append(']');
 
-        // 类名+方法名
+        // 类名+方法名，没有调用方时使用 logger 名称
         sb.append(' ');
-        sb.append(record.getSourceClassName());
-        sb.append('.');
-        sb.append(record.getSourceMethodName());
+        String sourceClassName = resolveSourceClassName(record);
+        if (sourceClassName != null) {
+            sb.append(sourceClassName);
+            sb.append('.');
+            sb.append(resolveSourceMethodName(record));
+        } else {
+            sb.append(record.getLoggerName());
+        }
 
         // 日志内容
         sb.append(' ');
@@ -70,14 +102,32 @@ public class OneLineSimpleFormatter extends Formatter {
 
         // 异常堆栈
         if (record.getThrown() != null) {
-            StringWriter sw = new StringWriter();
-            PrintWriter pw = new PrintWriter(sw);
-            record.getThrown().printStackTrace(pw);
-            pw.close();
-            sb.append(sw.getBuffer());
+            stackTraceWriterCache.get().print(record.getThrown(), sb);
         }
+    }
 
-        return sb.toString();
+    /**
+     * 追加 dd-MM-yyyy HH:mm:ss.SSS，秒以上部分使用缓存
+     */
+    private static void appendTimestamp(long millis, StringBuilder sb) {
+        long second = Math.floorDiv(millis, 1000L);
+        SecondCache cache = secondCache;
+        if (cache.second != second) {
+            String formatted = SECOND_FORMATTER.format(
+                LocalDateTime.ofInstant(Instant.ofEpochSecond(second), ZoneId.systemDefault()));
+            cache = new SecondCache(second, formatted);
+            secondCache = cache;
+        }
+        sb.append(cache.formatted);
+        sb.append('.');
+        int ms = (int) Math.floorMod(millis, 1000L);
+        if (ms < 100) {
+            sb.append('0');
+        }
+        if (ms < 10) {
+            sb.append('0');
+        }
+        sb.append(ms);
     }
 
     public static String timeStampToString(Long timeStamp, String format) {
@@ -93,56 +143,102 @@ public class OneLineSimpleFormatter extends Formatter {
     }
 
     /**
-     * 根据线程ID获取线程名称
+     * 获取打日志的线程名称
      * <p>
-     * LogRecord有线程ID，但是没有线程名称
-     *
-     * @param logRecordThreadId 线程id
-     * @return 线程名称
+     * 异步线程写日志的话，使用入队时获取的线程名（见 {@link FileHandler.FileHandlerThread}），
+     * 打日志的线程可能已经结束，不再按线程ID查询
      */
-    private static String getThreadName(long logRecordThreadId) {
-        ThreadNameCache cache = threadNameCache.get();
-        String result = cache.get(logRecordThreadId);
-        if (result != null) {
-            return result;
-        }
-
-        if (threadMxBean == null) {
-            synchronized (threadMxBeanLock) {
-                if (threadMxBean == null) {
-                    // ManagementFactory 是整个jvm管理的标记有MXBeans的beans
-                    threadMxBean = ManagementFactory.getThreadMXBean();
-                }
+    static String resolveThreadName(LogRecord record) {
+        final Thread current = Thread.currentThread();
+        if (current instanceof FileHandler.FileHandlerThread) {
+            String threadName = ((FileHandler.FileHandlerThread) current).getRecordThreadName(record);
+            if (threadName != null) {
+                return threadName;
+            }
+            if (record.getLongThreadID() != current.getId()) {
+                return Long.toString(record.getLongThreadID());
             }
         }
+        return current.getName();
+    }
 
-        ThreadInfo threadInfo = threadMxBean.getThreadInfo(logRecordThreadId);
-        if (threadInfo == null) {
-            return Long.toString(logRecordThreadId);
-        }
+    /**
+     * 获取日志调用方的类名
+     * <p>
+     * 关闭了 captureLocation 的 AsyncFileHandler 在写线程上写日志时返回 null，不在写线程上推断调用方
+     */
+    static String resolveSourceClassName(LogRecord record) {
+        return isLocationCaptured(record) ? record.getSourceClassName() : null;
+    }
 
-        cache.put(logRecordThreadId, threadInfo.getThreadName());
+    /**
+     * 获取日志调用方的方法名，同 {@link #resolveSourceClassName(LogRecord)}
+     */
+    static String resolveSourceMethodName(LogRecord record) {
+        return isLocationCaptured(record) ? record.getSourceMethodName() : null;
+    }
 
-        return threadInfo.getThreadName();
+    private static boolean isLocationCaptured(LogRecord record) {
+        final Thread current = Thread.currentThread();
+        return !(current instanceof FileHandler.FileHandlerThread) ||
+            ((FileHandler.FileHandlerThread) current).isRecordLocation(record);
     }
 
-    /*
-     * This is an LRU cache.
+    /**
+     * 某一秒的日期前缀，不可变，整体替换保证线程安全
      */
-    private static class ThreadNameCache extends LinkedHashMap<Long, String> {
+    private static final class SecondCache {
+        final long second;
+        final String formatted;
 
-        private static final long serialVersionUID = 1L;
+        SecondCache(long second, String formatted) {
+            this.second = second;
+            this.formatted = formatted;
+        }
+    }
+
+    /**
+     * 把异常堆栈直接写入目标 StringBuilder 的 Writer，每个线程复用一个
+     */
+    private static final class StackTraceWriter extends Writer {
 
-        private final int cacheSize;
+        private final PrintWriter printWriter = new PrintWriter(this, false);
 
-        ThreadNameCache(int cacheSize) {
-            super(cacheSize, 0.75f, true);
-            this.cacheSize = cacheSize;
+        private StringBuilder target;
+
+        void print(Throwable thrown, StringBuilder sb) {
+            target = sb;
+            try {
+                thrown.printStackTrace(printWriter);
+                printWriter.flush();
+            } finally {
+                target = null;
+            }
+        }
+
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+            target.append(cbuf, off, len);
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+            target.append(str, off, off + len);
+        }
+
+        @Override
+        public void write(int c) {
+            target.append((char) c);
+        }
+
+        @Override
+        public void flush() {
+            // NO-OP
         }
 
         @Override
-        protected boolean removeEldestEntry(Map.Entry<Long, String> eldest) {
-            return (size() > cacheSize);
+        public void close() {
+            // NO-OP
         }
     }
 }
@@ -0,0 +1,94 @@
+package com.nabob.conch.tomcat.core.juli;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * 基于 OutputStream 的 LogFileWriter
+ * <p>
+ * CharsetEncoder 编码到复用的 byte[]，满了或者 flush 时写入 FileOutputStream
+ * <p>
+ * 不使用 PrintWriter、BufferedOutputStream：它们用 synchronized 保证线程安全，持有监视器时执行阻塞的文件 IO，
+ * 虚拟线程打日志时会钉住（pin）载体线程。这里只用 ReentrantLock 互斥，FileOutputStream.write 本身不加锁
+ *
+ * @author Adam
+ * @since 2024/1/10
+ */
+final class StreamLogFileWriter extends EncodingLogFileWriter {
+
+    private final FileOutputStream out;
+    private final ByteBuffer buffer;
+
+    StreamLogFileWriter(File file, Charset charset, int bufferSize) throws FileNotFoundException {
+        super(charset);
+        this.out = new FileOutputStream(file, true);
+        int capacity = Math.max(bufferSize > 0 ? bufferSize : ChannelLogFileWriter.DEFAULT_BUFFER_CAPACITY,
+            (int) Math.ceil(encoder.maxBytesPerChar()));
+        this.buffer = ByteBuffer.allocate(capacity);
+    }
+
+    @Override
+    protected ByteBuffer target() {
+        return buffer;
+    }
+
+    /**
+     * byte[] 已满，先写入文件
+     */
+    @Override
+    protected void overflow() throws IOException {
+        drain();
+    }
+
+    @Override
+    public long length() throws IOException {
+        lock.lock();
+        try {
+            return out.getChannel().size() + buffer.position();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        lock.lock();
+        try {
+            drain();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            finish();
+            drain();
+        } finally {
+            try {
+                out.close();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * 把 byte[] 中的内容全部写入 FileOutputStream
+     */
+    private void drain() throws IOException {
+        try {
+            if (buffer.position() > 0) {
+                out.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+            }
+        } finally {
+            buffer.clear();
+        }
+    }
+}
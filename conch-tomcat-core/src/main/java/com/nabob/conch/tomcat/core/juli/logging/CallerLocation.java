@@ -0,0 +1,63 @@
+package com.nabob.conch.tomcat.core.juli.logging;
+
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * 获取打日志的调用方（类名、方法名）
+ * <p>
+ * 使用 StackWalker 从栈顶向下遍历，遇到第一个不属于日志框架的栈帧就停止：
+ * - 不像 new Throwable().getStackTrace() 那样生成整个调用栈
+ * - 栈帧是否属于日志框架按类缓存（ClassValue），同一个类再次打日志时不再比较类名前缀；
+ * 不按调用位置缓存，确定调用位置本身就需要遍历栈帧
+ *
+ * @author Adam
+ * @since 2024/1/27
+ */
+public final class CallerLocation {
+
+    private static final StackWalker WALKER = StackWalker.getInstance(StackWalker.Option.RETAIN_CLASS_REFERENCE);
+
+    /**
+     * 日志框架的包名前缀
+     */
+    private static final String[] LOGGING_PACKAGES = {
+        "java.util.logging.",
+        "sun.util.logging.",
+        "jdk.internal.logger.",
+        "com.nabob.conch.tomcat.core.juli."
+    };
+
+    /**
+     * 类是否属于日志框架，按类缓存
+     */
+    private static final ClassValue<Boolean> LOGGING_CLASS = new ClassValue<Boolean>() {
+        @Override
+        protected Boolean computeValue(Class<?> type) {
+            if (Log.class.isAssignableFrom(type)) {
+                return Boolean.TRUE;
+            }
+            String name = type.getName();
+            for (String prefix : LOGGING_PACKAGES) {
+                if (name.startsWith(prefix)) {
+                    return Boolean.TRUE;
+                }
+            }
+            return Boolean.FALSE;
+        }
+    };
+
+    private static final Function<Stream<StackWalker.StackFrame>, Optional<StackWalker.StackFrame>> FIRST_CALLER =
+        frames -> frames.filter(frame -> !LOGGING_CLASS.get(frame.getDeclaringClass())).findFirst();
+
+    private CallerLocation() {
+    }
+
+    /**
+     * 第一个不属于日志框架的栈帧，没有时返回 null
+     */
+    public static StackWalker.StackFrame find() {
+        return WALKER.walk(FIRST_CALLER).orElse(null);
+    }
+}
@@ -1,6 +1,11 @@
 package com.nabob.conch.tomcat.core.juli.logging;
 
+import com.nabob.conch.tomcat.core.juli.AsyncFileHandler;
+
+import java.util.function.Supplier;
+import java.util.logging.Handler;
 import java.util.logging.Level;
+import java.util.logging.LogRecord;
 import java.util.logging.Logger;
 
 /**
@@ -55,83 +60,358 @@ class JDKLog implements Log {
 
     @Override
     public void trace(Object message) {
-        log(Level.FINER, String.valueOf(message), null);
+        log(Level.FINER, message, null, null);
     }
 
     @Override
     public void trace(Object message, Throwable e) {
-        log(Level.FINER, String.valueOf(message), e);
+        log(Level.FINER, message, null, e);
+    }
+
+    @Override
+    public void trace(String message, Throwable e) {
+        log(Level.FINER, message, null, e);
+    }
+
+    @Override
+    public void trace(Supplier<String> message) {
+        if (logger.isLoggable(Level.FINER)) {
+            log(Level.FINER, message.get(), null, null);
+        }
+    }
+
+    @Override
+    public void trace(Supplier<String> message, Throwable e) {
+        if (logger.isLoggable(Level.FINER)) {
+            log(Level.FINER, message.get(), null, e);
+        }
+    }
+
+    @Override
+    public void trace(String format, Object arg) {
+        if (logger.isLoggable(Level.FINER)) {
+            log(Level.FINER, format, new Object[]{arg}, null);
+        }
+    }
+
+    @Override
+    public void trace(String format, Object arg1, Object arg2) {
+        if (logger.isLoggable(Level.FINER)) {
+            log(Level.FINER, format, new Object[]{arg1, arg2}, null);
+        }
+    }
+
+    @Override
+    public void trace(String format, Object... args) {
+        log(Level.FINER, format, args, null);
     }
 
     @Override
     public void debug(Object message) {
-        log(Level.FINE, String.valueOf(message), null);
+        log(Level.FINE, message, null, null);
     }
 
     @Override
     public void debug(Object message, Throwable e) {
-        log(Level.FINE, String.valueOf(message), e);
+        log(Level.FINE, message, null, e);
+    }
+
+    @Override
+    public void debug(String message, Throwable e) {
+        log(Level.FINE, message, null, e);
+    }
+
+    @Override
+    public void debug(Supplier<String> message) {
+        if (logger.isLoggable(Level.FINE)) {
+            log(Level.FINE, message.get(), null, null);
+        }
+    }
+
+    @Override
+    public void debug(Supplier<String> message, Throwable e) {
+        if (logger.isLoggable(Level.FINE)) {
+            log(Level.FINE, message.get(), null, e);
+        }
+    }
+
+    @Override
+    public void debug(String format, Object arg) {
+        if (logger.isLoggable(Level.FINE)) {
+            log(Level.FINE, format, new Object[]{arg}, null);
+        }
+    }
+
+    @Override
+    public void debug(String format, Object arg1, Object arg2) {
+        if (logger.isLoggable(Level.FINE)) {
+            log(Level.FINE, format, new Object[]{arg1, arg2}, null);
+        }
+    }
+
+    @Override
+    public void debug(String format, Object... args) {
+        log(Level.FINE, format, args, null);
     }
 
     @Override
     public void info(Object message) {
-        log(Level.INFO, String.valueOf(message), null);
+        log(Level.INFO, message, null, null);
     }
 
     @Override
     public void info(Object message, Throwable e) {
-        log(Level.INFO, String.valueOf(message), e);
+        log(Level.INFO, message, null, e);
+    }
+
+    @Override
+    public void info(String message, Throwable e) {
+        log(Level.INFO, message, null, e);
+    }
+
+    @Override
+    public void info(Supplier<String> message) {
+        if (logger.isLoggable(Level.INFO)) {
+            log(Level.INFO, message.get(), null, null);
+        }
+    }
+
+    @Override
+    public void info(Supplier<String> message, Throwable e) {
+        if (logger.isLoggable(Level.INFO)) {
+            log(Level.INFO, message.get(), null, e);
+        }
+    }
+
+    @Override
+    public void info(String format, Object arg) {
+        if (logger.isLoggable(Level.INFO)) {
+            log(Level.INFO, format, new Object[]{arg}, null);
+        }
+    }
+
+    @Override
+    public void info(String format, Object arg1, Object arg2) {
+        if (logger.isLoggable(Level.INFO)) {
+            log(Level.INFO, format, new Object[]{arg1, arg2}, null);
+        }
+    }
+
+    @Override
+    public void info(String format, Object... args) {
+        log(Level.INFO, format, args, null);
     }
 
     @Override
     public void warn(Object message) {
-        log(Level.WARNING, String.valueOf(message), null);
+        log(Level.WARNING, message, null, null);
     }
 
     @Override
     public void warn(Object message, Throwable e) {
-        log(Level.WARNING, String.valueOf(message), e);
+        log(Level.WARNING, message, null, e);
+    }
+
+    @Override
+    public void warn(String message, Throwable e) {
+        log(Level.WARNING, message, null, e);
+    }
+
+    @Override
+    public void warn(Supplier<String> message) {
+        if (logger.isLoggable(Level.WARNING)) {
+            log(Level.WARNING, message.get(), null, null);
+        }
+    }
+
+    @Override
+    public void warn(Supplier<String> message, Throwable e) {
+        if (logger.isLoggable(Level.WARNING)) {
+            log(Level.WARNING, message.get(), null, e);
+        }
+    }
+
+    @Override
+    public void warn(String format, Object arg) {
+        if (logger.isLoggable(Level.WARNING)) {
+            log(Level.WARNING, format, new Object[]{arg}, null);
+        }
+    }
+
+    @Override
+    public void warn(String format, Object arg1, Object arg2) {
+        if (logger.isLoggable(Level.WARNING)) {
+            log(Level.WARNING, format, new Object[]{arg1, arg2}, null);
+        }
+    }
+
+    @Override
+    public void warn(String format, Object... args) {
+        log(Level.WARNING, format, args, null);
     }
 
     @Override
     public void error(Object message) {
-        log(Level.SEVERE, String.valueOf(message), null);
+        log(Level.SEVERE, message, null, null);
     }
 
     @Override
     public void error(Object message, Throwable e) {
-        log(Level.SEVERE, String.valueOf(message), e);
+        log(Level.SEVERE, message, null, e);
+    }
+
+    @Override
+    public void error(String message, Throwable e) {
+        log(Level.SEVERE, message, null, e);
+    }
+
+    @Override
+    public void error(Supplier<String> message) {
+        if (logger.isLoggable(Level.SEVERE)) {
+            log(Level.SEVERE, message.get(), null, null);
+        }
+    }
+
+    @Override
+    public void error(Supplier<String> message, Throwable e) {
+        if (logger.isLoggable(Level.SEVERE)) {
+            log(Level.SEVERE, message.get(), null, e);
+        }
+    }
+
+    @Override
+    public void error(String format, Object arg) {
+        if (logger.isLoggable(Level.SEVERE)) {
+            log(Level.SEVERE, format, new Object[]{arg}, null);
+        }
+    }
+
+    @Override
+    public void error(String format, Object arg1, Object arg2) {
+        if (logger.isLoggable(Level.SEVERE)) {
+            log(Level.SEVERE, format, new Object[]{arg1, arg2}, null);
+        }
+    }
+
+    @Override
+    public void error(String format, Object... args) {
+        log(Level.SEVERE, format, args, null);
     }
 
     @Override
     public void fatal(Object message) {
-        log(Level.SEVERE, String.valueOf(message), null);
+        log(Level.SEVERE, message, null, null);
     }
 
     @Override
     public void fatal(Object message, Throwable e) {
-        log(Level.SEVERE, String.valueOf(message), e);
+        log(Level.SEVERE, message, null, e);
+    }
+
+    @Override
+    public void fatal(String message, Throwable e) {
+        log(Level.SEVERE, message, null, e);
+    }
+
+    @Override
+    public void fatal(Supplier<String> message) {
+        if (logger.isLoggable(Level.SEVERE)) {
+            log(Level.SEVERE, message.get(), null, null);
+        }
+    }
+
+    @Override
+    public void fatal(Supplier<String> message, Throwable e) {
+        if (logger.isLoggable(Level.SEVERE)) {
+            log(Level.SEVERE, message.get(), null, e);
+        }
     }
 
-    private void log(Level level, String msg, Throwable ex) {
+    @Override
+    public void fatal(String format, Object arg) {
+        if (logger.isLoggable(Level.SEVERE)) {
+            log(Level.SEVERE, format, new Object[]{arg}, null);
+        }
+    }
+
+    @Override
+    public void fatal(String format, Object arg1, Object arg2) {
+        if (logger.isLoggable(Level.SEVERE)) {
+            log(Level.SEVERE, format, new Object[]{arg1, arg2}, null);
+        }
+    }
+
+    @Override
+    public void fatal(String format, Object... args) {
+        log(Level.SEVERE, format, args, null);
+    }
+
+    /**
+     * 先检查日志级别，再构造日志内容
+     * <p>
+     * 有参数时把 {} 模板转换为 MessageFormat 模板，模板和参数原样放入 LogRecord，由 Formatter 格式化
+     *
+     * @param message 日志内容，params 不为空时是 {} 模板
+     * @param params  模板参数
+     */
+    private void log(Level level, Object message, Object[] params, Throwable ex) {
         if (logger.isLoggable(level)) {
-            // Hack (?) to get the stack trace.
-            // 尝试获取堆栈跟踪信息
-            Throwable dummyException=new Throwable();
-            StackTraceElement locations[]=dummyException.getStackTrace();
-            // Caller will be the third element
-            String cname = "unknown";
-            String method = "unknown";
-            if (locations != null && locations.length >2) {
-                StackTraceElement caller = locations[2];
-                cname = caller.getClassName();
-                method = caller.getMethodName();
+            // 调用方：第一个不属于日志框架的栈帧，不生成整个调用栈；没有 Handler 需要调用方时不遍历调用栈
+            String cname = null;
+            String method = null;
+            if (needsLocation(level)) {
+                cname = "unknown";
+                method = "unknown";
+                StackWalker.StackFrame caller = CallerLocation.find();
+                if (caller != null) {
+                    cname = caller.getClassName();
+                    method = caller.getMethodName();
+                }
             }
-            if (ex==null) {
-                logger.logp(level, cname, method, msg);
+            String msg = String.valueOf(message);
+            if (params != null && params.length > 0 && message != null) {
+                ParameterizedMessage parameterized = ParameterizedMessage.of(msg);
+                if (ex == null) {
+                    ex = parameterized.throwable(params);
+                    if (ex != null) {
+                        params = ParameterizedMessage.trimThrowable(params);
+                    }
+                }
+                msg = parameterized.pattern;
             } else {
-                logger.logp(level, cname, method, msg, ex);
+                params = null;
+            }
+
+            LogRecord record = new LogRecord(level, msg);
+            record.setLoggerName(logger.getName());
+            record.setSourceClassName(cname);
+            record.setSourceMethodName(method);
+            record.setParameters(params);
+            record.setThrown(ex);
+            logger.log(record);
+        }
+    }
+
+    /**
+     * 是否需要获取调用方：Logger 及父 Logger 上处理该级别日志的 Handler 中，有一个不是关闭了 captureLocation 的
+     * AsyncFileHandler 就需要
+     */
+    private boolean needsLocation(Level level) {
+        int value = level.intValue();
+        for (Logger current = logger; current != null; current = current.getParent()) {
+            for (Handler handler : current.getHandlers()) {
+                Level handlerLevel = handler.getLevel();
+                if (handlerLevel != null && value < handlerLevel.intValue()) {
+                    continue;
+                }
+                if (!(handler instanceof AsyncFileHandler) || ((AsyncFileHandler) handler).isCaptureLocation()) {
+                    return true;
+                }
+            }
+            if (!current.getUseParentHandlers()) {
+                break;
             }
         }
+        return false;
     }
 }
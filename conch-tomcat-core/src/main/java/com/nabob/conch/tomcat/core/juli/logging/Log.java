@@ -1,5 +1,7 @@
 package com.nabob.conch.tomcat.core.juli.logging;
 
+import java.util.function.Supplier;
+
 /**
  * 日志API
  * <p>
@@ -10,6 +12,11 @@ package com.nabob.conch.tomcat.core.juli.logging;
  * - warn
  * - error
  * - fatal (the most serious)
+ * <p>
+ * 避免在日志级别关闭时构造日志内容：
+ * - Supplier：日志级别开启时才调用
+ * - {} 占位符：{@code log.debug("user {} login from {}", user, ip)}，参数比占位符多且最后一个参数是 Throwable 时作为异常打印；
+ * 固定1、2个参数的重载在日志级别关闭时不创建参数数组，实现可以覆盖为完全不创建数组
  *
  * @author Adam
  * @since 2023/12/6
@@ -50,23 +57,227 @@ public interface Log {
 
     void trace(Object message, Throwable e);
 
+    default void trace(String message, Throwable e) {
+        trace((Object) message, e);
+    }
+
+    default void trace(Supplier<String> message) {
+        if (isTraceEnabled()) {
+            trace((Object) message.get());
+        }
+    }
+
+    default void trace(Supplier<String> message, Throwable e) {
+        if (isTraceEnabled()) {
+            trace((Object) message.get(), e);
+        }
+    }
+
+    default void trace(String format, Object arg) {
+        if (isTraceEnabled()) {
+            trace(format, new Object[]{arg});
+        }
+    }
+
+    default void trace(String format, Object arg1, Object arg2) {
+        if (isTraceEnabled()) {
+            trace(format, new Object[]{arg1, arg2});
+        }
+    }
+
+    default void trace(String format, Object... args) {
+        if (isTraceEnabled()) {
+            trace((Object) ParameterizedMessage.format(format, args), ParameterizedMessage.throwable(format, args));
+        }
+    }
+
     void debug(Object message);
 
     void debug(Object message, Throwable e);
 
+    default void debug(String message, Throwable e) {
+        debug((Object) message, e);
+    }
+
+    default void debug(Supplier<String> message) {
+        if (isDebugEnabled()) {
+            debug((Object) message.get());
+        }
+    }
+
+    default void debug(Supplier<String> message, Throwable e) {
+        if (isDebugEnabled()) {
+            debug((Object) message.get(), e);
+        }
+    }
+
+    default void debug(String format, Object arg) {
+        if (isDebugEnabled()) {
+            debug(format, new Object[]{arg});
+        }
+    }
+
+    default void debug(String format, Object arg1, Object arg2) {
+        if (isDebugEnabled()) {
+            debug(format, new Object[]{arg1, arg2});
+        }
+    }
+
+    default void debug(String format, Object... args) {
+        if (isDebugEnabled()) {
+            debug((Object) ParameterizedMessage.format(format, args), ParameterizedMessage.throwable(format, args));
+        }
+    }
+
     void info(Object message);
 
     void info(Object message, Throwable e);
 
+    default void info(String message, Throwable e) {
+        info((Object) message, e);
+    }
+
+    default void info(Supplier<String> message) {
+        if (isInfoEnabled()) {
+            info((Object) message.get());
+        }
+    }
+
+    default void info(Supplier<String> message, Throwable e) {
+        if (isInfoEnabled()) {
+            info((Object) message.get(), e);
+        }
+    }
+
+    default void info(String format, Object arg) {
+        if (isInfoEnabled()) {
+            info(format, new Object[]{arg});
+        }
+    }
+
+    default void info(String format, Object arg1, Object arg2) {
+        if (isInfoEnabled()) {
+            info(format, new Object[]{arg1, arg2});
+        }
+    }
+
+    default void info(String format, Object... args) {
+        if (isInfoEnabled()) {
+            info((Object) ParameterizedMessage.format(format, args), ParameterizedMessage.throwable(format, args));
+        }
+    }
+
     void warn(Object message);
 
     void warn(Object message, Throwable e);
 
+    default void warn(String message, Throwable e) {
+        warn((Object) message, e);
+    }
+
+    default void warn(Supplier<String> message) {
+        if (isWarnEnabled()) {
+            warn((Object) message.get());
+        }
+    }
+
+    default void warn(Supplier<String> message, Throwable e) {
+        if (isWarnEnabled()) {
+            warn((Object) message.get(), e);
+        }
+    }
+
+    default void warn(String format, Object arg) {
+        if (isWarnEnabled()) {
+            warn(format, new Object[]{arg});
+        }
+    }
+
+    default void warn(String format, Object arg1, Object arg2) {
+        if (isWarnEnabled()) {
+            warn(format, new Object[]{arg1, arg2});
+        }
+    }
+
+    default void warn(String format, Object... args) {
+        if (isWarnEnabled()) {
+            warn((Object) ParameterizedMessage.format(format, args), ParameterizedMessage.throwable(format, args));
+        }
+    }
+
     void error(Object message);
 
     void error(Object message, Throwable e);
 
+    default void error(String message, Throwable e) {
+        error((Object) message, e);
+    }
+
+    default void error(Supplier<String> message) {
+        if (isErrorEnabled()) {
+            error((Object) message.get());
+        }
+    }
+
+    default void error(Supplier<String> message, Throwable e) {
+        if (isErrorEnabled()) {
+            error((Object) message.get(), e);
+        }
+    }
+
+    default void error(String format, Object arg) {
+        if (isErrorEnabled()) {
+            error(format, new Object[]{arg});
+        }
+    }
+
+    default void error(String format, Object arg1, Object arg2) {
+        if (isErrorEnabled()) {
+            error(format, new Object[]{arg1, arg2});
+        }
+    }
+
+    default void error(String format, Object... args) {
+        if (isErrorEnabled()) {
+            error((Object) ParameterizedMessage.format(format, args), ParameterizedMessage.throwable(format, args));
+        }
+    }
+
     void fatal(Object message);
 
     void fatal(Object message, Throwable e);
+
+    default void fatal(String message, Throwable e) {
+        fatal((Object) message, e);
+    }
+
+    default void fatal(Supplier<String> message) {
+        if (isFatalEnabled()) {
+            fatal((Object) message.get());
+        }
+    }
+
+    default void fatal(Supplier<String> message, Throwable e) {
+        if (isFatalEnabled()) {
+            fatal((Object) message.get(), e);
+        }
+    }
+
+    default void fatal(String format, Object arg) {
+        if (isFatalEnabled()) {
+            fatal(format, new Object[]{arg});
+        }
+    }
+
+    default void fatal(String format, Object arg1, Object arg2) {
+        if (isFatalEnabled()) {
+            fatal(format, new Object[]{arg1, arg2});
+        }
+    }
+
+    default void fatal(String format, Object... args) {
+        if (isFatalEnabled()) {
+            fatal((Object) ParameterizedMessage.format(format, args), ParameterizedMessage.throwable(format, args));
+        }
+    }
 }
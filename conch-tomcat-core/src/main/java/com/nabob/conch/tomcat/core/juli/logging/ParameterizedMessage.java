@@ -0,0 +1,110 @@
+package com.nabob.conch.tomcat.core.juli.logging;
+
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {} 占位符日志模板
+ * <p>
+ * 把 {@code "user {} login from {}"} 转换为 java.util.logging 使用的 MessageFormat 模板 {@code "user {0} login from {1}"}，
+ * 模板和参数原样放入 LogRecord，由 Formatter（AsyncFileHandler 时是写线程）格式化，业务线程不拼接字符串。
+ * <p>
+ * - 模板中的单引号、不成对的大括号会被转义，格式化结果与原始模板一致
+ * - 参数按 MessageFormat 格式化，与 java.util.logging 一致（例如数字带千分位）
+ * - 参数比占位符多且最后一个参数是 Throwable 时，作为异常堆栈打印
+ * - 模板通常是常量，转换结果按模板缓存，缓存满后不再缓存，只是每次重新转换
+ *
+ * @author Adam
+ * @since 2024/1/26
+ */
+final class ParameterizedMessage {
+
+    private static final int MAX_CACHED_TEMPLATES = 1024;
+
+    private static final ConcurrentHashMap<String, ParameterizedMessage> CACHE = new ConcurrentHashMap<>();
+
+    /**
+     * MessageFormat 模板
+     */
+    final String pattern;
+
+    /**
+     * 占位符个数
+     */
+    final int placeholders;
+
+    private ParameterizedMessage(String pattern, int placeholders) {
+        this.pattern = pattern;
+        this.placeholders = placeholders;
+    }
+
+    static ParameterizedMessage of(String template) {
+        ParameterizedMessage message = CACHE.get(template);
+        if (message == null) {
+            message = parse(template);
+            if (CACHE.size() < MAX_CACHED_TEMPLATES) {
+                CACHE.putIfAbsent(template, message);
+            }
+        }
+        return message;
+    }
+
+    /**
+     * 参数比占位符多且最后一个参数是 Throwable 时返回该异常
+     */
+    Throwable throwable(Object[] params) {
+        if (params.length > placeholders && params[params.length - 1] instanceof Throwable) {
+            return (Throwable) params[params.length - 1];
+        }
+        return null;
+    }
+
+    /**
+     * 给没有覆盖参数化方法的 Log 实现使用
+     */
+    static Throwable throwable(String template, Object[] params) {
+        return template == null || params.length == 0 ? null : of(template).throwable(params);
+    }
+
+    /**
+     * 去掉作为异常打印的最后一个参数
+     */
+    static Object[] trimThrowable(Object[] params) {
+        return Arrays.copyOf(params, params.length - 1);
+    }
+
+    /**
+     * 立即格式化，给没有覆盖参数化方法的 Log 实现使用
+     */
+    static String format(String template, Object[] params) {
+        if (template == null || params.length == 0) {
+            return template;
+        }
+        ParameterizedMessage message = of(template);
+        if (message.placeholders == 0) {
+            return template;
+        }
+        return MessageFormat.format(message.pattern, params);
+    }
+
+    private static ParameterizedMessage parse(String template) {
+        StringBuilder sb = new StringBuilder(template.length() + 8);
+        int placeholders = 0;
+        for (int i = 0, n = template.length(); i < n; i++) {
+            char c = template.charAt(i);
+            if (c == '{' && i + 1 < n && template.charAt(i + 1) == '}') {
+                sb.append('{').append(placeholders++).append('}');
+                i++;
+            } else if (c == '\'') {
+                sb.append("''");
+            } else if (c == '{' || c == '}') {
+                sb.append('\'').append(c).append('\'');
+            } else {
+                sb.append(c);
+            }
+        }
+        // 没有占位符时 Formatter 不会使用 MessageFormat，保留原始模板
+        return new ParameterizedMessage(placeholders == 0 ? template : sb.toString(), placeholders);
+    }
+}
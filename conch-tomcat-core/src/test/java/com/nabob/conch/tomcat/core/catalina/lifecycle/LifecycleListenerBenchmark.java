@@ -0,0 +1,106 @@
+package com.nabob.conch.tomcat.core.catalina.lifecycle;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * 生命周期事件分发的基准测试
+ * <p>
+ * 一个组件上挂数百个监听器（每个组件都挂监控监听器的场景），按事件类型轮流触发事件，输出每次触发的耗时和分配的字节数：
+ * - typed：每个监听器只订阅一种事件类型，分发时只调用订阅了该类型的监听器
+ * - all：每个监听器订阅全部事件，自己用 {@link LifecycleEvent#is(LifecycleEventType)} 过滤
+ * <p>
+ * 运行：
+ * <pre>
+ * java -cp target/classes:target/test-classes com.nabob.conch.tomcat.core.catalina.lifecycle.LifecycleListenerBenchmark [监听器数,...] [触发次数]
+ * </pre>
+ *
+ * @author Adam
+ * @since 2024/2/1
+ */
+public class LifecycleListenerBenchmark {
+
+    private static final LifecycleEventType[] TYPES = LifecycleEventType.values();
+
+    private static final int ROUNDS = 5;
+
+    /**
+     * 监听器计数，避免分发被优化掉
+     */
+    private static long handled;
+
+    /**
+     * 只触发事件的组件
+     */
+    static final class Component extends LifecycleBase {
+
+        void fire(LifecycleEventType type) {
+            fireLifecycleEvent(type, null);
+        }
+
+        @Override
+        protected void initInternal() {
+        }
+
+        @Override
+        protected void startInternal() {
+        }
+
+        @Override
+        protected void stopInternal() {
+        }
+
+        @Override
+        protected void destroyInternal() {
+        }
+    }
+
+    public static void main(String[] args) {
+        String[] counts = (args.length > 0 ? args[0] : "100,500").split(",");
+        long fires = args.length > 1 ? Long.parseLong(args[1]) : 2_000_000L;
+        for (String count : counts) {
+            int listeners = Integer.parseInt(count.trim());
+            for (int round = 0; round < ROUNDS; round++) {
+                run("typed", typed(listeners), fires, round);
+                run("all", all(listeners), fires, round);
+            }
+        }
+        System.out.println("handled " + handled);
+    }
+
+    private static Component typed(int listeners) {
+        Component component = new Component();
+        for (int i = 0; i < listeners; i++) {
+            LifecycleEventType type = TYPES[i % TYPES.length];
+            component.addLifecycleListener(event -> handled++, LifecycleEventType.mask(type));
+        }
+        return component;
+    }
+
+    private static Component all(int listeners) {
+        Component component = new Component();
+        for (int i = 0; i < listeners; i++) {
+            LifecycleEventType type = TYPES[i % TYPES.length];
+            component.addLifecycleListener(event -> {
+                if (event.is(type)) {
+                    handled++;
+                }
+            });
+        }
+        return component;
+    }
+
+    private static void run(String mode, Component component, long fires, int round) {
+        int listeners = component.findLifecycleListeners().length;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (long i = 0; i < fires; i++) {
+            component.fire(TYPES[(int) (i % TYPES.length)]);
+        }
+        long elapsed = System.nanoTime() - start;
+        allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+        System.out.printf("round %d %-5s %4d listeners: %6.1f ns/fire, %5.2f B/fire%n", round, mode, listeners,
+            (double) elapsed / fires, (double) allocated / fires);
+    }
+}
@@ -0,0 +1,106 @@
+package com.nabob.conch.tomcat.core.juli;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * BurstDeduplicationFilter 并发计数压测
+ * <p>
+ * 多个线程同时写同一条日志，时间窗口很短，定时清理、窗口结束时的替换与重复计数同时发生。
+ * 结束后统计写出的日志数加上 "[repeated N more times ...]" 中的重复次数，必须等于写日志的总数，否则以非0状态退出。运行：
+ * <pre>
+ * java -cp target/classes:target/test-classes com.nabob.conch.tomcat.core.juli.BurstDeduplicationStress [线程数] [每个线程的日志数]
+ * </pre>
+ *
+ * @author Adam
+ * @since 2024/2/1
+ */
+public class BurstDeduplicationStress {
+
+    private static final Pattern REPEATED = Pattern.compile("\\[repeated (\\d+) more times in \\d+ ms] ");
+
+    public static class DedupHandler extends FileHandler {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        int records = args.length > 1 ? Integer.parseInt(args[1]) : 200000;
+
+        Path dir = Files.createTempDirectory("juli-dedup");
+        String handler = DedupHandler.class.getName();
+        String properties = handler + ".directory=" + dir + "\n" +
+            handler + ".prefix=dedup.\n" +
+            handler + ".filter=" + BurstDeduplicationFilter.class.getName() + "\n" +
+            BurstDeduplicationFilter.class.getName() + ".window=5\n";
+        Path config = dir.resolve("logging.properties");
+        // Windows 路径中的反斜杠在 properties 中需要转义
+        Files.write(config, properties.replace("\\", "\\\\").getBytes(StandardCharsets.UTF_8));
+        System.setProperty("java.util.logging.manager", ClassLoaderLogManager.class.getName());
+        System.setProperty("java.util.logging.config.file", config.toString());
+
+        FileHandler fileHandler = new DedupHandler();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int r = 0; r < records; r++) {
+                        LogRecord record = new LogRecord(Level.WARNING, "dedup stress payload");
+                        record.setLoggerName("dedup");
+                        record.setSourceClassName(BurstDeduplicationStress.class.getName());
+                        record.setSourceMethodName("run");
+                        fileHandler.publish(record);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }, "dedup-" + t);
+            thread.start();
+        }
+        start.countDown();
+        done.await();
+        fileHandler.close();
+
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.filter(p -> p.getFileName().toString().startsWith("dedup.")).collect(Collectors.toList());
+        }
+        long written = 0;
+        long repeated = 0;
+        for (Path file : files) {
+            for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+                Matcher matcher = REPEATED.matcher(line);
+                if (matcher.find()) {
+                    repeated += Long.parseLong(matcher.group(1));
+                } else if (line.endsWith("dedup stress payload")) {
+                    written++;
+                }
+            }
+        }
+
+        long total = (long) threads * records;
+        System.out.printf("%d threads x %d records: %d written + %d repeated = %d, lost %d%n", threads, records,
+            written, repeated, written + repeated, total - written - repeated);
+        if (written + repeated != total) {
+            System.out.println("Log files kept in " + dir);
+            System.exit(1);
+        }
+        for (Path file : files) {
+            Files.delete(file);
+        }
+        Files.delete(config);
+        Files.delete(dir);
+    }
+}
@@ -0,0 +1,95 @@
+package com.nabob.conch.tomcat.core.juli;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * AsyncFileHandler captureLocation 的基准测试
+ * <p>
+ * 通过 j.u.l Logger 打日志，输出打日志线程上每条日志的耗时和分配的字节数（包括 Logger 创建 LogRecord）：
+ * - location：captureLocation=true，入队前遍历调用栈获取调用方
+ * - no-location：captureLocation=false，不获取调用方
+ * <p>
+ * 队列满时默认等待入队（丢弃策略 3），可以通过 -Dorg.apache.juli.AsyncQueueType 等系统配置切换队列。运行：
+ * <pre>
+ * java -cp target/classes:target/test-classes com.nabob.conch.tomcat.core.juli.CaptureLocationBenchmark [每轮日志数] [轮数]
+ * </pre>
+ *
+ * @author Adam
+ * @since 2024/2/1
+ */
+public class CaptureLocationBenchmark {
+
+    public static class LocationHandler extends AsyncFileHandler {
+    }
+
+    public static class NoLocationHandler extends AsyncFileHandler {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 500_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Path dir = Files.createTempDirectory("juli-location");
+        String location = LocationHandler.class.getName();
+        String noLocation = NoLocationHandler.class.getName();
+        String properties = "handlers=" + location + ", " + noLocation + "\n" +
+            ".handlers=\n" +
+            "bench.location.handlers=" + location + "\n" +
+            "bench.location.useParentHandlers=false\n" +
+            "bench.nolocation.handlers=" + noLocation + "\n" +
+            "bench.nolocation.useParentHandlers=false\n" +
+            location + ".directory=" + dir + "\n" +
+            location + ".prefix=location.\n" +
+            location + ".bufferSize=65536\n" +
+            location + ".captureLocation=true\n" +
+            noLocation + ".directory=" + dir + "\n" +
+            noLocation + ".prefix=no-location.\n" +
+            noLocation + ".bufferSize=65536\n" +
+            noLocation + ".captureLocation=false\n";
+        Path config = dir.resolve("logging.properties");
+        // Windows 路径中的反斜杠在 properties 中需要转义
+        Files.write(config, properties.replace("\\", "\\\\").getBytes(StandardCharsets.UTF_8));
+        System.setProperty("java.util.logging.manager", ClassLoaderLogManager.class.getName());
+        System.setProperty("java.util.logging.config.file", config.toString());
+        if (System.getProperty("org.apache.juli.AsyncOverflowDropType") == null) {
+            System.setProperty("org.apache.juli.AsyncOverflowDropType",
+                Integer.toString(AsyncFileHandler.OVERFLOW_DROP_FLUSH));
+        }
+
+        Logger withLocation = Logger.getLogger("bench.location");
+        Logger withoutLocation = Logger.getLogger("bench.nolocation");
+        for (int round = 0; round < rounds; round++) {
+            run("location", withLocation, records, round);
+            run("no-location", withoutLocation, records, round);
+        }
+        // 等待写线程写完再删除日志文件
+        Thread.sleep(1000);
+
+        try (Stream<Path> list = Files.list(dir)) {
+            for (Path file : list.collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private static void run(String mode, Logger logger, int records, int round) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < records; i++) {
+            logger.info("capture location benchmark payload");
+        }
+        long elapsed = System.nanoTime() - start;
+        allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+        System.out.printf("round %d %-11s: %7.1f ns/record, %7.2f B/record%n", round, mode,
+            (double) elapsed / records, (double) allocated / records);
+    }
+}
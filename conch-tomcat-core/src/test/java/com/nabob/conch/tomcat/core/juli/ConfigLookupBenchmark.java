@@ -0,0 +1,157 @@
+package com.nabob.conch.tomcat.core.juli;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.LogManager;
+
+/**
+ * ClassLoaderLogManager 查找配置的基准测试
+ * <p>
+ * 模拟多个 Web 应用：一半应用的 ClassLoader 有自己的 logging.properties，另一半没有（使用父 ClassLoader 的配置）。
+ * 多个线程以各自应用的 ClassLoader 为上下文 ClassLoader 不断读取配置，分两个阶段输出每次读取的耗时，
+ * 以及读线程观察到查找配置的缓存被重新计算的次数（每读取 1000 次检查一次，只是下限）：
+ * - quiet：没有其他应用启动
+ * - startup：同时不断有新的应用启动并读取自己的配置
+ * <p>
+ * 每次读取都检查结果是该应用应该使用的配置，检查失败时以非0状态退出。运行：
+ * <pre>
+ * java -cp target/classes:target/test-classes com.nabob.conch.tomcat.core.juli.ConfigLookupBenchmark [读线程数] [每阶段毫秒数] [轮数]
+ * </pre>
+ *
+ * @author Adam
+ * @since 2024/2/1
+ */
+public class ConfigLookupBenchmark {
+
+    private static final String PROPERTY = "bench.value";
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 4;
+        long millis = args.length > 1 ? Long.parseLong(args[1]) : 2000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 3;
+
+        Path dir = Files.createTempDirectory("juli-lookup");
+        Path rootConfig = dir.resolve("logging.properties");
+        Files.write(rootConfig, (PROPERTY + "=root\n").getBytes(StandardCharsets.UTF_8));
+        System.setProperty("java.util.logging.manager", ClassLoaderLogManager.class.getName());
+        System.setProperty("java.util.logging.config.file", rootConfig.toString());
+        ClassLoaderLogManager manager = (ClassLoaderLogManager) LogManager.getLogManager();
+
+        // 有配置的应用目录，启动阶段新建的应用也使用它
+        Path webapp = Files.createDirectory(dir.resolve("webapp"));
+        Files.write(webapp.resolve("logging.properties"), (PROPERTY + "=own\n").getBytes(StandardCharsets.UTF_8));
+        Path empty = Files.createDirectory(dir.resolve("empty"));
+
+        List<ClassLoader> loaders = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            boolean own = t % 2 == 0;
+            loaders.add(new URLClassLoader(new URL[] {(own ? webapp : empty).toUri().toURL()},
+                ClassLoader.getSystemClassLoader()));
+            expected.add(own ? "own" : "root");
+        }
+
+        boolean ok = true;
+        for (int round = 0; round < rounds; round++) {
+            ok &= run("quiet", manager, loaders, expected, millis, null, round);
+            ok &= run("startup", manager, loaders, expected, millis, webapp, round);
+        }
+
+        Files.delete(webapp.resolve("logging.properties"));
+        Files.delete(webapp);
+        Files.delete(empty);
+        Files.delete(rootConfig);
+        Files.delete(dir);
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param webapp 不为空时，同时不断启动使用该目录配置的新应用
+     * @return 读取的配置是否都正确
+     */
+    private static boolean run(String phase, ClassLoaderLogManager manager, List<ClassLoader> loaders,
+                               List<String> expected, long millis, Path webapp, int round) throws Exception {
+        AtomicBoolean running = new AtomicBoolean(true);
+        AtomicLong lookups = new AtomicLong();
+        AtomicLong wrong = new AtomicLong();
+        AtomicLong recomputed = new AtomicLong();
+        CountDownLatch done = new CountDownLatch(loaders.size());
+        for (int t = 0; t < loaders.size(); t++) {
+            ClassLoader loader = loaders.get(t);
+            String value = expected.get(t);
+            Thread thread = new Thread(() -> {
+                long count = 0;
+                long mismatches = 0;
+                long changes = 0;
+                manager.getProperty(PROPERTY);
+                ClassLoaderLogManager.ClassLoaderLogInfo info = manager.getClassLoaderInfo(loader);
+                Object resolved = info.resolved;
+                while (running.get()) {
+                    for (int i = 0; i < 1000; i++) {
+                        if (!value.equals(manager.getProperty(PROPERTY))) {
+                            mismatches++;
+                        }
+                    }
+                    count += 1000;
+                    if (info.resolved != resolved) {
+                        resolved = info.resolved;
+                        changes++;
+                    }
+                }
+                lookups.addAndGet(count);
+                wrong.addAndGet(mismatches);
+                recomputed.addAndGet(changes);
+                done.countDown();
+            }, "lookup-" + t);
+            thread.setContextClassLoader(loader);
+            thread.start();
+        }
+
+        // 启动的应用保持可达，避免 ClassLoader 被回收
+        List<ClassLoader> started = new ArrayList<>();
+        Thread starter = null;
+        if (webapp != null) {
+            URL url = webapp.toUri().toURL();
+            starter = new Thread(() -> {
+                Thread current = Thread.currentThread();
+                while (running.get()) {
+                    ClassLoader loader = new URLClassLoader(new URL[] {url}, ClassLoader.getSystemClassLoader());
+                    started.add(loader);
+                    current.setContextClassLoader(loader);
+                    manager.getProperty(PROPERTY);
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }, "webapp-starter");
+            starter.start();
+        }
+
+        long start = System.nanoTime();
+        Thread.sleep(millis);
+        running.set(false);
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        if (starter != null) {
+            starter.join();
+        }
+
+        long total = lookups.get();
+        System.out.printf("round %d %-7s %d threads: %6.1f ns/lookup, %d lookups, %d webapps started, " +
+                "%d recomputed, %d wrong%n", round, phase, loaders.size(), (double) elapsed * loaders.size() / total,
+            total, started.size(), recomputed.get(), wrong.get());
+        return wrong.get() == 0;
+    }
+}
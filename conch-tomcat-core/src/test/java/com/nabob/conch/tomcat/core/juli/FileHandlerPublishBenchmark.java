@@ -0,0 +1,110 @@
+package com.nabob.conch.tomcat.core.juli;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDate;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 同步 FileHandler 写日志的基准测试：日期滚动检查的开销
+ * <p>
+ * 输出单线程每条日志的耗时和分配的字节数：
+ * - expected：当前实现，写日志时只读取定时任务维护的 expectedDate
+ * - per-record：写日志前先按当前时钟计算日期并比较（日期滚动由定时任务驱动之前的写法），其余与 expected 相同
+ * <p>
+ * 两者的差值就是每条日志计算日期的开销。运行：
+ * <pre>
+ * java -cp target/classes:target/test-classes com.nabob.conch.tomcat.core.juli.FileHandlerPublishBenchmark [每轮日志数] [轮数]
+ * </pre>
+ *
+ * @author Adam
+ * @since 2024/2/1
+ */
+public class FileHandlerPublishBenchmark {
+
+    public static class ExpectedDateHandler extends FileHandler {
+    }
+
+    /**
+     * 每条日志都计算当前日期
+     */
+    public static class PerRecordDateHandler extends FileHandler {
+
+        private volatile String date = LocalDate.now().toString();
+
+        @Override
+        public void publish(LogRecord record) {
+            String tsDate = LocalDate.now().toString();
+            if (!tsDate.equals(date)) {
+                date = tsDate;
+            }
+            super.publish(record);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        Path dir = Files.createTempDirectory("juli-publish");
+        StringBuilder properties = new StringBuilder();
+        appendHandlerConfig(properties, ExpectedDateHandler.class, dir, "expected");
+        appendHandlerConfig(properties, PerRecordDateHandler.class, dir, "per-record");
+        Path config = dir.resolve("logging.properties");
+        // Windows 路径中的反斜杠在 properties 中需要转义
+        Files.write(config, properties.toString().replace("\\", "\\\\").getBytes(StandardCharsets.UTF_8));
+        System.setProperty("java.util.logging.manager", ClassLoaderLogManager.class.getName());
+        System.setProperty("java.util.logging.config.file", config.toString());
+
+        FileHandler expected = new ExpectedDateHandler();
+        FileHandler perRecord = new PerRecordDateHandler();
+        LogRecord record = new LogRecord(Level.INFO, "publish benchmark payload");
+        record.setLoggerName("bench");
+        record.setSourceClassName(FileHandlerPublishBenchmark.class.getName());
+        record.setSourceMethodName("run");
+        for (int round = 0; round < rounds; round++) {
+            run("expected", expected, record, records, round);
+            run("per-record", perRecord, record, records, round);
+        }
+        expected.close();
+        perRecord.close();
+
+        try (Stream<Path> list = Files.list(dir)) {
+            for (Path file : list.collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private static void appendHandlerConfig(StringBuilder properties, Class<?> handler, Path dir, String prefix) {
+        String name = handler.getName();
+        properties.append(name).append(".directory=").append(dir).append('\n')
+            .append(name).append(".prefix=").append(prefix).append(".\n")
+            .append(name).append(".writeMode=").append(FileHandler.WRITE_MODE_CHANNEL).append('\n')
+            .append(name).append(".encoding=UTF-8\n")
+            .append(name).append(".bufferSize=65536\n")
+            // 每轮写入的日志较多，按大小滚动并只保留最近几个文件
+            .append(name).append(".maxFileSize=67108864\n")
+            .append(name).append(".maxTotalSize=268435456\n");
+    }
+
+    private static void run(String mode, FileHandler handler, LogRecord record, int records, int round) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        long start = System.nanoTime();
+        for (int i = 0; i < records; i++) {
+            handler.publish(record);
+        }
+        long elapsed = System.nanoTime() - start;
+        allocated = threads.getThreadAllocatedBytes(thread) - allocated;
+        System.out.printf("round %d %-10s: %6.1f ns/record, %6.2f B/record%n", round, mode,
+            (double) elapsed / records, (double) allocated / records);
+    }
+}
@@ -0,0 +1,70 @@
+package com.nabob.conch.tomcat.core.juli;
+
+import java.lang.management.ManagementFactory;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+
+/**
+ * OneLineSimpleFormatter 格式化分配的基准测试
+ * <p>
+ * 通过 {@link AppendingFormatter#format(LogRecord, StringBuilder)} 格式化到复用的 StringBuilder，
+ * 预热后按 ThreadMXBean 统计格式化分配的字节数。稳定状态下（同一秒内、没有参数和异常的日志）
+ * 分配的字节数大于0时以非0状态退出。运行：
+ * <pre>
+ * java -cp target/classes:target/test-classes com.nabob.conch.tomcat.core.juli.FormatterAllocationBenchmark [每轮格式化次数] [轮数]
+ * </pre>
+ *
+ * @author Adam
+ * @since 2024/2/1
+ */
+public class FormatterAllocationBenchmark {
+
+    private static final int WARMUP = 200_000;
+
+    public static void main(String[] args) {
+        int calls = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+
+        OneLineSimpleFormatter formatter = new OneLineSimpleFormatter();
+        // 同一秒内的不同毫秒，日期前缀命中缓存
+        long second = System.currentTimeMillis() / 1000 * 1000;
+        LogRecord[] records = new LogRecord[1000];
+        for (int i = 0; i < records.length; i++) {
+            LogRecord record = new LogRecord(Level.INFO, "allocation benchmark payload " + i);
+            record.setLoggerName("bench");
+            record.setSourceClassName(FormatterAllocationBenchmark.class.getName());
+            record.setSourceMethodName("run");
+            record.setMillis(second + i);
+            records[i] = record;
+        }
+        StringBuilder sb = new StringBuilder(256);
+
+        run(formatter, records, sb, WARMUP);
+        boolean ok = true;
+        for (int round = 0; round < rounds; round++) {
+            long start = System.nanoTime();
+            long allocated = run(formatter, records, sb, calls);
+            long elapsed = System.nanoTime() - start;
+            System.out.printf("round %d: %5.1f ns/format, %d bytes allocated, %.2f B/format%n", round,
+                (double) elapsed / calls, allocated, (double) allocated / calls);
+            ok &= allocated == 0;
+        }
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @return 分配的字节数
+     */
+    private static long run(OneLineSimpleFormatter formatter, LogRecord[] records, StringBuilder sb, int calls) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+        long allocated = threads.getThreadAllocatedBytes(thread);
+        for (int i = 0; i < calls; i++) {
+            sb.setLength(0);
+            formatter.format(records[i % records.length], sb);
+        }
+        return threads.getThreadAllocatedBytes(thread) - allocated;
+    }
+}
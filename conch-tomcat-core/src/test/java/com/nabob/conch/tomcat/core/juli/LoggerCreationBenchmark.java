@@ -0,0 +1,144 @@
+package com.nabob.conch.tomcat.core.juli;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.LogManager;
+import java.util.logging.Logger;
+
+/**
+ * ClassLoaderLogManager 多线程创建 Logger 的基准测试
+ * <p>
+ * 模拟应用启动时大量类同时创建 Logger：多个线程交错创建同一批包下的 Logger，其中一部分是其他 Logger 的父 Logger，
+ * 父子 Logger 会被不同线程同时创建。每一轮使用新的名称前缀，输出耗时，并检查每个 Logger 的父 Logger
+ * 都是已存在的最近祖先，检查失败时以非0状态退出。
+ * <p>
+ * 运行（最后一个参数为 jdk 时使用 JDK 自带的 LogManager 对比）：
+ * <pre>
+ * java -cp target/classes:target/test-classes com.nabob.conch.tomcat.core.juli.LoggerCreationBenchmark [线程数] [每轮Logger数] [轮数] [jdk]
+ * </pre>
+ *
+ * @author Adam
+ * @since 2024/2/1
+ */
+public class LoggerCreationBenchmark {
+
+    private static final int PACKAGES = 50;
+    private static final int MODULES = 7;
+
+    /**
+     * 每隔多少个 Logger 额外创建一次包、模块级别的父 Logger
+     */
+    private static final int PARENT_INTERVAL = 10;
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int loggers = args.length > 1 ? Integer.parseInt(args[1]) : 40000;
+        int rounds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+        boolean jdk = args.length > 3 && "jdk".equals(args[3]);
+        if (!jdk) {
+            System.setProperty("java.util.logging.manager", ClassLoaderLogManager.class.getName());
+        }
+        System.out.println("LogManager: " + LogManager.getLogManager().getClass().getName());
+
+        // 持有创建的 Logger，避免被回收
+        List<Logger> created = new ArrayList<>();
+        boolean ok = true;
+        for (int round = 0; round < rounds; round++) {
+            List<String> names = names("bench" + round, loggers);
+            long elapsed = create(names, threads, created);
+            long wrongParents = verifyParents(names);
+            System.out.printf("round %d: %d threads created %d loggers in %d ms, %d wrong parents%n", round, threads,
+                names.size(), TimeUnit.NANOSECONDS.toMillis(elapsed), wrongParents);
+            ok &= wrongParents == 0;
+        }
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    private static List<String> names(String root, int loggers) {
+        List<String> names = new ArrayList<>(loggers + loggers / PARENT_INTERVAL * 2);
+        for (int i = 0; i < loggers; i++) {
+            String pkg = root + ".p" + (i % PACKAGES);
+            String module = pkg + ".m" + (i % MODULES);
+            if (i % PARENT_INTERVAL == 0) {
+                names.add(pkg);
+                names.add(module);
+            }
+            names.add(module + ".C" + i);
+        }
+        return names;
+    }
+
+    /**
+     * 第 t 个线程创建下标为 t、t + threads、t + 2 * threads ... 的 Logger，奇数线程倒序创建
+     */
+    private static long create(List<String> names, int threads, List<Logger> created) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        List<List<Logger>> results = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            List<Logger> result = new ArrayList<>();
+            results.add(result);
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    if (id % 2 == 0) {
+                        for (int i = id; i < names.size(); i += threads) {
+                            result.add(Logger.getLogger(names.get(i)));
+                        }
+                    } else if (id < names.size()) {
+                        int last = id + (names.size() - 1 - id) / threads * threads;
+                        for (int i = last; i >= 0; i -= threads) {
+                            result.add(Logger.getLogger(names.get(i)));
+                        }
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }, "logger-creator-" + t);
+            thread.start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+        for (List<Logger> result : results) {
+            created.addAll(result);
+        }
+        return elapsed;
+    }
+
+    /**
+     * @return 父 Logger 不是已存在的最近祖先的 Logger 数
+     */
+    private static long verifyParents(List<String> names) {
+        LogManager manager = LogManager.getLogManager();
+        Logger root = manager.getLogger("");
+        long wrong = 0;
+        for (String name : names) {
+            Logger logger = manager.getLogger(name);
+            if (logger == null) {
+                wrong++;
+                continue;
+            }
+            Logger expected = root;
+            for (int dot = name.lastIndexOf('.'); dot > 0; dot = name.lastIndexOf('.', dot - 1)) {
+                Logger ancestor = manager.getLogger(name.substring(0, dot));
+                if (ancestor != null) {
+                    expected = ancestor;
+                    break;
+                }
+            }
+            if (logger.getParent() != expected) {
+                wrong++;
+            }
+        }
+        return wrong;
+    }
+}
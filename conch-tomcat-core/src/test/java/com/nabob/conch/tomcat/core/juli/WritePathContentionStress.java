@@ -0,0 +1,171 @@
+package com.nabob.conch.tomcat.core.juli;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 同步 FileHandler 写路径的平台线程竞争压测
+ * <p>
+ * 多个平台线程同时通过同一个 FileHandler 写日志，写路径只有 ReentrantReadWriteLock 和各 LogFileWriter 的
+ * ReentrantLock；开启按大小滚动，让滚动时的锁升级也参与竞争。结束后检查：
+ * - 每一行都是完整的一条日志（多字节字符没有被拆开、没有交错）
+ * - 每个线程的每条日志恰好出现一次
+ * <p>
+ * 分别压测 stream、channel、mmap 三种写入方式，任何一项检查失败时以非0状态退出。运行：
+ * <pre>
+ * java -cp target/classes:target/test-classes com.nabob.conch.tomcat.core.juli.WritePathContentionStress [线程数] [每个线程的日志数]
+ * </pre>
+ *
+ * @author Adam
+ * @since 2024/2/1
+ */
+public class WritePathContentionStress {
+
+    private static final Pattern LINE = Pattern.compile(".* stress t=(\\d+) r=(\\d+) 并发写入压测 payload$");
+
+    public static class StreamHandler extends FileHandler {
+    }
+
+    public static class ChannelHandler extends FileHandler {
+    }
+
+    public static class MappedHandler extends FileHandler {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int records = args.length > 1 ? Integer.parseInt(args[1]) : 20000;
+
+        Path dir = Files.createTempDirectory("juli-stress");
+        Path config = dir.resolve("logging.properties");
+        StringBuilder properties = new StringBuilder();
+        appendHandlerConfig(properties, StreamHandler.class, dir, FileHandler.WRITE_MODE_STREAM);
+        appendHandlerConfig(properties, ChannelHandler.class, dir, FileHandler.WRITE_MODE_CHANNEL);
+        appendHandlerConfig(properties, MappedHandler.class, dir, FileHandler.WRITE_MODE_MAPPED);
+        // Windows 路径中的反斜杠在 properties 中需要转义
+        Files.write(config, properties.toString().replace("\\", "\\\\").getBytes(StandardCharsets.UTF_8));
+        System.setProperty("java.util.logging.manager", ClassLoaderLogManager.class.getName());
+        System.setProperty("java.util.logging.config.file", config.toString());
+
+        boolean ok = true;
+        ok &= run(new StreamHandler(), FileHandler.WRITE_MODE_STREAM, dir, threads, records);
+        ok &= run(new ChannelHandler(), FileHandler.WRITE_MODE_CHANNEL, dir, threads, records);
+        ok &= run(new MappedHandler(), FileHandler.WRITE_MODE_MAPPED, dir, threads, records);
+        if (!ok) {
+            System.out.println("Log files kept in " + dir);
+            System.exit(1);
+        }
+        try (Stream<Path> list = Files.list(dir)) {
+            for (Path file : list.collect(Collectors.toList())) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(dir);
+    }
+
+    private static void appendHandlerConfig(StringBuilder properties, Class<?> handler, Path dir, String writeMode) {
+        String name = handler.getName();
+        properties.append(name).append(".directory=").append(dir).append('\n')
+            .append(name).append(".prefix=").append(writeMode).append(".\n")
+            .append(name).append(".writeMode=").append(writeMode).append('\n')
+            .append(name).append(".encoding=UTF-8\n")
+            .append(name).append(".bufferSize=8192\n")
+            .append(name).append(".maxFileSize=1048576\n")
+            .append(name).append(".mappedChunkSize=262144\n");
+    }
+
+    private static boolean run(FileHandler handler, String writeMode, Path dir, int threads, int records)
+        throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            int id = t;
+            Thread thread = new Thread(() -> {
+                try {
+                    start.await();
+                    for (int r = 0; r < records; r++) {
+                        LogRecord record = new LogRecord(Level.INFO, "stress t=" + id + " r=" + r + " 并发写入压测 payload");
+                        record.setLoggerName("stress");
+                        record.setSourceClassName(WritePathContentionStress.class.getName());
+                        record.setSourceMethodName("run");
+                        handler.publish(record);
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    done.countDown();
+                }
+            }, "stress-" + t);
+            thread.start();
+        }
+
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        handler.close();
+        long elapsed = System.nanoTime() - begin;
+
+        List<Path> files;
+        try (Stream<Path> list = Files.list(dir)) {
+            files = list.filter(p -> p.getFileName().toString().startsWith(writeMode + "."))
+                .filter(p -> !p.getFileName().toString().endsWith(MappedLogFileWriter.MARKER_SUFFIX))
+                .sorted().collect(Collectors.toList());
+        }
+
+        int[][] seen = new int[threads][records];
+        long malformed = 0;
+        for (Path file : files) {
+            malformed += verify(file, seen);
+        }
+        long missing = 0;
+        long duplicated = 0;
+        for (int[] thread : seen) {
+            for (int count : thread) {
+                if (count == 0) {
+                    missing++;
+                } else if (count > 1) {
+                    duplicated++;
+                }
+            }
+        }
+
+        long total = (long) threads * records;
+        System.out.printf("%-7s %d threads x %d records: %d ms, %.0f records/s, %d files, " +
+                "%d malformed, %d missing, %d duplicated%n", writeMode, threads, records,
+            TimeUnit.NANOSECONDS.toMillis(elapsed), total * 1e9 / elapsed, files.size(), malformed, missing, duplicated);
+        return malformed == 0 && missing == 0 && duplicated == 0;
+    }
+
+    /**
+     * @return 格式不正确的行数
+     */
+    private static long verify(Path file, int[][] seen) throws IOException {
+        long malformed = 0;
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            Matcher matcher = LINE.matcher(line);
+            if (!matcher.matches()) {
+                malformed++;
+                continue;
+            }
+            int t = Integer.parseInt(matcher.group(1));
+            int r = Integer.parseInt(matcher.group(2));
+            if (t >= seen.length || r >= seen[t].length) {
+                malformed++;
+                continue;
+            }
+            seen[t][r]++;
+        }
+        return malformed;
+    }
+}